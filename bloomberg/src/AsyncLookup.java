@@ -0,0 +1,261 @@
+import com.bloomberglp.blpapi.*;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/** Pipelined reference data lookups: every request is tagged with a CorrelationID and answered through a CompletableFuture
+ * Up to 'window' requests are in flight at once, the window grows while latency stays close to the best seen and shrinks when it rises **/
+public class AsyncLookup {
+
+    /** Sends a single security/field lookup, the answer has to come back through complete() or fail() with the same id **/
+    public interface Transport {
+        void send(long correlationId, String security, String field) throws IOException;
+    }
+
+    private final Transport transport;
+    private final int minWindow;
+    private final int maxWindow;
+
+    private int window;
+    private int inFlight = 0;
+    private long nextId = 1;
+    private final Queue<Pending> waiting = new ArrayDeque<>();
+    private final Map<Long, Pending> outstanding = new HashMap<>();
+
+    private double averageLatencyNanos = -1; // exponentially weighted
+    private long bestLatencyNanos = Long.MAX_VALUE;
+    private int completionsSinceChange = 0;
+    private int requestsSent = 0;
+    private Throwable terminated = null; // set once the transport is gone, later lookups fail straight away
+
+    public AsyncLookup(Transport transport, int initialWindow, int minWindow, int maxWindow) {
+        this.transport = transport;
+        this.window = initialWindow;
+        this.minWindow = minWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    /** Queues the lookup, it is sent as soon as there is room in the window **/
+    public CompletableFuture<String> lookup(String security, String field) {
+        Pending pending = new Pending(security, field);
+        Throwable error;
+        synchronized (this) {
+            error = terminated;
+            if (error == null) {
+                waiting.add(pending);
+            }
+        }
+        if (error != null) {
+            pending.future.completeExceptionally(error);
+            return pending.future;
+        }
+        drain();
+        return pending.future;
+    }
+
+    /** Called by the transport when the value for the given id arrives **/
+    public void complete(long correlationId, String value) {
+        Pending pending = finish(correlationId);
+        if (pending != null) {
+            pending.future.complete(value);
+        }
+        drain();
+    }
+
+    /** Called by the transport when the request with the given id failed **/
+    public void fail(long correlationId, Throwable error) {
+        Pending pending = finish(correlationId);
+        if (pending != null) {
+            pending.future.completeExceptionally(error);
+        }
+        drain();
+    }
+
+    /** Called by the transport when it can no longer answer (the session terminated): every lookup in flight or waiting fails **/
+    public void failAll(Throwable error) {
+        List<Pending> failed;
+        synchronized (this) {
+            terminated = error;
+            failed = new ArrayList<>(outstanding.values());
+            failed.addAll(waiting);
+            outstanding.clear();
+            waiting.clear();
+            inFlight = 0;
+        }
+        for (Pending pending : failed) {
+            pending.future.completeExceptionally(error);
+        }
+    }
+
+    private synchronized Pending finish(long correlationId) {
+        Pending pending = outstanding.remove(correlationId);
+        if (pending == null) {
+            return null;
+        }
+        inFlight--;
+        adjustWindow(System.nanoTime() - pending.sentAt);
+        return pending;
+    }
+
+    /** Grow the window by one per window of completions while latency stays within 1.5x the best latency,
+     * halve it (at most once per window of completions) when latency goes over twice the best
+     * More requests in flight only help until the service starts queueing them, which shows up as rising latency **/
+    private void adjustWindow(long latency) {
+        bestLatencyNanos = Math.min(bestLatencyNanos, latency);
+        averageLatencyNanos = averageLatencyNanos < 0 ? latency : 0.8 * averageLatencyNanos + 0.2 * latency;
+        completionsSinceChange++;
+        if (completionsSinceChange < window) {
+            return;
+        }
+        if (latency > 2 * bestLatencyNanos) {
+            window = Math.max(minWindow, window / 2);
+            completionsSinceChange = 0;
+        } else if (latency <= 1.5 * bestLatencyNanos) {
+            window = Math.min(maxWindow, window + 1);
+            completionsSinceChange = 0;
+        }
+    }
+
+    /** Sends waiting lookups while there is room in the window, sending happens outside the lock **/
+    private void drain() {
+        while (true) {
+            Pending pending;
+            long id;
+            synchronized (this) {
+                if (inFlight >= window || waiting.isEmpty()) {
+                    return;
+                }
+                pending = waiting.poll();
+                id = nextId++;
+                inFlight++;
+                requestsSent++;
+                pending.sentAt = System.nanoTime();
+                outstanding.put(id, pending);
+            }
+            try {
+                transport.send(id, pending.security, pending.field);
+            } catch (IOException e) {
+                fail(id, e);
+            }
+        }
+    }
+
+    public synchronized int getWindow() {
+        return window;
+    }
+
+    public synchronized int getRequestsSent() {
+        return requestsSent;
+    }
+
+    public synchronized double getAverageLatencyMillis() {
+        return averageLatencyNanos / 1e6;
+    }
+
+    private static class Pending {
+        final String security;
+        final String field;
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        long sentAt;
+
+        Pending(String security, String field) {
+            this.security = security;
+            this.field = field;
+        }
+    }
+
+    /** Transport over a Bloomberg session, pass it as the EventHandler when creating the session **/
+    public static class BloombergTransport implements Transport, EventHandler {
+        private static final Name SECURITIES = new Name("securities");
+        private static final Name FIELDS = new Name("fields");
+        private static final Name FIELD_DATA = new Name("fieldData");
+        private static final Name SECURITY_DATA = new Name("securityData");
+        private static final Name RESPONSE_ERROR = new Name("responseError");
+        private static final Name SECURITY_ERROR = new Name("securityError");
+
+        private Session session;
+        private AsyncLookup lookup;
+        private final Map<Long, String> fieldsById = new HashMap<>(); // the field each outstanding request asked for
+
+        public void setSession(Session session) {
+            this.session = session;
+        }
+
+        public void setLookup(AsyncLookup lookup) {
+            this.lookup = lookup;
+        }
+
+        @Override
+        public void send(long correlationId, String security, String field) throws IOException {
+            Service refDataService = session.getService("//blp/refdata");
+            if (refDataService == null) {
+                throw new IOException("//blp/refdata not open");
+            }
+            Request request = refDataService.createRequest("ReferenceDataRequest");
+            request.getElement(SECURITIES).appendValue(security);
+            request.getElement(FIELDS).appendValue(field);
+            synchronized (fieldsById) {
+                fieldsById.put(correlationId, field);
+            }
+            session.sendRequest(request, new CorrelationID(correlationId));
+        }
+
+        @Override
+        public void processEvent(Event event, Session session) {
+            if (event.eventType() == Event.EventType.REQUEST_STATUS) {
+                for (Message msg : event) { // the request never got a response, its future has to be failed here
+                    if (msg.messageType().equals(Names.REQUEST_FAILURE) && msg.correlationID() != null) {
+                        long id = msg.correlationID().value();
+                        synchronized (fieldsById) {
+                            fieldsById.remove(id);
+                        }
+                        lookup.fail(id, new IOException("REQUEST FAILED: " + msg));
+                    }
+                }
+                return;
+            }
+            if (event.eventType() != Event.EventType.RESPONSE && event.eventType() != Event.EventType.PARTIAL_RESPONSE) {
+                for (Message msg : event) {
+                    if (msg.messageType().equals(Names.SESSION_TERMINATED)) {
+                        System.err.println("Session terminated.");
+                        synchronized (fieldsById) {
+                            fieldsById.clear();
+                        }
+                        lookup.failAll(new IOException("Session terminated"));
+                    }
+                }
+                return;
+            }
+            for (Message msg : event) {
+                long id = msg.correlationID().value();
+                String field;
+                synchronized (fieldsById) {
+                    field = fieldsById.remove(id);
+                }
+                if (field == null) {
+                    continue;
+                }
+                if (msg.hasElement(RESPONSE_ERROR)) {
+                    lookup.fail(id, new IOException("REQUEST FAILED: " + msg.getElement(RESPONSE_ERROR)));
+                    continue;
+                }
+                Element security = msg.getElement(SECURITY_DATA).getValueAsElement(0); // one security per request
+                if (security.hasElement(SECURITY_ERROR)) { // one bad security is not a failed run, treat it as N/A like the synchronous lookup
+                    System.out.println("SECURITY FAILED: " + security.getElement(SECURITY_ERROR));
+                    lookup.complete(id, "#N/A N/A");
+                    continue;
+                }
+                Element fieldData = security.getElement(FIELD_DATA);
+                Name name = Name.getName(field);
+                // some securities are missing some fields (e.g. rating), so put N/A like the synchronous lookup does
+                lookup.complete(id, fieldData.hasElement(name) ? fieldData.getElementAsString(name) : "#N/A N/A");
+            }
+        }
+    }
+}
@@ -0,0 +1,264 @@
+import com.bloomberglp.blpapi.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/** Looks up the missing fields of many conventional bonds with as few ReferenceDataRequests as possible
+ * Bonds missing the same fields are grouped so that each request carries many securities and all of their missing fields,
+ * and every securityData entry of the response is decoded back into its bond **/
+public class BatchLookup {
+
+    private static final Name SECURITIES = new Name("securities");
+    private static final Name FIELDS = new Name("fields");
+    private static final Name FIELD_DATA = new Name("fieldData");
+    private static final Name SECURITY_DATA = new Name("securityData");
+    private static final Name SECURITY = new Name("security");
+    private static final Name SECURITY_ERROR = new Name("securityError");
+    private static final Name RESPONSE_ERROR = new Name("responseError");
+
+    /** The parts of the session the lookups need, so they can run against a stub offline **/
+    public interface Channel {
+        Request createRequest();
+
+        void sendRequest(Request request) throws IOException;
+
+        Event nextEvent() throws InterruptedException;
+    }
+
+    /** Channel over a started session with //blp/refdata open **/
+    public static Channel of(Session session) {
+        return new Channel() {
+            @Override
+            public Request createRequest() {
+                return session.getService("//blp/refdata").createRequest("ReferenceDataRequest");
+            }
+
+            @Override
+            public void sendRequest(Request request) throws IOException {
+                session.sendRequest(request, null);
+            }
+
+            @Override
+            public Event nextEvent() throws InterruptedException {
+                return session.nextEvent();
+            }
+        };
+    }
+
+    private final Channel channel;
+    private final Map<String, BloombergMain.Bond> conventionalBonds;
+    private final int maxSecuritiesPerRequest;
+
+    private LookupCache cache;
+    private MatchJournal journal;
+    private QuotaScheduler scheduler;
+    private int requestsSent = 0;
+    private int fieldsRequested = 0;
+    private int fieldsResolved = 0;
+
+    public BatchLookup(Channel channel, Map<String, BloombergMain.Bond> conventionalBonds, int maxSecuritiesPerRequest) {
+        this.channel = channel;
+        this.conventionalBonds = conventionalBonds;
+        this.maxSecuritiesPerRequest = maxSecuritiesPerRequest;
+    }
+
+    /** Values found in the cache are used instead of being requested, and every value received is added to it **/
+    public void setCache(LookupCache cache) {
+        this.cache = cache;
+    }
+
+    /** Every value set on a bond, from the cache or a response, is also journaled so a resumed run does not request it again **/
+    public void setJournal(MatchJournal journal) {
+        this.journal = journal;
+    }
+
+    /** Every request takes one unit of the scheduler's budget, requests it refuses are deferred and skipped **/
+    public void setScheduler(QuotaScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /** Looks up all missing fields of the given conventional bond ids and sets them on the bonds
+     * Returns false if a request failed, the bonds decoded up to that point keep their values **/
+    public boolean lookupMissingFields(Collection<String> ids) {
+        // group by the list of missing fields, every security in a request is asked for every field of the request
+        Map<List<String>, List<String>> idsByFields = new LinkedHashMap<>();
+        for (String id : ids) {
+            applyCached(id);
+            List<String> missing = conventionalBonds.get(id).getMissingFields();
+            if (!missing.isEmpty()) {
+                idsByFields.computeIfAbsent(missing, k -> new ArrayList<>()).add(id);
+            }
+        }
+        for (Map.Entry<List<String>, List<String>> entry : idsByFields.entrySet()) {
+            List<String> group = entry.getValue();
+            for (int from = 0; from < group.size(); from += maxSecuritiesPerRequest) {
+                List<String> chunk = group.subList(from, Math.min(group.size(), from + maxSecuritiesPerRequest));
+                if (!send(chunk, entry.getKey())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Sets the missing fields we already have in the cache, in getMissingFields order **/
+    private void applyCached(String id) {
+        if (cache == null) {
+            return;
+        }
+        BloombergMain.Bond bond = conventionalBonds.get(id);
+        for (String field : bond.getMissingFields()) {
+            try {
+                String cached = cache.get(id, field);
+                if (cached != null) {
+                    bond.setField(field, cached);
+                    journal(id, field, cached);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void journal(String id, String field, String value) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.lookup(id, field, value);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private boolean send(List<String> ids, List<String> fields) {
+        if (scheduler != null) {
+            QuotaScheduler.Priority priority = QuotaScheduler.priorityOf(fields.size(), fields.size());
+            try {
+                if (!scheduler.acquire(priority)) {
+                    for (String id : ids) {
+                        for (String field : fields) {
+                            scheduler.defer(id, field, priority);
+                        }
+                    }
+                    return true; // nothing failed, we just have to do without these fields
+                }
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+        Request request = channel.createRequest();
+        Map<String, String> idsBySecurity = new HashMap<>(); // the response names securities the way we requested them
+        for (String id : ids) {
+            String security = securityString(id);
+            idsBySecurity.put(security, id);
+            request.getElement(SECURITIES).appendValue(security);
+        }
+        for (String field : fields) {
+            request.getElement(FIELDS).appendValue(field);
+        }
+        try {
+            channel.sendRequest(request);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        requestsSent++;
+        fieldsRequested += ids.size() * fields.size();
+        try {
+            return processResponse(idsBySecurity, fields);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /** Reads events until the final RESPONSE, the response may be split over several PARTIAL_RESPONSE events
+     * Returns false on a response error, a RequestFailure status or a terminated session **/
+    private boolean processResponse(Map<String, String> idsBySecurity, List<String> fields) throws InterruptedException {
+        while (true) {
+            Event event = channel.nextEvent();
+            if (event.eventType() == Event.EventType.PARTIAL_RESPONSE || event.eventType() == Event.EventType.RESPONSE) {
+                for (Message msg : event) {
+                    if (msg.hasElement(RESPONSE_ERROR)) {
+                        System.out.println("REQUEST FAILED: " + msg.getElement(RESPONSE_ERROR));
+                        return false;
+                    }
+                    decode(msg, idsBySecurity, fields);
+                }
+                if (event.eventType() == Event.EventType.RESPONSE) {
+                    return true;
+                }
+            } else if (event.eventType() == Event.EventType.REQUEST_STATUS) {
+                for (Message msg : event) {
+                    if (msg.messageType().equals(Names.REQUEST_FAILURE)) { // no response is coming for this request
+                        System.out.println("REQUEST FAILED: " + msg);
+                        return false;
+                    }
+                }
+            } else if (event.eventType() == Event.EventType.SESSION_STATUS) {
+                for (Message msg : event) {
+                    if (msg.messageType().equals(Names.SESSION_TERMINATED)) {
+                        System.err.println("Session terminated.");
+                        return false;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Sets the fields of every securityData entry in the message on the matching bond
+     * Fields are set in the requested order since the maturity bucket needs the issue date **/
+    public void decode(Message msg, Map<String, String> idsBySecurity, List<String> fields) {
+        Element securities = msg.getElement(SECURITY_DATA);
+        for (int i = 0; i < securities.numValues(); i++) {
+            Element security = securities.getValueAsElement(i);
+            String id = idsBySecurity.get(security.getElementAsString(SECURITY));
+            if (id == null) {
+                System.out.println("unexpected security in response: " + security.getElementAsString(SECURITY));
+                continue;
+            }
+            if (security.hasElement(SECURITY_ERROR)) {
+                System.out.println("SECURITY FAILED: " + id + " " + security.getElement(SECURITY_ERROR));
+                continue;
+            }
+            BloombergMain.Bond bond = conventionalBonds.get(id);
+            Element fieldData = security.getElement(FIELD_DATA);
+            for (String field : fields) {
+                Name name = Name.getName(field);
+                String value = "#N/A N/A"; // some securities are missing some fields (e.g. rating)
+                if (fieldData.hasElement(name)) {
+                    value = fieldData.getElementAsString(name);
+                    fieldsResolved++;
+                }
+                bond.setField(field, value);
+                journal(id, field, value);
+                if (cache != null) {
+                    try {
+                        cache.put(id, field, value);
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        }
+    }
+
+    /** The security string for the request, isins need a prefix while figis do not **/
+    public String securityString(String id) {
+        return conventionalBonds.get(id).isin ? "/isin/" + id : id;
+    }
+
+    public int getRequestsSent() {
+        return requestsSent;
+    }
+
+    public int getFieldsRequested() {
+        return fieldsRequested;
+    }
+
+    public int getFieldsResolved() {
+        return fieldsResolved;
+    }
+}
@@ -0,0 +1,228 @@
+import com.bloomberglp.blpapi.Element;
+import com.bloomberglp.blpapi.Event;
+import com.bloomberglp.blpapi.Name;
+import com.bloomberglp.blpapi.Names;
+import com.bloomberglp.blpapi.Request;
+import com.bloomberglp.blpapi.Service;
+import com.bloomberglp.blpapi.test.TestUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+// Runs BatchLookup offline against a stub Channel: requests are built on a refdata schema deserialized by TestUtil, and
+// every request is answered with TestUtil events carrying several securities and fields, split over PARTIAL_RESPONSE events
+// and the final RESPONSE, with a security error and fields the service has no value for. A last run answers with a
+// RequestFailure status, which has to fail the lookup instead of waiting for a response that never comes
+// Prints the requests sent, the fields requested and the fields resolved, and checks the values set on the bonds
+// usage: BatchLookupHarness [bonds] [securities per request]
+public class BatchLookupHarness {
+
+  private static final String SCHEMA = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"
+      + "<ServiceDefinition name=\"blp.refdata\" version=\"1.0.1.0\">"
+      + "<service name=\"//blp/refdata\" version=\"1.0.0.0\">"
+      + "<operation name=\"ReferenceDataRequest\" serviceId=\"84\">"
+      + "<request>ReferenceDataRequest</request><response>Response</response>"
+      + "<responseSelection>ReferenceDataResponse</responseSelection></operation></service>"
+      + "<schema>"
+      + "<sequenceType name=\"ReferenceDataRequest\">"
+      + "<element name=\"securities\" type=\"String\" maxOccurs=\"unbounded\"/>"
+      + "<element name=\"fields\" type=\"String\" maxOccurs=\"unbounded\"/></sequenceType>"
+      + "<choiceType name=\"Response\"><element name=\"ReferenceDataResponse\" type=\"ReferenceDataResponseType\"/></choiceType>"
+      + "<sequenceType name=\"ReferenceDataResponseType\">"
+      + "<element name=\"responseError\" type=\"ErrorInfo\" minOccurs=\"0\" maxOccurs=\"1\"/>"
+      + "<element name=\"securityData\" type=\"ReferenceSecurityData\" minOccurs=\"1\" maxOccurs=\"unbounded\"/></sequenceType>"
+      + "<sequenceType name=\"ReferenceSecurityData\">"
+      + "<element name=\"security\" type=\"String\"/>"
+      + "<element name=\"securityError\" type=\"ErrorInfo\" minOccurs=\"0\" maxOccurs=\"1\"/>"
+      + "<element name=\"fieldData\" type=\"FieldData\"/></sequenceType>"
+      + "<sequenceType name=\"FieldData\">"
+      + "<element name=\"DS134\" type=\"String\" minOccurs=\"0\"/><element name=\"DS031\" type=\"String\" minOccurs=\"0\"/>"
+      + "<element name=\"DS035\" type=\"String\" minOccurs=\"0\"/><element name=\"DS004\" type=\"String\" minOccurs=\"0\"/>"
+      + "<element name=\"RA001\" type=\"String\" minOccurs=\"0\"/>"
+      + "<element name=\"RA002\" type=\"String\" minOccurs=\"0\"/></sequenceType>"
+      + "<sequenceType name=\"ErrorInfo\">"
+      + "<element name=\"source\" type=\"String\"/><element name=\"code\" type=\"Int64\"/>"
+      + "<element name=\"category\" type=\"String\"/><element name=\"message\" type=\"String\"/></sequenceType>"
+      + "</schema></ServiceDefinition>";
+  private static final Name SECURITIES = new Name("securities");
+  private static final Name FIELDS = new Name("fields");
+  private static final int SECURITIES_PER_MESSAGE = 3; // a response of more securities comes in several events
+  private static final int SECURITY_ERROR_EVERY = 17;
+  private static final int NO_SNP_EVERY = 5; // the service has no S&P rating for these, they become NR
+
+  public static void main(String[] args) throws Exception {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int perRequest = args.length > 1 ? Integer.parseInt(args[1]) : 25;
+    Service service = service();
+
+    Map<String, BloombergMain.Bond> bonds = bonds(count);
+    StubChannel channel = new StubChannel(service, false);
+    BatchLookup lookup = new BatchLookup(channel, bonds, perRequest);
+    boolean ok = lookup.lookupMissingFields(new ArrayList<>(bonds.keySet()));
+    System.out.printf("%d bonds, up to %d securities per request: %s, %d requests sent, %d fields requested, %d fields resolved, "
+            + "%d events (%d partial)%n", count, perRequest, ok ? "ok" : "failed", lookup.getRequestsSent(), lookup.getFieldsRequested(),
+        lookup.getFieldsResolved(), channel.eventsServed, channel.partialEvents);
+
+    int requested = 0;
+    for (Map.Entry<String, BloombergMain.Bond> entry : bonds.entrySet()) {
+      BloombergMain.Bond bond = entry.getValue();
+      if (channel.withError.contains(lookup.securityString(entry.getKey()))) { // skipped by the lookup, still missing its fields
+        check(!bond.getMissingFields().isEmpty(), entry.getKey() + " had a security error but got values");
+        continue;
+      }
+      check(bond.getMissingFields().isEmpty(), entry.getKey() + " still misses " + bond.getMissingFields());
+      check("2019".equals(bond.issuanceYear) && bond.maturity != null && "EUR".equals(bond.ccy), entry.getKey() + " got wrong values");
+      check(channel.withoutSnp.contains(lookup.securityString(entry.getKey())) ? "NR".equals(bond.snpRating) : "AA".equals(bond.snpRating),
+          entry.getKey() + " got the S&P rating " + bond.snpRating);
+    }
+    for (BloombergMain.Bond bond : bonds(count).values()) {
+      requested += bond.getMissingFields().size();
+    }
+    check(ok && lookup.getFieldsRequested() == requested, "expected " + requested + " fields requested");
+    check(lookup.getFieldsResolved() < requested, "the security errors and the missing ratings cannot resolve");
+    System.out.printf("values checked, %d bonds with a security error left as they were, %d without an S&P rating set to NR%n",
+        channel.withError.size(), channel.withoutSnp.size());
+
+    StubChannel failing = new StubChannel(service, true);
+    BatchLookup failed = new BatchLookup(failing, bonds(count), perRequest);
+    check(!failed.lookupMissingFields(new ArrayList<>(bonds.keySet())), "a RequestFailure has to fail the lookup");
+    System.out.printf("RequestFailure: the lookup returned false after %d request, %d fields resolved%n", failed.getRequestsSent(),
+        failed.getFieldsResolved());
+  }
+
+  // the refdata service of the schema above, enough to create requests and format responses
+  static Service service() throws IOException {
+    return TestUtil.deserializeService(new ByteArrayInputStream(SCHEMA.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  // every other bond is an isin, they miss either the issue and maturity dates, the ratings or all but the issuer
+  static Map<String, BloombergMain.Bond> bonds(int count) {
+    Map<String, BloombergMain.Bond> bonds = new LinkedHashMap<>();
+    for (int i = 0; i < count; i++) {
+      boolean isin = i % 2 == 0;
+      BloombergMain.Bond bond = new BloombergMain.Bond("Issuer " + i / 10, isin);
+      switch (i % 3) {
+        case 0:
+          bond.moodysRating = "A2";
+          bond.snpRating = "AA";
+          bond.ccy = "EUR";
+          break;
+        case 1:
+          bond.setField(BloombergMain.Bond.ISSUE_DATE, "2019-05-20");
+          bond.setField(BloombergMain.Bond.MATURITY, "2029-05-20");
+          bond.ccy = "EUR";
+          break;
+        default:
+          break;
+      }
+      bonds.put(String.format(isin ? "XS%010d" : "BBG%09d", i), bond);
+    }
+    return bonds;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  // answers each request right away with the events the session would deliver, nextEvent hands them out in order
+  static class StubChannel implements BatchLookup.Channel {
+    private final Service service;
+    private final boolean failRequests;
+    private final Queue<Event> events = new ArrayDeque<>();
+    private final List<String> withError = new ArrayList<>();
+    private final List<String> withoutSnp = new ArrayList<>();
+    private int securitiesSeen = 0;
+    private int eventsServed = 0;
+    private int partialEvents = 0;
+
+    StubChannel(Service service, boolean failRequests) {
+      this.service = service;
+      this.failRequests = failRequests;
+    }
+
+    @Override
+    public Request createRequest() {
+      return service.createRequest("ReferenceDataRequest");
+    }
+
+    @Override
+    public void sendRequest(Request request) {
+      if (failRequests) {
+        Event status = TestUtil.createEvent(Event.EventType.REQUEST_STATUS);
+        TestUtil.appendMessage(status, TestUtil.getAdminMessageDefinition(Names.REQUEST_FAILURE)).formatMessageXml(
+            "<RequestFailure><reason><source>stub</source><errorCode>-1</errorCode><category>TIMEOUT</category>"
+                + "<description>Request timed out</description></reason></RequestFailure>");
+        events.add(status);
+        return;
+      }
+      Element securities = request.getElement(SECURITIES);
+      Element fields = request.getElement(FIELDS);
+      for (int from = 0; from < securities.numValues(); from += SECURITIES_PER_MESSAGE) {
+        StringBuilder xml = new StringBuilder("<ReferenceDataResponse>");
+        for (int i = from; i < Math.min(securities.numValues(), from + SECURITIES_PER_MESSAGE); i++) {
+          String security = securities.getValueAsString(i);
+          xml.append("<securityData><security>").append(security).append("</security>");
+          if (securitiesSeen++ % SECURITY_ERROR_EVERY == 0) {
+            withError.add(security);
+            xml.append("<securityError><source>stub</source><code>15</code><category>BAD_SEC</category>"
+                + "<message>Unknown/Invalid security</message></securityError>");
+          }
+          xml.append("<fieldData>");
+          for (int f = 0; f < fields.numValues(); f++) {
+            String field = fields.getValueAsString(f);
+            if (field.equals(BloombergMain.Bond.SNP_RATING) && securitiesSeen % NO_SNP_EVERY == 0) {
+              withoutSnp.add(security);
+              continue;
+            }
+            xml.append('<').append(field).append('>').append(value(field)).append("</").append(field).append('>');
+          }
+          xml.append("</fieldData></securityData>");
+        }
+        boolean last = from + SECURITIES_PER_MESSAGE >= securities.numValues();
+        Event event = TestUtil.createEvent(last ? Event.EventType.RESPONSE : Event.EventType.PARTIAL_RESPONSE);
+        TestUtil.appendMessage(event, service.getOperation("ReferenceDataRequest").responseDefinition(0))
+            .formatMessageXml(xml.append("</ReferenceDataResponse>").toString());
+        events.add(event);
+        if (!last) {
+          partialEvents++;
+        }
+      }
+    }
+
+    @Override
+    public Event nextEvent() {
+      Event event = events.poll();
+      if (event == null) {
+        throw new IllegalStateException("no event left, the lookup would block on the session here");
+      }
+      eventsServed++;
+      return event;
+    }
+
+    private static String value(String field) {
+      switch (field) {
+        case BloombergMain.Bond.ISSUER:
+          return "Issuer";
+        case BloombergMain.Bond.ISSUE_DATE:
+          return "2019-05-20";
+        case BloombergMain.Bond.MATURITY:
+          return "2029-05-20";
+        case BloombergMain.Bond.CURRENCY:
+          return "EUR";
+        case BloombergMain.Bond.MOODYS_RATING:
+          return "A2";
+        default:
+          return "AA";
+      }
+    }
+  }
+}
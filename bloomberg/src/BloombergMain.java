@@ -8,10 +8,15 @@ import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 import java.io.*;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
-import java.time.temporal.IsoFields;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class BloombergMain {
 
@@ -20,10 +25,24 @@ public class BloombergMain {
     private static final Name FIELD_DATA = new Name("fieldData");
     private static final Name SECURITY_DATA = new Name("securityData");
     private static final Name RESPONSE_ERROR = new Name("responseError");
+    private static final int MONTHLY_API_BUDGET = 500000; // calls per month we allow ourselves, below the terminal's limit
 
     private String field;
     private Session session;
-    private int apiCallsMade = 0;
+    private final AtomicInteger apiCallsMade = new AtomicInteger(); // updated from the pool threads in parallel mode
+    private boolean batchLookups = false; // look up the missing fields of all candidates of an issuer in batched requests
+    private BatchLookup batchLookup;
+    private boolean asyncLookups = false; // look up the missing fields of all candidates of an issuer concurrently
+    private AsyncLookup asyncLookup;
+    private LookupCache cache; // lookups from earlier runs, consulted before spending the limit
+    private QuotaScheduler scheduler; // rate limit and monthly budget, lookups it refuses are deferred
+    private static final String DEFERRED = "#DEFERRED"; // returned by lookup when the budget is used up
+    private final PackedBonds packer = new PackedBonds(); // packs the matching fields of a bond into a single long key
+    private FieldSelectivity fieldStats = new FieldSelectivity(); // which fields reject candidates most often, per issuer
+    private int threads = 1; // issuers matched concurrently, 1 is the plain sequential loop
+    private static final int SPLIT_PROFILES = 256; // profiles of one issuer probed by a single task, larger issuers are split
+    private final AtomicInteger greenBondsDone = new AtomicInteger();
+    private final Object sessionLock = new Object(); // a synchronous request and its response must not interleave with another
 
     private final Map<String, Bond> conventionalBonds = new HashMap<>(); // map of conventional bond ids to bond object; used to lookup details of potential matches easily
     private final Map<String, List<String>> conventionalBondsByIssuer = new HashMap<>(); // map of conventional bonds (issuerName -> bondID)
@@ -31,119 +50,436 @@ public class BloombergMain {
     private final List<Pair<Bond, Bond>> matchedBonds = new ArrayList<>(); // list of pairs of matched bonds
     public static final Map<Bond, String> matchedBondIds = new HashMap<>(); // conventional bond to id, only the matched bonds should be here, used for exporting data
     private final List<String> processedIssuers = new ArrayList<>();
+    private MatchJournal journal; // lookups and finished issuers of the run, null to rewrite the outputs on every error instead
+    private final Map<String, IssuerMatches> resumed = new HashMap<>(); // issuers restored from the journal
+    private static final long COMPACT_MILLIS = 10 * 60 * 1000; // how often the outputs are rewritten from the journaled progress
+
+    Map<String, Bond> getConventionalBonds() {
+        return conventionalBonds;
+    }
+
+    Map<String, List<String>> getConventionalBondsByIssuer() {
+        return conventionalBondsByIssuer;
+    }
+
+    Map<String, List<Bond>> getGreenBondsByIssuer() {
+        return greenBondsByIssuer;
+    }
+
+    List<Pair<Bond, Bond>> getMatchedBonds() {
+        return matchedBonds;
+    }
+
+    void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    void setJournal(MatchJournal journal) {
+        this.journal = journal;
+    }
+
+    void setCache(LookupCache cache) {
+        this.cache = cache;
+    }
+
+    void setFieldStats(FieldSelectivity fieldStats) {
+        this.fieldStats = fieldStats;
+    }
 
     /** Tries to match the green bonds to conventional ones
      * PRE: the hashmaps are populated **/
     public void match() {
-        int num = 0;
-        for (String issuer : greenBondsByIssuer.keySet()) {
-            if (!conventionalBondsByIssuer.containsKey(issuer) || conventionalBondsByIssuer.get(issuer).isEmpty()) {
-                System.out.println("issuer not found");
-                continue; //skip to next issuer
-            } else {
+        matchAll();
+        writeToExcel();
+    }
+
+    /** Matches every issuer, on one thread or on the pool when threads > 1, returns false if a lookup failed
+     * Either way the matches are merged in issuer order. Which bonds match doesn't depend on the order fields are looked up in,
+     * and each pool task orders its lookups with its own copy of the statistics, so runs on the pool look up the same fields every time
+     * The pairs don't depend on the number of threads unless the budget runs out, the number of lookups may **/
+    boolean matchAll() {
+        List<String> issuers = new ArrayList<>(greenBondsByIssuer.keySet());
+        Map<String, IssuerMatches> results = new ConcurrentHashMap<>(resumed); // issuers finished before a resume are not matched again
+        AtomicBoolean failed = new AtomicBoolean(false);
+        long lastCompaction = System.currentTimeMillis();
+        if (threads > 1) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            FieldSelectivity start = fieldStats.copy(); // every task starts from the same statistics, whichever ran first
+            for (String issuer : issuers) {
+                FieldSelectivity stats = start.copy();
+                tasks.add(resumed.containsKey(issuer) ? null : pool.submit(() -> {
+                    if (!failed.get() && !matchIssuer(issuer, new PackedBonds(), stats, results)) { // own packer, dictionaries are not thread safe
+                        failed.set(true); // the issuers not started yet are skipped
+                    }
+                }));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                if (tasks.get(i) != null) {
+                    tasks.get(i).join();
+                }
+                lastCompaction = compactIfDue(issuers.subList(0, i + 1), results, lastCompaction);
+            }
+            pool.shutdown();
+        } else {
+            for (int i = 0; i < issuers.size(); i++) {
+                if (!resumed.containsKey(issuers.get(i)) && !matchIssuer(issuers.get(i), packer, fieldStats, results)) {
+                    failed.set(true);
+                    break; // some error was thrown, stop matching
+                }
+                lastCompaction = compactIfDue(issuers.subList(0, i + 1), results, lastCompaction);
+            }
+        }
+        merge(issuers, results);
+        return !failed.get();
+    }
+
+    /** Replaces the merged matches with those of the given issuers, in issuer order **/
+    private void merge(List<String> issuers, Map<String, IssuerMatches> results) {
+        processedIssuers.clear();
+        matchedBonds.clear();
+        for (String issuer : issuers) {
+            IssuerMatches matches = results.get(issuer);
+            if (matches != null) {
                 processedIssuers.add(issuer);
+                matchedBonds.addAll(matches.pairs);
+                matchedBondIds.putAll(matches.ids);
             }
-            List<Bond> greenBonds = greenBondsByIssuer.get(issuer);
-            List<String> cBonds = conventionalBondsByIssuer.get(issuer);
-            for (Bond greenBond : greenBonds) {
-                num++;
-                boolean match = false;
-                for (String cBond : cBonds) { // try and match the green bond with the information already given to us
-                    Bond bond = conventionalBonds.get(cBond);
-                    if (greenBond.greenAndConventionalEquals(bond)) {
-                        matchedBonds.add(new Pair<>(greenBond, bond));
-                        matchedBondIds.put(bond, cBond);
-                        System.out.println("found a match locally");
-                        match = true;
-                    }
+        }
+    }
+
+    /** With a journal the outputs are no longer rewritten on every error, so they are compacted from the journaled progress
+     * every COMPACT_MILLIS instead: the issuers done so far, in issuer order. Returns the time of the last compaction **/
+    private long compactIfDue(List<String> done, Map<String, IssuerMatches> results, long lastCompaction) {
+        if (journal == null || System.currentTimeMillis() - lastCompaction < COMPACT_MILLIS) {
+            return lastCompaction;
+        }
+        merge(done, results);
+        writeToExcel();
+        return System.currentTimeMillis();
+    }
+
+    /** Matches the green bonds of one issuer and stores the outcome in results, returns false if a lookup failed
+     * The lookups are ordered and recorded with stats, the shared statistics on one thread and the task's own copy on the pool
+     * May run on a pool thread, so it only changes the issuer's own bonds and otherwise uses the thread safe services **/
+    private boolean matchIssuer(String issuer, PackedBonds packer, FieldSelectivity stats, Map<String, IssuerMatches> results) {
+        if (!conventionalBondsByIssuer.containsKey(issuer) || conventionalBondsByIssuer.get(issuer).isEmpty()) {
+            System.out.println("issuer not found");
+            return true; //skip to next issuer
+        }
+        IssuerMatches out = new IssuerMatches();
+        results.put(issuer, out); // processed even if a lookup fails, like before
+        List<Bond> greenBonds = greenBondsByIssuer.get(issuer);
+        List<String> cBonds = conventionalBondsByIssuer.get(issuer);
+        MatchIndex index = new MatchIndex(cBonds, conventionalBonds, packer); // hash join instead of comparing every green bond with every conventional one
+        if ((batchLookups || asyncLookups) && !prefetchMissingFields(greenBonds, cBonds, index)) {
+            return false; // some error was thrown, return to terminate
+        }
+        // green bonds with the same matching profile match the same conventional bonds, so evaluate each profile once
+        Map<Object, List<Bond>> profiles = new LinkedHashMap<>();
+        for (Bond greenBond : greenBonds) {
+            long key = packer.key(greenBond);
+            // a key whose rating overflowed stands for several spellings, such a bond is a profile of its own
+            profiles.computeIfAbsent(PackedBonds.isExact(key) ? key : greenBond, k -> new ArrayList<>()).add(greenBond);
+        }
+        List<List<Bond>> groups = new ArrayList<>(profiles.values());
+        List<List<Integer>> matches = new ArrayList<>(Collections.nCopies(groups.size(), null));
+        int completed = groups.size(); // profiles matched, the ones before a failed lookup are still kept
+        if (ForkJoinTask.inForkJoinPool() && !index.hasMissingFields() && groups.size() > SPLIT_PROFILES) {
+            // nothing left to look up so every profile is a read only probe, split a large issuer so it doesn't hold up the pool
+            new ProbeTask(index, groups, matches, 0, groups.size()).invoke();
+        } else {
+            for (int i = 0; i < groups.size(); i++) {
+                matches.set(i, matchProfile(issuer, groups.get(i).get(0), cBonds, index, stats));
+                if (matches.get(i) == null) {
+                    completed = i; // some error was thrown, keep the matches already paid for and then terminate
+                    break;
                 }
-                if (match) { // if a match was found locally, skip to the next green bond
-                    continue;
+            }
+        }
+        for (int i = 0; i < completed; i++) {
+            for (Bond greenBond : groups.get(i)) { // fan the outcome, matched or not, out to every green bond of the profile
+                for (int position : matches.get(i)) {
+                    out.pairs.add(new Pair<>(greenBond, index.bond(position)));
+                    out.ids.put(index.bond(position), index.id(position));
                 }
-                // no match from the bonds map, we have to lookup
-                for (String cBond : cBonds) {
-                    if (conventionalBonds.containsKey(cBond)) { // should always be true, sanity check
-                        // we already have the bond stored, but it either doesn't match or we are missing fields
-                        Bond bond = conventionalBonds.get(cBond);
-                        List<String> missingFields = bond.getMissingFields();
-                        if (missingFields.isEmpty()) { // we have no missing fields, so it's a mismatch
-                            break; // skip to next conventional bond and keep checking
-                        } else {
-                            // check if the fields we have are equal
-                            boolean fieldsEqual = greenBond.areAllPresentFieldsEqual(bond);
-                            // if they are, perform lookup
-                            if (fieldsEqual) {
-                                // bool to keep track of mismatches, if true we break out the loop to save api calls
-                                boolean mismatch = false;
-                                for (String missingField : missingFields) {
-                                    // perform lookup, one field at a time
-                                    String lookup = lookup(cBond, missingField);
-                                    if (lookup == null) {
-                                        return;// some error was thrown, return to terminate
-                                    }
-                                    // based on the missing field, set the value in the bond object for later checks
-                                    switch (missingField) {
-                                        case Bond.ISSUER: // this should not be the case ever
-                                            bond.issuer = lookup;
-                                            mismatch = !greenBond.issuer.equals(lookup);
-                                            break;
-                                        case Bond.CURRENCY:
-                                            bond.ccy = lookup;
-                                            mismatch = !greenBond.ccy.equals(lookup);
-                                            break;
-                                        case Bond.ISSUE_DATE:
-                                            bond.setIssuance(lookup);
-                                            mismatch = !greenBond.issuanceYear.equals(bond.issuanceYear) || !greenBond.issuanceTerm.equals(bond.issuanceTerm);
-                                            break;
-                                        case Bond.MATURITY:
-                                            if (lookup.equals("#N/A N/A")) {
-                                                lookup = "#N/A Field Not Applicable";
-                                            }
-                                            bond.setMaturity(lookup);
-                                            mismatch = !greenBond.maturity.equals(bond.maturity);
-                                            break;
-                                        case Bond.MOODYS_RATING:
-                                            if (lookup.equals("#N/A N/A")) {
-                                                lookup = "NR"; // treat NR and empty responses here equally
-                                            }
-                                            bond.moodysRating = lookup;
-                                            mismatch = !greenBond.moodysRating.equals(lookup);
-                                            break;
-                                        case Bond.SNP_RATING:
-                                            if (lookup.equals("#N/A N/A")) {
-                                                lookup = "NR"; // treat NR and empty responses here equally
-                                            }
-                                            bond.snpRating = lookup;
-                                            mismatch = !greenBond.snpRating.equals(lookup);
-                                            break;
-                                        default:
-                                            System.out.println("unexpected field id");
-                                            break;
-                                    }
-                                    // stop looking up other fields from this bond if one is mismatched
-                                    if (mismatch) {
-                                        break;
-                                    }
-                                } // here we have either matched the bond or have exited the loop early
-                                if (greenBond.greenAndConventionalEquals(bond)) {
-                                    matchedBonds.add(new Pair<>(greenBond, bond));
-                                    matchedBondIds.put(bond, cBond);
-                                    System.out.println("Matched a bond!");
-                                    break;
-                                }
-                            }  // we have some fields, but they are not equal so continue to next conventional bond
+                if (greenBondsDone.incrementAndGet() % 500 == 0) {
+                    System.out.println("500 green bonds done");
+                }
+            }
+        }
+        if (completed < groups.size()) {
+            return false; // not journaled, a resumed run matches the whole issuer again
+        }
+        if (journal != null) {
+            journalIssuer(issuer, greenBonds, out);
+        }
+        return true;
+    }
 
-                        }
-                    } else {
-                        System.out.println("wth isn't this in the map?");
+    /** Checkpoints a fully matched issuer, its green bonds are journaled by position in the issuer's list **/
+    private void journalIssuer(String issuer, List<Bond> greenBonds, IssuerMatches matches) {
+        Map<Bond, Integer> positions = new IdentityHashMap<>();
+        for (int i = 0; i < greenBonds.size(); i++) {
+            positions.put(greenBonds.get(i), i);
+        }
+        List<Integer> greenPositions = new ArrayList<>(matches.pairs.size());
+        List<String> conventionalIds = new ArrayList<>(matches.pairs.size());
+        for (Pair<Bond, Bond> pair : matches.pairs) {
+            greenPositions.add(positions.get(pair.getKey()));
+            conventionalIds.add(matches.ids.get(pair.getValue()));
+        }
+        try {
+            journal.issuer(issuer, greenPositions, conventionalIds);
+        } catch (IOException e) {
+            e.printStackTrace(); // the issuer is matched again if the run is resumed
+        }
+    }
+
+    /** Replays the journal of an interrupted run: sets the looked up values on the bonds again and restores the issuers that were finished,
+     * so matching carries on from the last checkpoint without repeating any API call **/
+    void resume() throws IOException {
+        int records = journal.replay(new MatchJournal.Listener() {
+            @Override
+            public void lookup(String securityId, String field, String value) {
+                Bond bond = conventionalBonds.get(securityId);
+                if (bond != null) {
+                    bond.setField(field, value);
+                }
+            }
+
+            @Override
+            public void issuer(String issuer, int[] greenPositions, String[] conventionalIds) {
+                List<Bond> greenBonds = greenBondsByIssuer.get(issuer);
+                IssuerMatches matches = new IssuerMatches();
+                for (int i = 0; i < greenPositions.length; i++) {
+                    Bond conventional = conventionalBonds.get(conventionalIds[i]);
+                    if (greenBonds == null || greenPositions[i] >= greenBonds.size() || conventional == null) {
+                        System.out.println("journal does not match the bonds loaded, matching " + issuer + " again");
+                        return;
                     }
+                    matches.pairs.add(new Pair<>(greenBonds.get(greenPositions[i]), conventional));
+                    matches.ids.put(conventional, conventionalIds[i]);
                 }
-                if (num % 500 == 0) {
-                    System.out.println("500 green bonds done");
+                resumed.put(issuer, matches);
+            }
+        });
+        System.out.println("resumed " + resumed.size() + " issuers from " + records + " journal records");
+    }
+
+    /** Matches of one issuer, kept apart until all issuers are done and then merged in issuer order **/
+    private static class IssuerMatches {
+        private final List<Pair<Bond, Bond>> pairs = new ArrayList<>();
+        private final Map<Bond, String> ids = new LinkedHashMap<>();
+    }
+
+    /** Probes the index for a range of profiles, halving the range until it is small enough to run **/
+    private static class ProbeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final MatchIndex index;
+        private final List<List<Bond>> groups;
+        private final List<List<Integer>> matches;
+        private final int from;
+        private final int to;
+
+        ProbeTask(MatchIndex index, List<List<Bond>> groups, List<List<Integer>> matches, int from, int to) {
+            this.index = index;
+            this.groups = groups;
+            this.matches = matches;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SPLIT_PROFILES) {
+                for (int i = from; i < to; i++) {
+                    matches.set(i, new ArrayList<>(index.probe(groups.get(i).get(0)))); // set on distinct indices of a presized list
                 }
+                return;
             }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ProbeTask(index, groups, matches, from, middle), new ProbeTask(index, groups, matches, middle, to));
+        }
+    }
+
+    /** Finds the conventional bonds matching the green bond, first locally and then by looking up missing fields
+     * Returns their positions in the issuer's list, or null if a lookup failed **/
+    private List<Integer> matchProfile(String issuer, Bond greenBond, List<String> cBonds, MatchIndex index, FieldSelectivity stats) {
+        List<Integer> local = index.probeLoaded(greenBond); // try and match the green bond with the information already given to us
+        if (!local.isEmpty()) { // if a match was found locally, no need to lookup
+            System.out.println("found a match locally");
+            return new ArrayList<>(local);
+        }
+        // no match from the bonds map, we have to lookup
+        // only the bonds with missing fields whose present fields are all equal can still match, the index finds them without a scan
+        // bonds completed by earlier lookups are candidates too, so which bonds match doesn't depend on the order fields were looked up in
+        int firstComplete = index.firstComplete(); // a loaded bond with no missing fields is a mismatch, and ends the search like the scan did
+        for (int position : index.probeCandidates(greenBond)) {
+            if (position > firstComplete) {
+                break;
+            }
+            String cBond = cBonds.get(position);
+            // we already have the bond stored, but we are missing fields
+            Bond bond = index.bond(position);
+            List<String> missingFields = stats.order(issuer, bond.getMissingFields()); // most discriminating field first
+            for (int i = 0; i < missingFields.size(); i++) {
+                String missingField = missingFields.get(i);
+                // perform lookup, one field at a time
+                String lookup = lookup(cBond, missingField, QuotaScheduler.priorityOf(missingFields.size() - i, missingFields.size()));
+                if (lookup == null) {
+                    return null;
+                }
+                if (lookup.equals(DEFERRED)) {
+                    break; // out of budget, keep matching with what we have locally
+                }
+                // based on the missing field, set the value in the bond object for later checks
+                bond.setField(missingField, lookup);
+                journalLookup(cBond, missingField, lookup);
+                boolean mismatch = bond.isMismatch(greenBond, missingField);
+                stats.record(issuer, missingField, mismatch);
+                // stop looking up other fields from this bond if one is mismatched, to save api calls
+                if (mismatch) {
+                    break;
+                }
+            } // here we have either matched the bond or have exited the loop early
+            index.refresh(position); // the lookups changed the bond's fields
+            if (greenBond.greenAndConventionalEquals(bond)) {
+                System.out.println("Matched a bond!");
+                return Collections.singletonList(position);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    /** Looks up (batched or pipelined) the missing fields of every conventional bond of the issuer that could still match one of its green bonds
+     * Afterwards the candidates are fully known, so the index can match them locally **/
+    private boolean prefetchMissingFields(List<Bond> greenBonds, List<String> cBonds, MatchIndex index) {
+        List<String> candidates = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        Set<Integer> compatible = new TreeSet<>(); // in list order
+        for (Bond greenBond : greenBonds) {
+            compatible.addAll(index.probeCompatible(greenBond));
+        }
+        for (int position : compatible) {
+            candidates.add(cBonds.get(position));
+            positions.add(position);
+        }
+        if (candidates.isEmpty()) {
+            return true;
+        }
+        if (asyncLookups) {
+            boolean ok = lookupAsync(candidates);
+            for (int position : positions) {
+                index.refresh(position);
+            }
+            index.markLoaded(); // the prefetched bonds are fully known, match them like the loaded ones
+            return ok;
+        }
+        boolean ok;
+        synchronized (sessionLock) { // batches read their responses off the session like the single lookups
+            if (batchLookup == null) {
+                if (session == null) {
+                    System.out.println("session no longer open");
+                    return false;
+                }
+                batchLookup = new BatchLookup(BatchLookup.of(session), conventionalBonds, 100);
+                batchLookup.setCache(cache);
+                batchLookup.setScheduler(scheduler);
+                batchLookup.setJournal(journal);
+            }
+            int requestsBefore = batchLookup.getRequestsSent();
+            ok = batchLookup.lookupMissingFields(candidates);
+            apiCallsMade.addAndGet(batchLookup.getRequestsSent() - requestsBefore);
+        }
+        for (int position : positions) {
+            index.refresh(position);
+        }
+        index.markLoaded();
+        return ok;
+    }
+
+    /** Sends one lookup per missing field of every candidate at once and waits for all of them
+     * Values are set in getMissingFields order once all have arrived, the maturity bucket needs the issue date **/
+    private boolean lookupAsync(List<String> candidates) {
+        if (asyncLookup == null) {
+            System.out.println("session no longer open");
+            return false;
+        }
+        Map<String, Map<String, CompletableFuture<String>>> futures = new LinkedHashMap<>();
+        for (String id : candidates) {
+            Bond bond = conventionalBonds.get(id);
+            String security = bond.isin ? "/isin/" + id : id;
+            Map<String, CompletableFuture<String>> byField = new LinkedHashMap<>();
+            for (String missingField : bond.getMissingFields()) {
+                String cached = getCached(id, missingField);
+                if (cached != null) {
+                    byField.put(missingField, CompletableFuture.completedFuture(cached));
+                    continue;
+                }
+                if (!acquire(id, missingField, QuotaScheduler.priorityOf(bond.getMissingFields().size() - byField.size(), bond.getMissingFields().size()))) {
+                    continue; // out of budget, this field is deferred and each field after it is tried and deferred the same way
+                }
+                byField.put(missingField, asyncLookup.lookup(security, missingField).whenComplete((value, error) -> {
+                    if (value != null) {
+                        putCached(id, missingField, value);
+                    }
+                }));
+                apiCallsMade.incrementAndGet();
+            }
+            futures.put(id, byField);
+        }
+        boolean ok = true;
+        for (Map.Entry<String, Map<String, CompletableFuture<String>>> entry : futures.entrySet()) {
+            Bond bond = conventionalBonds.get(entry.getKey());
+            for (Map.Entry<String, CompletableFuture<String>> field : entry.getValue().entrySet()) {
+                try {
+                    bond.setField(field.getKey(), field.getValue().get());
+                    journalLookup(entry.getKey(), field.getKey(), field.getValue().get());
+                } catch (ExecutionException e) { // only a failed request or a terminated session, a bad security comes back as N/A
+                    System.out.println(e.getCause().getMessage());
+                    ok = false;
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return false;
+                }
+            }
+        }
+        return ok;
+    }
+
+    /** Loads the green and conventional exports, from the snapshot if none of them changed since it was written
+     * Otherwise parses them (streaming or not) and writes a new snapshot for the next run **/
+    public void loadUniverse(String snapshotFile, boolean stream, String[] greenFiles, String[] conventionalFiles) {
+        List<File> sources = new ArrayList<>();
+        for (String file : greenFiles) {
+            sources.add(new File(file));
+        }
+        for (String file : conventionalFiles) {
+            sources.add(new File(file));
+        }
+        File snapshot = new File(snapshotFile);
+        if (UniverseSnapshot.load(snapshot, sources, this)) {
+            System.out.println("loaded the bonds from " + snapshotFile);
+            return;
+        }
+        if (stream) {
+            streamFromExcelGreen(greenFiles);
+            for (String file : conventionalFiles) {
+                streamFromExcelConventional(file);
+            }
+        } else {
+            readFromExcelGreen(greenFiles);
+            for (String file : conventionalFiles) {
+                readFromExcelConventional(file);
+            }
+        }
+        try {
+            UniverseSnapshot.write(snapshot, sources, this);
+        } catch (IOException e) {
+            System.out.println("unable to write the snapshot, the next run will parse the exports again");
         }
-        writeToExcel();
     }
 
     /** Reads the excel file provided and populates the bondsByIssuer map
@@ -182,27 +518,7 @@ public class BloombergMain {
 
             String issuer = row.getCell(0).getStringCellValue();
             String id = row.getCell(1).getStringCellValue();
-
-            List<String> bonds = conventionalBondsByIssuer.get(issuer);
-
-            if (id.equals("#N/A Field Not Applicable")) {
-                continue;
-            }
-
-            if (bonds == null) { // we found a new issuer, initialise the list and add the id
-                ArrayList<String> list = new ArrayList<>();
-                list.add(id);
-                conventionalBondsByIssuer.put(issuer, list);
-            } else {
-                bonds.add(id);
-                conventionalBondsByIssuer.put(issuer, bonds);
-            }
-            // add id with null bond in the bondMap
-            if (conventionalBonds.containsKey(id)) { // sanity check
-                System.out.println("bond id already in the map!!?");
-            } else {
-                conventionalBonds.put(id, new Bond(issuer, isin));
-            }
+            addConventionalBond(issuer, id, isin);
         }
 
         try {
@@ -212,6 +528,50 @@ public class BloombergMain {
         }
     }
 
+    /** Same as readFromExcelConventional but streams the sheet row by row instead of loading the whole workbook
+     * Use this for the large FIGI/ISIN exports, memory stays bounded by the maps we populate **/
+    public void streamFromExcelConventional(String fileName) {
+        final boolean[] isin = {false}; // one file has isins, all others have figis
+        try {
+            StreamingSheetReader.read(fileName, (rowNum, cells, fill) -> {
+                if (fill == StreamingSheetReader.Fill.LIGHT_BLUE) {
+                    isin[0] = cells.size() > 1 && cells.get(1).equals("ISIN");
+                    return true;
+                }
+                if (fill == StreamingSheetReader.Fill.DARK_RED || cells.size() < 2) { // dark red rows have been already processed
+                    return true;
+                }
+                addConventionalBond(cells.get(0), cells.get(1), isin[0]);
+                return true;
+            });
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Adds a conventional bond id under its issuer, the bond object only has the issuer set until we look it up **/
+    private void addConventionalBond(String issuer, String id, boolean isin) {
+        if (id.equals("#N/A Field Not Applicable")) {
+            return;
+        }
+        issuer = SymbolTable.ISSUERS.intern(issuer); // the map key and the bond share the canonical instance
+
+        List<String> bonds = conventionalBondsByIssuer.get(issuer);
+        if (bonds == null) { // we found a new issuer, initialise the list and add the id
+            ArrayList<String> list = new ArrayList<>();
+            list.add(id);
+            conventionalBondsByIssuer.put(issuer, list);
+        } else {
+            bonds.add(id);
+        }
+        // add id with null bond in the bondMap
+        if (conventionalBonds.containsKey(id)) { // sanity check
+            System.out.println("bond id already in the map!!?");
+        } else {
+            conventionalBonds.put(id, new Bond(issuer, isin));
+        }
+    }
+
     /** Reads the excel files provided and populates the greenBondsByIssuer map
      * PRE: the excel file provided must have 16 columns 'issuer name'...'ccy'
      * In the excels for green bonds we do not have issue date (needed)
@@ -286,18 +646,7 @@ public class BloombergMain {
                 String snpRating = row.getCell(snpIdx).getStringCellValue().equals("#N/A N/A") ? "NR" : row.getCell(snpIdx).getStringCellValue();
                 String ccy = ccyIdx == 0 ? "EUR" : row.getCell(ccyIdx).getStringCellValue(); // if the ccy index is 0 (never the case if present) we are missing ccy field meaning we have eur bonds
 
-                Bond bond = new Bond(issuer, maturityDate, moodysRating, snpRating, ccy, issuanceDate, true);
-
-                List<Bond> bonds = greenBondsByIssuer.get(issuer);
-
-                if (bonds == null) { // we found a new issuer, initialise the list and add the isin
-                    ArrayList<Bond> list = new ArrayList<>();
-                    list.add(bond);
-                    greenBondsByIssuer.put(issuer, list);
-                } else {
-                    bonds.add(bond);
-                    greenBondsByIssuer.put(issuer, bonds);
-                }
+                addGreenBond(new Bond(issuer, maturityDate, moodysRating, snpRating, ccy, issuanceDate, true));
             }
             try {
                 file.close();
@@ -307,49 +656,199 @@ public class BloombergMain {
         }
     }
 
+    /** Same as readFromExcelGreen but streams each sheet row by row instead of loading the whole workbook **/
+    public void streamFromExcelGreen(String... fileNames) {
+        for (String fileName : fileNames) {
+            // issuer, maturity, moodys, s&p, ccy, issue date; set from the light blue title row
+            final int[] idx = new int[6];
+            try {
+                StreamingSheetReader.read(fileName, (rowNum, cells, fill) -> {
+                    if (cells.isEmpty() || cells.get(0).isEmpty()) { // avoid weird excel error
+                        return false;
+                    }
+                    if (fill == StreamingSheetReader.Fill.DARK_RED) { // dark red rows have no conventional bonds issued by that issuer, so skip them
+                        return true;
+                    }
+                    if (fill == StreamingSheetReader.Fill.LIGHT_BLUE) { // light blue is the title row, get the indexes for the fields
+                        for (int i = 0; i < cells.size(); i++) {
+                            switch (cells.get(i)) {
+                                case "Issuer Name":
+                                    idx[0] = i;
+                                    break;
+                                case "Maturity":
+                                    idx[1] = i;
+                                    break;
+                                case "Moody Rtg":
+                                    idx[2] = i;
+                                    break;
+                                case "S&P Rating":
+                                    idx[3] = i;
+                                    break;
+                                case "Currency":
+                                    idx[4] = i;
+                                    break;
+                                case "Issue Date":
+                                    idx[5] = i;
+                                    break;
+                                default:
+                                    System.out.println("ignoring field " + cells.get(i));
+                                    break;
+                            }
+                        }
+                        return true;
+                    }
+                    String moodysRating = cell(cells, idx[2]).equals("#N/A N/A") ? "NR" : cell(cells, idx[2]);
+                    String snpRating = cell(cells, idx[3]).equals("#N/A N/A") ? "NR" : cell(cells, idx[3]);
+                    String ccy = idx[4] == 0 ? "EUR" : cell(cells, idx[4]); // missing ccy column means we have eur bonds
+                    addGreenBond(new Bond(cell(cells, idx[0]), cell(cells, idx[1]), moodysRating, snpRating, ccy, cell(cells, idx[5]), true));
+                    return true;
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+    }
+
+    private static String cell(List<String> cells, int idx) {
+        return idx < cells.size() ? cells.get(idx) : "";
+    }
+
+    private void addGreenBond(Bond bond) {
+        List<Bond> bonds = greenBondsByIssuer.get(bond.issuer);
+        if (bonds == null) { // we found a new issuer, initialise the list and add the bond
+            ArrayList<Bond> list = new ArrayList<>();
+            list.add(bond);
+            greenBondsByIssuer.put(bond.issuer, list);
+        } else {
+            bonds.add(bond);
+        }
+    }
+
     /** Looks up the specified field for the given ID
      * Uses 1 unit of monthly limit per call - avoid if possible
      * Assumes the session is open and running correctly and that the field to lookup is the field tag returned by FLDS<GO> **/
     public String lookup(String securityID, String field) {
+        return lookup(securityID, field, QuotaScheduler.Priority.SPECULATIVE);
+    }
+
+    /** Same as lookup, the priority decides how much of the monthly budget the lookup may use
+     * Returns DEFERRED if the budget for that priority is used up **/
+    public String lookup(String securityID, String field, QuotaScheduler.Priority priority) {
+        String cached = getCached(securityID, field);
+        if (cached != null) {
+            return cached; // looked up in an earlier run, no need to spend the limit again
+        }
         if (session == null) {
             System.out.println("session no longer open");
             return null;
         }
-        this.field = field; // set the field so that you know what to expect in response method
+        if (!acquire(securityID, field, priority)) {
+            return DEFERRED;
+        }
+        if (asyncLookup != null) { // the session has an EventHandler, nextEvent would throw, so wait on the pipelined lookup instead
+            return lookupThroughAsync(securityID, field);
+        }
+        String ret;
+        synchronized (sessionLock) { // in parallel mode other issuers look up at the same time, the next event must be our response
+            this.field = field; // set the field so that you know what to expect in response method
 
-        Service refDataService = session.getService("//blp/refdata");
+            Service refDataService = session.getService("//blp/refdata");
 
-        if (refDataService == null) {
-            writeToExcel();
-            return null;
-        }
+            if (refDataService == null) {
+                checkpoint();
+                return null;
+            }
 
-        Request request = refDataService.createRequest("ReferenceDataRequest");
+            Request request = refDataService.createRequest("ReferenceDataRequest");
 
-        boolean isin = conventionalBonds.get(securityID).isin; // get the bond's isin bool to shape the request accordingly
+            boolean isin = conventionalBonds.get(securityID).isin; // get the bond's isin bool to shape the request accordingly
 
-        if (isin) {
-            request.getElement(SECURITIES).appendValue("/isin/" + securityID); // isin requires this prefix
-        } else {
-            request.getElement(SECURITIES).appendValue(securityID); // figi case; no prefix required
+            if (isin) {
+                request.getElement(SECURITIES).appendValue("/isin/" + securityID); // isin requires this prefix
+            } else {
+                request.getElement(SECURITIES).appendValue(securityID); // figi case; no prefix required
+            }
+
+            request.getElement(FIELDS).appendValue(this.field);
+
+            try {
+                session.sendRequest(request, null);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            apiCallsMade.incrementAndGet();
+            ret = null;
+            try {
+                ret = processResponse();
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        if (ret != null) {
+            putCached(securityID, field, ret);
         }
 
-        request.getElement(FIELDS).appendValue(this.field);
+        return ret;
+    }
 
+    /** A single lookup sent through AsyncLookup and waited for, returns null if the request failed or the session terminated **/
+    private String lookupThroughAsync(String securityID, String field) {
+        String security = conventionalBonds.get(securityID).isin ? "/isin/" + securityID : securityID;
+        apiCallsMade.incrementAndGet();
+        String ret;
         try {
-            session.sendRequest(request, null);
-        } catch (IOException e) {
+            ret = asyncLookup.lookup(security, field).get();
+        } catch (ExecutionException e) {
+            System.out.println(e.getCause().getMessage());
+            checkpoint();
+            return null;
+        } catch (InterruptedException e) {
             e.printStackTrace();
+            return null;
+        }
+        putCached(securityID, field, ret);
+        return ret;
+    }
+
+    /** Asks the scheduler for one unit of the budget, waiting for the rate limit; refused lookups are recorded as deferred **/
+    private boolean acquire(String securityID, String field, QuotaScheduler.Priority priority) {
+        if (scheduler == null) {
+            return true;
         }
-        apiCallsMade++;
-        String ret = null;
         try {
-            ret = processResponse();
+            if (scheduler.acquire(priority)) {
+                return true;
+            }
         } catch (InterruptedException e) {
             e.printStackTrace();
         }
+        scheduler.defer(securityID, field, priority);
+        return false;
+    }
 
-        return ret;
+    /** Returns the value cached from an earlier run or null, cache errors are logged and treated as misses **/
+    private String getCached(String securityID, String field) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.get(securityID, field);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void putCached(String securityID, String field, String value) {
+        if (cache == null) {
+            return;
+        }
+        try {
+            cache.put(securityID, field, value);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     /** Process the response from Bloomberg **/
@@ -359,13 +858,13 @@ public class BloombergMain {
             for (Message msg : event) {
                 if (msg.hasElement(RESPONSE_ERROR)) {
                     System.out.println("REQUEST FAILED: " + msg.getElement(RESPONSE_ERROR));
-                    writeToExcel();
+                    checkpoint();
                     break;
                 }
                 if (event.eventType() == Event.EventType.SESSION_STATUS) {
                     if (msg.messageType().equals(Names.SESSION_TERMINATED)
                             || msg.messageType().equals(Names.SESSION_STARTUP_FAILURE)) {
-                        writeToExcel();
+                        checkpoint();
                         System.err.println("Session failed to start or terminated.");
                     }
                     continue;
@@ -373,7 +872,7 @@ public class BloombergMain {
                     if (msg.messageType().equals(Names.SERVICE_OPEN_FAILURE)) {
                         String serviceName = msg.getElementAsString(Name.getName("serviceName"));
                         System.err.println("Failed to open " + serviceName + ".");
-                        writeToExcel();
+                        checkpoint();
                     }
                     continue;
                 }
@@ -392,68 +891,90 @@ public class BloombergMain {
         return null; //?
     }
 
-    /** Writes to the output excel file all the matched bonds so far **/
-    public void writeToExcel() {
-        File outputFile = new File("matches.xlsx");
+    /** Saves the progress after an error: forces the journal to disk, or without a journal rewrites the outputs like before **/
+    private void checkpoint() {
+        if (journal == null) {
+            writeToExcel();
+            return;
+        }
         try {
-            outputFile.createNewFile(); // if file already exists will do nothing
+            journal.checkpoint();
         } catch (IOException e) {
-            System.out.println("unable to create a new file");
+            e.printStackTrace();
+            writeToExcel();
+        }
+    }
+
+    /** Journals a value set on a bond, so a resumed run sets it again instead of looking it up **/
+    private void journalLookup(String securityID, String field, String value) {
+        if (journal == null) {
+            return;
         }
-        FileOutputStream out = null;
         try {
-            out = new FileOutputStream(outputFile, false);
-        } catch (FileNotFoundException e) {
-            System.out.println("i swear i just created the file");
+            journal.lookup(securityID, field, value);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        int rownum = 0;
-        XSSFWorkbook workbook = new XSSFWorkbook();
-        XSSFSheet spreadsheet = workbook.createSheet("Matched Green Bonds");
+    }
+
+    /** Writes to the output excel file all the matched bonds so far **/
+    public void writeToExcel() {
+        ExcelOutput matches = new ExcelOutput("matches.xlsx"); // streamed, the match list can run to hundreds of thousands of rows
+        matches.sheet("Matched Green Bonds"); // first sheet even when there are no matches, the yield step reads it
         for (Pair<Bond, Bond> match : matchedBonds) {
-            Row row = spreadsheet.createRow(rownum++);
+            Row row = matches.nextRow("Matched Green Bonds");
             Cell greenBondCell = row.createCell(0);
             Cell convBondCell = row.createCell(1);
             greenBondCell.setCellValue(match.getKey().toString());
             convBondCell.setCellValue(match.getValue().toString());
         }
+        MatchTable.write(matches, matchedBonds, matchedBondIds); // same pairs one field per column, for MatchReader
         try {// write and close the file & workbook
-            workbook.write(out);
-            assert out != null;
-            out.close();
-            workbook.close();
+            matches.close();
         } catch (IOException e) {
             System.out.println("cannot write to excel file");
         }
 
-        File outputCheckedIssuers = new File("issuersProcessed.xlsx");
-        try {
-            outputCheckedIssuers.createNewFile(); // if file already exists will do nothing
-        } catch (IOException e) {
-            System.out.println("unable to create a new file");
-        }
-        FileOutputStream outputStream = null;
-        try {
-            outputStream = new FileOutputStream(outputCheckedIssuers, false);
-        } catch (FileNotFoundException e) {
-            System.out.println("i swear i just created the file");
-        }
-        int rownum2 = 0;
-        XSSFWorkbook sheets = new XSSFWorkbook();
-        XSSFSheet issuersProcessed = sheets.createSheet("Checked Issuers");
+        ExcelOutput issuersProcessed = new ExcelOutput("issuersProcessed.xlsx");
+        issuersProcessed.sheet("Checked Issuers");
         for (String s : processedIssuers) {
-            Row row = issuersProcessed.createRow(rownum2++);
+            Row row = issuersProcessed.nextRow("Checked Issuers");
             Cell issuerCell = row.createCell(0);
             issuerCell.setCellValue(s);
         }
         try {// write and close the file & sheets
-            sheets.write(outputStream);
-            assert outputStream != null;
-            outputStream.close();
-            sheets.close();
+            issuersProcessed.close();
         } catch (IOException e) {
             System.out.println("cannot write to excel file");
         }
-        System.out.println(apiCallsMade);
+        System.out.println(apiCallsMade.get());
+        if (scheduler != null && !scheduler.getDeferred().isEmpty()) {
+            writeDeferred();
+        }
+        if (cache != null) {
+            System.out.println("cache hits = " + cache.getHits() + ", misses = " + cache.getMisses() + " (" + cache.getExpired() + " expired), API calls saved = " + cache.getHits());
+        }
+        if (batchLookup != null) {
+            System.out.println("batched requests sent = " + batchLookup.getRequestsSent() + ", fields requested = " + batchLookup.getFieldsRequested() + ", fields resolved = " + batchLookup.getFieldsResolved());
+        }
+    }
+
+    /** Writes the lookups the scheduler refused for lack of budget, so they can be done once the budget resets **/
+    private void writeDeferred() {
+        ExcelOutput deferred = new ExcelOutput("deferred_lookups.xlsx");
+        deferred.sheet("Deferred Lookups");
+        for (String[] lookup : scheduler.getDeferred()) {
+            Row row = deferred.nextRow("Deferred Lookups");
+            for (int i = 0; i < lookup.length; i++) {
+                row.createCell(i).setCellValue(lookup[i]);
+            }
+        }
+        try {
+            deferred.close();
+        } catch (IOException e) {
+            System.out.println("cannot write to excel file");
+        }
+        System.out.println("deferred lookups = " + scheduler.getDeferred().size() + ", budget used this month = " + scheduler.getUsedThisMonth());
     }
 
     /** Set up connection to Bloomberg for //blp/refdata service **/
@@ -462,7 +983,15 @@ public class BloombergMain {
         sessionOptions.setServerHost("localhost");
         sessionOptions.setServerPort(8194);
 
-        this.session = new Session(sessionOptions);
+        if (asyncLookups) { // responses are dispatched to the async lookups instead of being polled with nextEvent
+            AsyncLookup.BloombergTransport transport = new AsyncLookup.BloombergTransport();
+            this.session = new Session(sessionOptions, transport);
+            this.asyncLookup = new AsyncLookup(transport, 4, 1, 64);
+            transport.setSession(session);
+            transport.setLookup(asyncLookup);
+        } else {
+            this.session = new Session(sessionOptions);
+        }
         if (!session.start()) {
             System.err.println("Failed to start session.");
             return;
@@ -473,7 +1002,7 @@ public class BloombergMain {
     }
 
     /** Class to represent Bonds **/
-    private static class Bond {
+    static class Bond {
         public static final String ISSUER = "DS134";
         public static final String MOODYS_RATING = "RA001";
         public static final String SNP_RATING = "RA002";
@@ -494,17 +1023,17 @@ public class BloombergMain {
         public boolean isin; // if true the bond's id is the ISIN, if false, it's the FIGI number
 
         public Bond(String issuer, String maturityDate, String moodysRating, String snpRating, String ccy, String issuanceDate, boolean green) {
-            this.issuer = issuer;
-            this.moodysRating = moodysRating;
-            this.snpRating = snpRating;
+            this.issuer = SymbolTable.ISSUERS.intern(issuer); // one instance per distinct value instead of one per cell
+            this.moodysRating = SymbolTable.RATINGS.intern(moodysRating);
+            this.snpRating = SymbolTable.RATINGS.intern(snpRating);
             setIssuance(issuanceDate);
             setMaturity(maturityDate);
-            this.ccy = ccy;
+            this.ccy = SymbolTable.CURRENCIES.intern(ccy);
             this.green = green;
         }
 
         public Bond(String issuer, boolean isin) {
-            this.issuer = issuer;
+            this.issuer = SymbolTable.ISSUERS.intern(issuer);
             this.isin = isin;
             this.green = false;
         }
@@ -587,6 +1116,54 @@ public class BloombergMain {
             return missing;
         }
 
+        /** Sets the field with the given field id from a lookup response
+         * Empty (#N/A N/A) ratings are treated as NR and empty maturities as perpetual **/
+        public void setField(String field, String value) {
+            switch (field) {
+                case ISSUER:
+                    issuer = SymbolTable.ISSUERS.intern(value);
+                    break;
+                case CURRENCY:
+                    ccy = SymbolTable.CURRENCIES.intern(value);
+                    break;
+                case ISSUE_DATE:
+                    setIssuance(value);
+                    break;
+                case MATURITY:
+                    setMaturity(value.equals("#N/A N/A") ? "#N/A Field Not Applicable" : value);
+                    break;
+                case MOODYS_RATING:
+                    moodysRating = value.equals("#N/A N/A") ? "NR" : SymbolTable.RATINGS.intern(value); // treat NR and empty responses here equally
+                    break;
+                case SNP_RATING:
+                    snpRating = value.equals("#N/A N/A") ? "NR" : SymbolTable.RATINGS.intern(value);
+                    break;
+                default:
+                    System.out.println("unexpected field id");
+                    break;
+            }
+        }
+
+        /** True if the given field, just set on this conventional bond, differs from the green bond's **/
+        public boolean isMismatch(Bond greenBond, String field) {
+            switch (field) {
+                case ISSUER: // this should not be the case ever
+                    return !greenBond.issuer.equals(issuer);
+                case CURRENCY:
+                    return !greenBond.ccy.equals(ccy);
+                case ISSUE_DATE:
+                    return !greenBond.issuanceYear.equals(issuanceYear) || !greenBond.issuanceTerm.equals(issuanceTerm);
+                case MATURITY:
+                    return !greenBond.maturity.equals(maturity);
+                case MOODYS_RATING:
+                    return !greenBond.moodysRating.equals(moodysRating);
+                case SNP_RATING:
+                    return !greenBond.snpRating.equals(snpRating);
+                default:
+                    return false;
+            }
+        }
+
         /** PRE: this is called on a green bond instance (with all fields present) and compares it to a conventional bond **/
         public boolean areAllPresentFieldsEqual(Bond bond) {
             boolean a = bond.issuer == null || issuer.equals(bond.issuer);
@@ -601,42 +1178,35 @@ public class BloombergMain {
         }
 
         /** Takes in a string of the maturity date and converts it in LocalDate
-         * Also sets the field 'maturity' for this bond
-         * PRE: the issuance date is already populated (will log error otherwise) **/
+         * Also sets the field 'maturity' for this bond, or leaves it to setIssuance if the issuance date is not known yet **/
         public void setMaturity(String maturityDate) {
-            if (maturityDate.equals("#N/A Field Not Applicable") || maturityDate.equals("#N/A N/A")) {
+            int day = DateCodec.parse(maturityDate);
+            if (day == DateCodec.NOT_AVAILABLE) { // #N/A Field Not Applicable or #N/A N/A
                 this.maturity = Maturities.PERPETUAL;
                 this.maturityDate = null;
                 return;
             }
-            LocalDate date;
-            date = getLocalDate(maturityDate);
-            this.maturityDate = date;
-            // subtract the maturity date from the issuance date and mod 5 to find & set the enum
-            long years = ChronoUnit.YEARS.between(issuanceDate, date);
-            if (years < 5) {
-                this.maturity = Maturities.LESS_THAN_FIVE;
-            } else if (years < 10) {
-                this.maturity = Maturities.FIVE_YEARS;
-            } else if (years < 20) {
-                this.maturity = Maturities.TEN_YEARS;
-            } else {
-                this.maturity = Maturities.TWENTY_YEARS;
+            this.maturityDate = DateCodec.toLocalDate(day);
+            if (issuanceDate != null) {
+                // whole years between the issuance and the maturity date decide the bucket
+                this.maturity = DateCodec.maturity((int) issuanceDate.toEpochDay(), day);
             }
         }
 
         public void setIssuance(String issuanceDate) {
-            if (issuanceDate.equals("#N/A N/A")) {
+            int day = DateCodec.parse(issuanceDate);
+            if (day == DateCodec.NOT_AVAILABLE) {
                 return; // error case; used for debugging
             }
-
-            LocalDate date = getLocalDate(issuanceDate);
             //set the issuanceDate field
-            this.issuanceDate = date;
+            this.issuanceDate = DateCodec.toLocalDate(day);
+            if (maturityDate != null) { // the maturity came first, its bucket was waiting for the issuance date
+                this.maturity = DateCodec.maturity(day, (int) maturityDate.toEpochDay());
+            }
             // get the year and set the issuanceYear field
-            this.issuanceYear = String.valueOf(date.getYear());
+            this.issuanceYear = SymbolTable.YEARS.intern(String.valueOf(DateCodec.year(day)));
             // get the term of year and set the issuanceTerm field
-            int term = date.get(IsoFields.QUARTER_OF_YEAR);
+            int term = DateCodec.quarter(day);
             switch (term) {
                 case 1:
                     this.issuanceTerm = Issuance.FIRST_Q;
@@ -655,23 +1225,6 @@ public class BloombergMain {
                     break;
             }
         }
-
-        private LocalDate getLocalDate(String dateStr) {
-            LocalDate date;
-            if (dateStr.length() > 8) {
-                if (dateStr.indexOf('/') != -1) {
-                    // case of dd/MM/yyyy
-                    date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("d/M/y"));
-                } else {
-                    // we have an API response, format is yyyy-MM-dd
-                    date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("y-M-d"));
-                }
-            } else {
-                // case of MM/dd/yy
-                date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("M/d/yy"));
-            }
-            return date;
-        }
     }
 
     /** Maturities and issuance quarter enums **/
@@ -691,13 +1244,41 @@ public class BloombergMain {
 
     public static void main(String[] args) throws InterruptedException, IOException {
         BloombergMain bloombergMain = new BloombergMain();
-        bloombergMain.readFromExcelGreen("\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_central-south_america.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_europe_EUR.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_north_america.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_africa.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_european_non-EUR.xlsx");
-        bloombergMain.readFromExcelConventional("\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\bonds_isin_1.xlsx");
-        bloombergMain.readFromExcelConventional("\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\conventional_bonds_FIGI.xlsx");
+        boolean stream = Arrays.asList(args).contains("--stream"); // stream the exports row by row instead of loading whole workbooks
+        bloombergMain.batchLookups = Arrays.asList(args).contains("--batch");
+        bloombergMain.asyncLookups = Arrays.asList(args).contains("--async");
+        if (Arrays.asList(args).contains("--parallel")) { // match issuers on all cores, lookups still go out one at a time unless --async
+            bloombergMain.threads = Runtime.getRuntime().availableProcessors();
+        }
+        String[] greenFiles = {"\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_central-south_america.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_europe_EUR.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_north_america.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_bonds_africa.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\green_european_non-EUR.xlsx"};
+        String[] conventionalFiles = {"\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\bonds_isin_1.xlsx", "\\\\icnas3.cc.ic.ac.uk\\pp419\\downloads\\conventional_bonds_FIGI.xlsx"};
+        bloombergMain.loadUniverse("universe.snapshot", stream, greenFiles, conventionalFiles);
+        try {
+            bloombergMain.cache = new LookupCache("lookup_cache");
+        } catch (IOException e) {
+            System.out.println("unable to open the lookup cache, every lookup will use the API");
+        }
+        boolean resume = Arrays.asList(args).contains("--resume"); // carry on from the journal of an interrupted run
+        try {
+            bloombergMain.journal = new MatchJournal(new File("match_journal.log"), resume);
+            if (resume) {
+                bloombergMain.resume();
+            }
+        } catch (IOException e) {
+            System.out.println("unable to open the match journal, the outputs are rewritten on every error instead");
+            bloombergMain.journal = null;
+        }
+        bloombergMain.scheduler = new QuotaScheduler(QuotaScheduler.SYSTEM_CLOCK, "api_budget.txt", MONTHLY_API_BUDGET, 10, 20);
         bloombergMain.startSession();
         System.out.println("started matching");
         bloombergMain.match();
-        System.out.println("API calls made = " + bloombergMain.apiCallsMade);
+        System.out.println("API calls made = " + bloombergMain.apiCallsMade.get());
         bloombergMain.session.stop();
+        if (bloombergMain.cache != null) {
+            bloombergMain.cache.close();
+        }
+        if (bloombergMain.journal != null) {
+            bloombergMain.journal.close();
+        }
     }
 }
@@ -0,0 +1,200 @@
+/** Reads the Bond{...} strings of the match workbooks (Bond.toString followed by the yields) without regexes or intermediate lists
+ * Fields are read by name in the order toString writes them into typed slots; strings are kept as offsets into the scanned text
+ * and only copied out when asked for. A missing, renamed, reordered or extra field throws IllegalArgumentException **/
+public final class BondScanner {
+
+    public static final int ISSUER = 0;
+    public static final int MOODYS_RATING = 1;
+    public static final int SNP_RATING = 2;
+    public static final int MATURITY = 3;
+    public static final int MATURITY_DATE = 4;
+    public static final int ISSUANCE_TERM = 5;
+    public static final int ISSUANCE_YEAR = 6;
+    public static final int ISSUANCE_DATE = 7;
+    public static final int CCY = 8;
+    public static final int GREEN = 9;
+    public static final int ISIN = 10;
+    public static final int YTM_BID = 11;
+    public static final int YTM_ASK = 12;
+
+    private static final String[] NAMES = {"issuer", "moodysRating", "snpRating", "maturity", "maturityDate", "issuanceTerm",
+            "issuanceYear", "issuanceDate", "ccy", "green?", "isin", "ytmBid", "ytmAsk"};
+    public static final int FIELD_COUNT = NAMES.length;
+    private static final String PREFIX = "Bond{";
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+            1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private String text;
+    private final int[] starts = new int[NAMES.length]; // value of each field, quotes excluded
+    private final int[] ends = new int[NAMES.length];
+    private int maturityDay;
+    private int issuanceDay;
+    private boolean green;
+    private double ytmBid;
+    private double ytmAsk;
+
+    /** The field's name in the record, also used for the columns of the typed layout **/
+    public static String name(int field) {
+        return NAMES[field];
+    }
+
+    /** Writes a record in the layout scan reads, quoting the fields Bond.toString quotes, so it reads back field for field **/
+    public static String format(String[] values) {
+        StringBuilder record = new StringBuilder(PREFIX);
+        for (int field = 0; field < NAMES.length; field++) {
+            if (field > 0) {
+                record.append(", ");
+            }
+            boolean quoted = field != MATURITY && field != MATURITY_DATE && field != ISSUANCE_TERM && field != ISSUANCE_DATE
+                    && field != YTM_BID && field != YTM_ASK;
+            record.append(NAMES[field]).append('=');
+            if (quoted) {
+                record.append('\'').append(values[field]).append('\'');
+            } else {
+                record.append(values[field]);
+            }
+        }
+        return record.append('}').toString();
+    }
+
+    /** Scans one record, the slots then hold its fields until the next call **/
+    public void scan(String text) {
+        this.text = text;
+        if (!text.startsWith(PREFIX)) {
+            throw drift("does not start with " + PREFIX);
+        }
+        int position = PREFIX.length();
+        for (int field = 0; field < NAMES.length; field++) {
+            if (field > 0) {
+                if (!text.startsWith(", ", position)) {
+                    throw drift("expected ', ' before " + NAMES[field] + " at " + position);
+                }
+                position += 2;
+            }
+            if (!text.startsWith(NAMES[field], position) || position + NAMES[field].length() >= text.length()
+                    || text.charAt(position + NAMES[field].length()) != '=') {
+                throw drift("expected field " + NAMES[field] + " at " + position);
+            }
+            position += NAMES[field].length() + 1;
+            boolean quoted = position < text.length() && text.charAt(position) == '\'';
+            int start = quoted ? position + 1 : position;
+            int end = endOfValue(start, quoted, field + 1 < NAMES.length ? NAMES[field + 1] : null);
+            starts[field] = start;
+            ends[field] = end;
+            position = quoted ? end + 1 : end;
+        }
+        if (position != text.length() - 1 || text.charAt(position) != '}') {
+            throw drift("unexpected text after " + NAMES[NAMES.length - 1] + " at " + position);
+        }
+        maturityDay = date(MATURITY_DATE);
+        issuanceDay = date(ISSUANCE_DATE);
+        green = equals(GREEN, "true");
+        ytmBid = number(YTM_BID);
+        ytmAsk = number(YTM_ASK);
+    }
+
+    /** The field's text as written by toString, "null" for a null field **/
+    public String text(int field) {
+        return text.substring(starts[field], ends[field]);
+    }
+
+    /** True if the field's text is exactly the given value **/
+    public boolean equals(int field, String value) {
+        return ends[field] - starts[field] == value.length() && text.startsWith(value, starts[field]);
+    }
+
+    /** RatingScale ordinal of a rating field, read in place **/
+    public int rating(int field, RatingScale.Agency agency) {
+        return RatingScale.parse(agency, text, starts[field], ends[field]);
+    }
+
+    /** Epoch day, DateCodec.NOT_AVAILABLE if the date is null (perpetual bonds have no maturity date) **/
+    public int maturityDay() {
+        return maturityDay;
+    }
+
+    public int issuanceDay() {
+        return issuanceDay;
+    }
+
+    public boolean isGreen() {
+        return green;
+    }
+
+    public double ytmBid() {
+        return ytmBid;
+    }
+
+    public double ytmAsk() {
+        return ytmAsk;
+    }
+
+    /** A quoted value ends at the quote followed by the next field (names may contain quotes and commas), an unquoted one at the next field **/
+    private int endOfValue(int start, boolean quoted, String next) {
+        char boundary = quoted ? '\'' : (next == null ? '}' : ',');
+        for (int i = text.indexOf(boundary, start); i != -1; i = text.indexOf(boundary, i + 1)) {
+            int after = quoted ? i + 1 : i;
+            if (next == null ? after == text.length() - 1 && text.charAt(after) == '}'
+                    : text.startsWith(", ", after) && text.startsWith(next, after + 2)
+                    && after + 2 + next.length() < text.length() && text.charAt(after + 2 + next.length()) == '=') {
+                return i;
+            }
+        }
+        throw drift("no end for the value starting at " + start);
+    }
+
+    private int date(int field) {
+        if (equals(field, "null")) {
+            return DateCodec.NOT_AVAILABLE;
+        }
+        return DateCodec.parse(text, starts[field], ends[field]);
+    }
+
+    /** Exact for up to 15 significant digits and 22 decimals, the yields are far shorter; anything else goes to Double.parseDouble **/
+    private double number(int field) {
+        int i = starts[field];
+        int end = ends[field];
+        boolean negative = i < end && text.charAt(i) == '-';
+        if (negative || i < end && text.charAt(i) == '+') {
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean anyDigit = false;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c == '.' && decimals == -1) {
+                decimals = 0;
+            } else if (c >= '0' && c <= '9' && digits < 15) {
+                anyDigit = true;
+                mantissa = mantissa * 10 + (c - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                if (decimals != -1) {
+                    decimals++;
+                }
+            } else {
+                return slowNumber(field); // exponent, NaN, too many digits
+            }
+        }
+        if (!anyDigit || decimals > 22) {
+            return slowNumber(field);
+        }
+        double value = decimals <= 0 ? mantissa : mantissa / POWERS_OF_TEN[decimals];
+        return negative ? -value : value;
+    }
+
+    private double slowNumber(int field) {
+        try {
+            return Double.parseDouble(text(field));
+        } catch (NumberFormatException e) {
+            throw drift(NAMES[field] + " is not a number: " + text(field));
+        }
+    }
+
+    private IllegalArgumentException drift(String problem) {
+        return new IllegalArgumentException("bond record does not match the Bond.toString layout, " + problem + ": " + text);
+    }
+}
@@ -0,0 +1,126 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Regex extraction (the old PrepareData.extractData) vs BondScanner on synthetic Bond{...} cells, with a check that both
+// extract the same values and that schema drift is rejected
+// usage: BondScannerBenchmark [rows] [rounds]
+public class BondScannerBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "A1", "Baa1", "NR", "null"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "A+", "BBB+", "NR", "null"};
+  private static final String[] CCY = {"EUR", "USD", "GBP", "JPY"};
+  private static final String[] MATURITIES = {"LESS_THAN_FIVE", "FIVE_YEARS", "TEN_YEARS", "TWENTY_YEARS", "PERPETUAL"};
+  private static final String[] TERMS = {"FIRST_Q", "SECOND_Q", "THIRD_Q", "FORTH_Q"};
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    Random random = new Random(42);
+    String[] cells = new String[rows];
+    for (int i = 0; i < rows; i++) {
+      cells[i] = randomCell(random, i);
+    }
+
+    BondScanner scanner = new BondScanner();
+    int different = 0;
+    for (String cell : cells) {
+      List<Object> expected = extractData(cell);
+      scanner.scan(cell);
+      List<Object> actual = new ArrayList<>();
+      for (int field : new int[]{BondScanner.ISSUER, BondScanner.MOODYS_RATING, BondScanner.SNP_RATING, BondScanner.ISSUANCE_DATE,
+          BondScanner.MATURITY_DATE, BondScanner.CCY, BondScanner.GREEN}) {
+        actual.add(scanner.text(field));
+      }
+      actual.add(scanner.ytmBid());
+      actual.add(scanner.ytmAsk());
+      if (!expected.equals(actual) && different++ < 5) {
+        System.out.println("different: " + cell + "\n  " + expected + "\n  " + actual);
+      }
+    }
+    System.out.printf("check: %d cells, %d different%n", rows, different);
+
+    String valid = cells[0];
+    String[] drifted = {valid.replace("moodysRating", "moodyRating"), valid.replace(", ccy='", ", currency='"),
+        valid.replace("}", ", ytmMid='1.0'}"), valid.substring(0, valid.indexOf(", ytmAsk")) + "}", valid.replace("Bond{", "Bnd{"),
+        valid.replace("ytmBid='", "ytmBid='x")};
+    int rejected = 0;
+    for (String cell : drifted) {
+      try {
+        scanner.scan(cell);
+        System.out.println("accepted drifted record: " + cell);
+      } catch (IllegalArgumentException e) {
+        rejected++;
+      }
+    }
+    System.out.printf("drift: %d of %d drifted records rejected%n", rejected, drifted.length);
+
+    for (int round = 1; round <= rounds; round++) { // the first rounds are warm up
+      long start = System.nanoTime();
+      double regexSum = 0;
+      for (String cell : cells) {
+        regexSum += (Double) extractData(cell).get(7);
+      }
+      long regexTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      double scannerSum = 0;
+      for (String cell : cells) {
+        scanner.scan(cell);
+        scannerSum += scanner.ytmBid();
+      }
+      long scannerTime = System.nanoTime() - start;
+      System.out.printf("round %d: regex %.0f ns/cell, scanner %.0f ns/cell, %.1fx, same=%b%n", round, (double) regexTime / rows,
+          (double) scannerTime / rows, (double) regexTime / scannerTime, regexSum == scannerSum);
+    }
+  }
+
+  // PrepareData.extractData before BondScanner
+  private static List<Object> extractData(String input) {
+    Pattern pattern = Pattern.compile("='*([^',}]+)'*");
+    Matcher matcher = pattern.matcher(input);
+    List<String> extractedData = new ArrayList<>();
+    while (matcher.find()) {
+      extractedData.add(matcher.group(1));
+    }
+    List<Object> result = new ArrayList<>(9);
+    result.add(extractedData.get(0));
+    result.add(extractedData.get(1));
+    result.add(extractedData.get(2));
+    result.add(extractedData.get(7));
+    result.add(extractedData.get(4));
+    result.add(extractedData.get(8));
+    result.add(extractedData.get(9));
+    result.add(Double.parseDouble(extractedData.get(11)));
+    result.add(Double.parseDouble(extractedData.get(12)));
+    return result;
+  }
+
+  // Bond.toString with the yields appended; issuer names without commas, the regex cuts names at the first comma
+  private static String randomCell(Random random, int i) {
+    int rating = random.nextInt(MOODYS.length);
+    int year = 2010 + random.nextInt(13);
+    String issuance = String.format("%d-%02d-%02d", year, 1 + random.nextInt(12), 1 + random.nextInt(28));
+    int maturity = random.nextInt(MATURITIES.length);
+    String maturityDate = maturity == 4 ? "null" : String.format("%d-%02d-%02d", year + 1 + random.nextInt(40), 1 + random.nextInt(12), 1 + random.nextInt(28));
+    String bid = String.format("%.3f", random.nextDouble() * 8 - 0.5);
+    String ask = String.valueOf(Math.round(random.nextDouble() * 8000) / 1000.0);
+    return "Bond{issuer='Issuer " + (i % 5000) + " Plc'" +
+        ", moodysRating='" + MOODYS[rating] + "'" +
+        ", snpRating='" + SNP[rating] + "'" +
+        ", maturity=" + MATURITIES[maturity] +
+        ", maturityDate=" + maturityDate +
+        ", issuanceTerm=" + TERMS[random.nextInt(TERMS.length)] +
+        ", issuanceYear='" + year + "'" +
+        ", issuanceDate=" + issuance +
+        ", ccy='" + CCY[random.nextInt(CCY.length)] + "'" +
+        ", green?='" + (i % 2 == 0) + "'" +
+        ", isin='" + String.format("XS%010d", i) + "'" +
+        ", ytmBid='" + bid + "'" +
+        ", ytmAsk=" + ask +
+        "}";
+  }
+}
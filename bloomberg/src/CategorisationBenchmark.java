@@ -0,0 +1,133 @@
+import org.apache.poi.ss.usermodel.Row;
+
+import java.io.File;
+import java.io.IOException;
+
+// Time of the categorisers run one after the other (a full read of the matches each, as the separate tools did)
+// vs a single CategorisationEngine pass feeding every dimension, on synthetic matches workbooks in the string layout
+// The yield matches feed the region, rating, issuer rating and maturity dimensions, the green activity matches the activity one;
+// each file has only its own extra columns, and reading one with the other's layout has to fail
+// usage: CategorisationBenchmark [rows]
+public class CategorisationBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa2", "A1", "A3", "Baa2", "Ba1", "B3", "NR"};
+  private static final String[] SNP = {"AAA", "AA", "A+", "A-", "BBB", "BB+", "B-", "NR"};
+  private static final String[] MATURITIES = {"ONE_YEAR", "FIVE_YEARS", "TEN_YEARS", "THIRTY_YEARS"};
+  private static final String[] ACTIVITIES = {"Renewable energy", "Clean transportation", "Green buildings and infrastructure",
+      "Renewable energy/Energy smart technologies and energy efficiency", "undisclosed", "Sustainable water management"};
+  private static final int ISSUERS = 2000;
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+    String matchesFile = "benchmark_matches.xlsx";
+    String activityFile = "benchmark_green_activity_matches.xlsx";
+    String[] regionFiles = {"benchmark_region_africa.xlsx", "benchmark_region_south_america.xlsx", "benchmark_region_north_america.xlsx",
+        "benchmark_region_europe_EUR.xlsx", "benchmark_region_europe_non-EUR.xlsx"};
+    writeMatches(matchesFile, rows, MatchLayout.YIELD_MATCHES);
+    writeMatches(activityFile, rows, MatchLayout.GREEN_ACTIVITY);
+    writeRegions(regionFiles);
+    System.out.printf("%d rows, %dKB of yield matches, %dKB of green activity matches%n", rows, new File(matchesFile).length() >> 10,
+        new File(activityFile).length() >> 10);
+    checkLayouts(matchesFile, activityFile);
+
+    for (int round = 0; round < 2; round++) { // the first round warms the JIT up
+      long start = System.nanoTime();
+      for (Dimension dimension : dimensions(regionFiles)) {
+        new CategorisationEngine().register(dimension).run(matchesFile, MatchLayout.YIELD_MATCHES);
+      }
+      long separate = System.nanoTime() - start;
+
+      CategorisationEngine engine = new CategorisationEngine();
+      for (Dimension dimension : dimensions(regionFiles)) {
+        engine.register(dimension);
+      }
+      start = System.nanoTime();
+      engine.run(matchesFile, MatchLayout.YIELD_MATCHES);
+      long single = System.nanoTime() - start;
+      start = System.nanoTime();
+      new CategorisationEngine().register(new CategoriseGreenActivity()).run(activityFile, MatchLayout.GREEN_ACTIVITY);
+      long activity = System.nanoTime() - start;
+      System.out.printf("round %d: yield matches, separate passes %.1fs, single pass %.1fs (%.1fx); green activity pass %.1fs%n", round,
+          separate / 1e9, single / 1e9, (double) separate / single, activity / 1e9);
+    }
+  }
+
+  // a dimension needing a column the layout lacks is refused up front, a file read with the other layout fails on its first pair
+  private static void checkLayouts(String matchesFile, String activityFile) throws IOException {
+    try {
+      new CategorisationEngine().register(new CategoriseGreenActivity()).run(matchesFile, MatchLayout.YIELD_MATCHES);
+      throw new IllegalStateException("the activity dimension ran on the yield matches");
+    } catch (IllegalArgumentException e) {
+      System.out.println("refused: " + e.getMessage());
+    }
+    for (String file : new String[]{matchesFile, activityFile}) {
+      MatchLayout wrong = file.equals(matchesFile) ? MatchLayout.GREEN_ACTIVITY : MatchLayout.YIELD_MATCHES;
+      try (MatchReader reader = new MatchReader(file, wrong)) {
+        reader.next();
+        throw new IllegalStateException(file + " was read as " + wrong);
+      } catch (IllegalArgumentException e) {
+        System.out.println("refused: " + e.getMessage());
+      }
+    }
+  }
+
+  private static Dimension[] dimensions(String[] regionFiles) throws IOException {
+    CategoriseMatches regions = new CategoriseMatches() {
+      @Override
+      public String outputFile() {
+        return "benchmark_categorised_matches.xlsx"; // next to the other outputs instead of the desktop
+      }
+    };
+    regions.loadRegions(regionFiles[0], regionFiles[1], regionFiles[2], regionFiles[3], regionFiles[4]);
+    return new Dimension[]{regions, new CategoriseRatings(), new CategoriseRatingsIssuer(), new CategoriseMaturity()};
+  }
+
+  // two Bond{...} strings then the yield step's numbers, with text in the layout's activity or issuer rating column
+  private static void writeMatches(String file, int rows, MatchLayout layout) throws IOException {
+    int activity = layout.has(MatchLayout.Column.ACTIVITY) ? 2 + layout.column(MatchLayout.Column.ACTIVITY) : -1;
+    int issuerRating = layout.has(MatchLayout.Column.ISSUER_RATING) ? 2 + layout.column(MatchLayout.Column.ISSUER_RATING) : -1;
+    int last = Math.max(activity, issuerRating);
+    try (ExcelOutput output = new ExcelOutput(file)) {
+      Row header = output.nextRow("Matches");
+      header.createCell(0).setCellValue("green bond");
+      header.createCell(1).setCellValue("conventional bond");
+      for (int i = 0; i < rows; i++) {
+        Row row = output.nextRow("Matches");
+        String issuer = "Issuer " + (i % ISSUERS);
+        String maturity = MATURITIES[i % MATURITIES.length];
+        int rating = i % MOODYS.length;
+        row.createCell(0).setCellValue(bond(issuer, rating, maturity, true, i));
+        row.createCell(1).setCellValue(bond(issuer, rating, maturity, false, i + 1));
+        for (int c = 2; c <= last; c++) {
+          if (c == activity) {
+            row.createCell(c).setCellValue(ACTIVITIES[i % ACTIVITIES.length]);
+          } else if (c == issuerRating) {
+            row.createCell(c).setCellValue(SNP[(i / 7) % SNP.length]);
+          } else {
+            row.createCell(c).setCellValue((i * 31 + c) % 500 / 100.0);
+          }
+        }
+      }
+    }
+  }
+
+  private static String bond(String issuer, int rating, String maturity, boolean green, int i) {
+    return "Bond{issuer='" + issuer + "', moodysRating='" + MOODYS[rating] + "', snpRating='" + SNP[rating] + "', maturity=" + maturity
+        + ", maturityDate=2032-03-15, issuanceTerm=Q1, issuanceYear='2022', issuanceDate=2022-03-15, ccy='EUR', green?='" + green
+        + "', isin='XS" + (1000000000L + i) + "', ytmBid=" + (i % 700) / 100.0 + ", ytmAsk=" + (i % 710) / 100.0 + "}";
+  }
+
+  // every issuer in one of the regions, round robin
+  private static void writeRegions(String[] files) throws IOException {
+    ExcelOutput[] outputs = new ExcelOutput[files.length];
+    for (int i = 0; i < files.length; i++) {
+      outputs[i] = new ExcelOutput(files[i]);
+    }
+    for (int i = 0; i < ISSUERS; i++) {
+      outputs[i % files.length].nextRow("Issuers").createCell(0).setCellValue("Issuer " + i);
+    }
+    for (ExcelOutput output : outputs) {
+      output.close();
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import org.apache.poi.ss.usermodel.Row;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+// Reads the matches once and routes every row to each registered dimension, instead of one full read per categoriser
+// Each dimension writes its own streaming workbook: one sheet per category with the green bond, the conventional bond and the value,
+// and a summary of the values of every category (count, mean, variance, percentiles, histogram) kept in the same pass.
+// After the pass the values of every category of every dimension are tested (Shapiro-Wilk, Wilcoxon signed rank) in parallel
+public class CategorisationEngine {
+
+  private static final int MAX_SHEET_NAME = 31; // excel's limit
+
+  private final List<Dimension> dimensions = new ArrayList<>();
+  private final List<ExcelOutput> outputs = new ArrayList<>();
+  private final List<CategoryStats> stats = new ArrayList<>(); // per dimension, of the last run
+  private final List<CategorySamples> samples = new ArrayList<>();
+  private List<Map<String, SignificanceTests.Result>> significance = new ArrayList<>();
+  private int threads = Runtime.getRuntime().availableProcessors();
+
+  // threads of the significance tests, categories are tested in parallel
+  public CategorisationEngine threads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  public CategorisationEngine register(Dimension dimension) {
+    dimensions.add(dimension);
+    return this;
+  }
+
+  // Single pass over a matches file with the given layout, returns the number of rows read
+  // Throws IllegalArgumentException before reading anything if a dimension needs a column the layout does not have
+  public int run(String matchesFile, MatchLayout layout) throws IOException {
+    for (Dimension dimension : dimensions) {
+      for (MatchLayout.Column column : dimension.columns()) {
+        if (!layout.has(column)) {
+          throw new IllegalArgumentException(dimension.getClass().getSimpleName() + " needs the " + column + " column, "
+              + layout + " have none");
+        }
+      }
+    }
+    outputs.clear();
+    stats.clear();
+    samples.clear();
+    for (Dimension dimension : dimensions) {
+      outputs.add(new ExcelOutput(dimension.outputFile()));
+      stats.add(new CategoryStats());
+      samples.add(new CategorySamples());
+    }
+    int rows = 0;
+    List<String> categories = new ArrayList<>();
+    try (MatchReader reader = new MatchReader(matchesFile, layout)) {
+      while (reader.next()) {
+        rows++;
+        String green = null; // built on first use, a row no dimension wants is never formatted
+        String conventional = null;
+        for (int i = 0; i < dimensions.size(); i++) {
+          categories.clear();
+          dimensions.get(i).categorise(reader, categories);
+          if (categories.isEmpty()) {
+            continue;
+          }
+          if (green == null) {
+            green = reader.record(MatchTable.GREEN);
+            conventional = reader.record(MatchTable.CONVENTIONAL);
+          }
+          double value = reader.value();
+          for (String category : categories) {
+            Row row = outputs.get(i).nextRow(sheetName(category));
+            row.createCell(0).setCellValue(green);
+            row.createCell(1).setCellValue(conventional);
+            row.createCell(2).setCellValue(value);
+            stats.get(i).add(category, value);
+            samples.get(i).add(category, value);
+          }
+        }
+      }
+      List<Map<String, double[]>> values = new ArrayList<>();
+      for (CategorySamples dimensionSamples : samples) {
+        values.add(dimensionSamples.getSamples());
+      }
+      samples.clear(); // tested from the trimmed copies, the growable arrays can go
+      significance = SignificanceTests.testAll(values, threads);
+      for (int i = 0; i < dimensions.size(); i++) {
+        dimensions.get(i).finish(outputs.get(i));
+        stats.get(i).write(outputs.get(i));
+        SignificanceTests.write(outputs.get(i), significance.get(i));
+      }
+    } finally {
+      for (ExcelOutput output : outputs) {
+        output.close();
+      }
+    }
+    return rows;
+  }
+
+  // statistics of the categories of the registered dimension, in registration order, as of the last run
+  public CategoryStats getStats(int dimension) {
+    return stats.get(dimension);
+  }
+
+  // test results of the categories of the registered dimension, as of the last run
+  public Map<String, SignificanceTests.Result> getSignificance(int dimension) {
+    return significance.get(dimension);
+  }
+
+  private static String sheetName(String category) {
+    return category.length() > MAX_SHEET_NAME ? category.substring(0, MAX_SHEET_NAME) : category;
+  }
+
+  // Every categorisation, one pass per matches file: the green activity matches are the only ones with the activity column,
+  // the yield matches the only ones with the issuer rating
+  public static void main(String[] args) throws IOException {
+    String yieldMatchesFile = args.length > 0 ? args[0] : "/Users/Panos/Desktop/FYP/yield_matches.xlsx";
+    String greenActivityFile = args.length > 1 ? args[1] : "/Users/Panos/Desktop/FYP/green_activity_yield_matches.xlsx";
+    CategoriseMatches regions = new CategoriseMatches();
+    regions.loadRegions("/Users/Panos/Downloads/green_bonds_africa.xlsx", "/Users/Panos/Downloads/green_bonds_central-south_america.xlsx",
+        "/Users/Panos/Downloads/green_bonds_north_america.xlsx", "/Users/Panos/Downloads/green_bonds_europe_EUR.xlsx",
+        "/Users/Panos/Downloads/green_european_non-EUR.xlsx");
+    CategorisationEngine engine = new CategorisationEngine()
+        .register(regions)
+        .register(new CategoriseRatings())
+        .register(new CategoriseRatingsIssuer())
+        .register(new CategoriseMaturity());
+    long start = System.nanoTime();
+    int rows = engine.run(yieldMatchesFile, MatchLayout.YIELD_MATCHES);
+    System.out.printf("%d rows categorised along %d dimensions in %.1fs%n", rows, engine.dimensions.size(), (System.nanoTime() - start) / 1e9);
+
+    engine = new CategorisationEngine().register(new CategoriseGreenActivity());
+    start = System.nanoTime();
+    rows = engine.run(greenActivityFile, MatchLayout.GREEN_ACTIVITY);
+    System.out.printf("%d rows categorised along %d dimensions in %.1fs%n", rows, engine.dimensions.size(), (System.nanoTime() - start) / 1e9);
+  }
+}
@@ -1,134 +1,116 @@
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellStyle;
-import org.apache.poi.ss.usermodel.Color;
 import org.apache.poi.ss.usermodel.Row;
-import org.apache.poi.xssf.usermodel.XSSFColor;
-import org.apache.poi.xssf.usermodel.XSSFFormulaEvaluator;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
-import java.io.*;
-import java.util.Arrays;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.TreeMap;
 
 // Class to categorise matched bonds according to country, rating
-public class CategoriseGreenActivity {
+// The green activity dimension of the CategorisationEngine, a bond with several activities goes to each of their sheets
+// Every bond's activities are parsed once into a GreenActivity bit set, the summary sheets are aggregated off those bit sets
+public class CategoriseGreenActivity implements Dimension {
 
-  Map<String, Integer> rowNums = new HashMap<>();
+  static final String UNKNOWN_SHEET = "Unknown activity"; // bonds with labels that are no GreenActivity, reported instead of dropped
+  static final int UNKNOWN_BIT = GreenActivity.COUNT; // marks the activity sets with unknown labels
+
+  List<String> unknown = new ArrayList<>(); // unknown labels of the current row
+  long[][] coOccurrence = new long[GreenActivity.COUNT][GreenActivity.COUNT]; // bonds with both activities, the diagonal is bonds with the activity
+  Map<Integer, double[]> activitySets = new HashMap<>(); // activity bit set -> bonds, sum of their values
+  Map<String, Integer> unknownLabels = new TreeMap<>(); // unknown label -> bonds
 
   // Method which iterated over the matched bonds and categorises then depending on region of issuer
   public void categorise(String matchesFile) {
-    rowNums.put("undisclosed", 0);
-    rowNums.put("Energy smart technologies and energy efficiency", 0);
-    rowNums.put("Green buildings and infrastructure", 0);
-    rowNums.put("Clean transportation", 0);
-    rowNums.put("Sustainable water management", 0);
-    rowNums.put("Renewable energy", 0);
-    rowNums.put("Terrestrial and aquatic biodiversity conservation", 0);
-    rowNums.put("Pollution prevention and control", 0);
-    rowNums.put("Agriculture and forestry", 0);
-    rowNums.put("Climate change adaptation", 0);
-    rowNums.put("Eco-efficient products, production technologies and processes", 0);
-
-
-    FileInputStream inputFile;
-    try {
-      inputFile = new FileInputStream(matchesFile);
-    } catch (FileNotFoundException e) {
-      e.printStackTrace();
-      return;
-    }
-
-    XSSFWorkbook inputWorkbook;
     try {
-      inputWorkbook = new XSSFWorkbook(inputFile);
+      new CategorisationEngine().register(this).run(matchesFile, MatchLayout.GREEN_ACTIVITY);
     } catch (IOException e) {
       e.printStackTrace();
-      return;
     }
-    XSSFSheet inputSheet = inputWorkbook.getSheetAt(0);
+  }
 
-    File outputFile = new File("categorised_yields_by_green_activity.xlsx");
-    try {
-      outputFile.createNewFile();
-    } catch (IOException e) {
-      throw new RuntimeException(e);
-    }
-    FileOutputStream out;
-    try {
-      out = new FileOutputStream(outputFile);
-    } catch (FileNotFoundException e) {
-      throw new RuntimeException(e);
-    }
-    XSSFWorkbook outputWorkbook = new XSSFWorkbook();
+  @Override
+  public String outputFile() {
+    return "categorised_yields_by_green_activity.xlsx";
+  }
 
-    byte[] darkRed = new byte[]{-64, 0, 0};
-    byte[] lightBlue = new byte[]{91, -101, -43};
-    for (Row row : inputSheet) {
-      if (row.getFirstCellNum() != 0) { // avoid weird excel error
-        break;
+  @Override
+  public void categorise(MatchReader row, List<String> categories) {
+    unknown.clear();
+    int activities = GreenActivity.parse(row.string(MatchLayout.Column.ACTIVITY), unknown); // get the green activity
+    for (int i = 0; i < GreenActivity.COUNT; i++) {
+      if ((activities & (1 << i)) != 0) {
+        categories.add(GreenActivity.get(i).sheetName());
+        for (int j = 0; j < GreenActivity.COUNT; j++) {
+          if ((activities & (1 << j)) != 0) {
+            coOccurrence[i][j]++;
+          }
+        }
       }
-      if (row.getRowNum() == 0) {
-        continue;
-      }
-      CellStyle cellStyle = row.getCell(0).getCellStyle();
-      Color color = cellStyle.getFillForegroundColorColor();
-      if (color != null && (Arrays.equals(((XSSFColor) color).getRGB(), darkRed) || Arrays.equals(((XSSFColor) color).getRGB(), lightBlue))) { // dark red rows have no conventional bonds issued by that issuer, so skip them
-        continue;
+    }
+    if (!unknown.isEmpty()) {
+      categories.add(UNKNOWN_SHEET);
+      for (String label : unknown) {
+        unknownLabels.merge(label, 1, Integer::sum);
       }
-      String cell0 = row.getCell(0).getStringCellValue(); // get the green bond
-      String cell1 = row.getCell(1).getStringCellValue(); // get the conventional bond
-      double cell2 = row.getCell(8).getNumericCellValue(); // get the ytm % diff
-      String cell12 = row.getCell(13).getStringCellValue(); // get the green activity
+      activities |= 1 << UNKNOWN_BIT;
+    }
+    double[] set = activitySets.computeIfAbsent(activities, k -> new double[2]);
+    set[0]++;
+    set[1] += row.value();
+  }
 
-      String regex = "([^/]+)"; // regex to extract the issuer from the green bond
-      Pattern pattern = Pattern.compile(regex); // compile the pattern
-      Matcher matcher = pattern.matcher(cell12); // match on the pattern
-      while (matcher.find()) {
-        String activity = matcher.group(0);
-        populateSheet(outputWorkbook, cell0, cell1, cell2, activity);
-      }
+  @Override
+  public Set<MatchLayout.Column> columns() {
+    return EnumSet.of(MatchLayout.Column.ACTIVITY);
+  }
 
+  // co-occurrence matrix, bonds and mean value per activity set, and the unknown labels
+  @Override
+  public void finish(ExcelOutput output) {
+    Row header = output.nextRow("Co-occurrence");
+    for (int i = 0; i < GreenActivity.COUNT; i++) {
+      header.createCell(i + 1).setCellValue(GreenActivity.get(i).sheetName());
     }
-    try {
-      outputWorkbook.write(out);
-      inputWorkbook.close();
-      outputWorkbook.close();
-    } catch (
-        IOException e) {
-      throw new RuntimeException(e);
+    for (int i = 0; i < GreenActivity.COUNT; i++) {
+      Row row = output.nextRow("Co-occurrence");
+      row.createCell(0).setCellValue(GreenActivity.get(i).sheetName());
+      for (int j = 0; j < GreenActivity.COUNT; j++) {
+        row.createCell(j + 1).setCellValue(coOccurrence[i][j]);
+      }
     }
 
-  }
-
-  private void populateSheet(XSSFWorkbook outputWorkbook, String cell0, String cell1, double cell2, String activity) {
-    int rowNum;
-    try {
-      rowNum = rowNums.get(activity);
-    } catch (NullPointerException e) {
-      System.out.println("unknown activity: " + activity);
-      return;
+    header = output.nextRow("Activity sets");
+    header.createCell(0).setCellValue("activities");
+    header.createCell(1).setCellValue("bonds");
+    header.createCell(2).setCellValue("mean ytm % diff");
+    for (Map.Entry<Integer, double[]> entry : activitySets.entrySet()) {
+      StringBuilder activities = new StringBuilder();
+      for (int i = 0; i <= UNKNOWN_BIT; i++) {
+        if ((entry.getKey() & (1 << i)) != 0) {
+          activities.append(activities.length() == 0 ? "" : String.valueOf(GreenActivity.SEPARATOR))
+              .append(i == UNKNOWN_BIT ? UNKNOWN_SHEET : GreenActivity.get(i).sheetName());
+        }
+      }
+      Row row = output.nextRow("Activity sets");
+      row.createCell(0).setCellValue(activities.length() == 0 ? "none" : activities.toString());
+      row.createCell(1).setCellValue(entry.getValue()[0]);
+      row.createCell(2).setCellValue(entry.getValue()[1] / entry.getValue()[0]);
     }
-    rowNums.put(activity, rowNum + 1);
-    XSSFSheet spreadsheet;
-    if (activity.length() > 31) {
-      activity = activity.substring(0, 31);
+
+    header = output.nextRow("Unknown activities");
+    header.createCell(0).setCellValue("label");
+    header.createCell(1).setCellValue("bonds");
+    for (Map.Entry<String, Integer> entry : unknownLabels.entrySet()) {
+      Row row = output.nextRow("Unknown activities");
+      row.createCell(0).setCellValue(entry.getKey());
+      row.createCell(1).setCellValue(entry.getValue());
     }
-    if (outputWorkbook.getSheet(activity) != null) {
-      spreadsheet = outputWorkbook.getSheet(activity);
-    } else {
-      spreadsheet = outputWorkbook.createSheet(activity);
+    if (!unknownLabels.isEmpty()) {
+      System.out.println(unknownLabels.size() + " unknown activity labels, see the Unknown activities sheet: " + unknownLabels.keySet());
     }
-    Row outRow = spreadsheet.createRow(rowNum);
-    Cell cell0_ = outRow.createCell(0);
-    Cell cell1_ = outRow.createCell(1);
-    Cell cell2_ = outRow.createCell(2);
-    cell0_.setCellValue(cell0);
-    cell1_.setCellValue(cell1);
-    cell2_.setCellValue(cell2);
   }
 
 
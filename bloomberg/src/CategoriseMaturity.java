@@ -0,0 +1,36 @@
+import java.io.IOException;
+import java.util.List;
+
+// Class to categorise matched bonds according to the maturity bucket of the green bond (ONE_YEAR, TEN_YEARS...)
+public class CategoriseMaturity implements Dimension {
+
+  // Method which iterates over the matched bonds and categorises them depending on the maturity of the green bond
+  public void categorise(String matchesFile) {
+    try {
+      new CategorisationEngine().register(this).run(matchesFile, MatchLayout.YIELD_MATCHES);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  @Override
+  public String outputFile() {
+    return "categorised_yields_by_maturity.xlsx";
+  }
+
+  @Override
+  public void categorise(MatchReader row, List<String> categories) {
+    String maturity = row.text(MatchTable.GREEN, BondScanner.MATURITY);
+    if (maturity.equals("null")) {
+      System.out.println("maturity not found: " + row.record(MatchTable.GREEN));
+      return;
+    }
+    categories.add(maturity);
+  }
+
+  public static void main(String[] args) {
+    CategoriseMaturity categoriseMaturity = new CategoriseMaturity();
+    String matchesFile = "/Users/Panos/Desktop/FYP/yield_matches.xlsx";
+    categoriseMaturity.categorise(matchesFile);
+  }
+}
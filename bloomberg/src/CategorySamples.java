@@ -0,0 +1,45 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** The values of every category of a dimension, for the tests that need all of them (SignificanceTests ranks and sorts)
+ * Kept in growable primitive arrays, NaN (a blank cell) is left out as R's tests leave NA out **/
+public class CategorySamples {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Map<String, double[]> values = new LinkedHashMap<>(); // in the order categories are first seen
+    private final Map<String, Integer> sizes = new LinkedHashMap<>();
+
+    public void add(String category, double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        double[] categoryValues = values.get(category);
+        int size = categoryValues == null ? 0 : sizes.get(category);
+        if (categoryValues == null) {
+            categoryValues = new double[INITIAL_CAPACITY];
+            values.put(category, categoryValues);
+        } else if (size == categoryValues.length) {
+            categoryValues = Arrays.copyOf(categoryValues, size * 2);
+            values.put(category, categoryValues);
+        }
+        categoryValues[size] = value;
+        sizes.put(category, size + 1);
+    }
+
+    /** The values of the category in the order they were added, empty for a category never seen **/
+    public double[] get(String category) {
+        double[] categoryValues = values.get(category);
+        return categoryValues == null ? new double[0] : Arrays.copyOf(categoryValues, sizes.get(category));
+    }
+
+    /** Every category with its values, in the order categories were first seen **/
+    public Map<String, double[]> getSamples() {
+        Map<String, double[]> samples = new LinkedHashMap<>();
+        for (String category : values.keySet()) {
+            samples.put(category, get(category));
+        }
+        return samples;
+    }
+}
@@ -0,0 +1,88 @@
+import org.apache.poi.ss.usermodel.Row;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** StreamingStats per category of a dimension, filled while the engine writes the rows and summarised next to them
+ * Merges category by category, for dimensions aggregated over parallel partitions of the matches **/
+public class CategoryStats {
+
+    public static final String SUMMARY_SHEET = "Summary";
+    public static final String HISTOGRAM_SHEET = "Histograms";
+    private static final double[] QUANTILES = {0.05, 0.25, 0.5, 0.75, 0.95};
+    private static final String[] SUMMARY_HEADER = {"category", "count", "missing", "mean", "variance", "std dev", "min",
+            "p5", "p25", "median", "p75", "p95", "max"};
+    private static final String[] HISTOGRAM_HEADER = {"category", "bin", "from", "to", "approx. count", "log10 approx. count"};
+
+    private final Map<String, StreamingStats> categories = new LinkedHashMap<>(); // in the order categories are first seen
+
+    public void add(String category, double value) {
+        get(category).add(value);
+    }
+
+    public StreamingStats get(String category) {
+        return categories.computeIfAbsent(category, k -> new StreamingStats());
+    }
+
+    public Map<String, StreamingStats> getCategories() {
+        return categories;
+    }
+
+    /** Adds the other partition's statistics, category by category **/
+    public void merge(CategoryStats other) {
+        for (Map.Entry<String, StreamingStats> entry : other.categories.entrySet()) {
+            get(entry.getKey()).merge(entry.getValue());
+        }
+    }
+
+    /** Writes the summary sheet (one row per category) and the histogram sheet (HISTOGRAM_BINS rows per category, with the
+     * log10 of the counts for the log scale view the notebooks plot), whose counts are approximate, see StreamingStats.histogram **/
+    public void write(ExcelOutput output) {
+        Row header = output.nextRow(SUMMARY_SHEET);
+        for (int i = 0; i < SUMMARY_HEADER.length; i++) {
+            header.createCell(i).setCellValue(SUMMARY_HEADER[i]);
+        }
+        header = output.nextRow(HISTOGRAM_SHEET);
+        for (int i = 0; i < HISTOGRAM_HEADER.length; i++) {
+            header.createCell(i).setCellValue(HISTOGRAM_HEADER[i]);
+        }
+        for (Map.Entry<String, StreamingStats> entry : categories.entrySet()) {
+            StreamingStats stats = entry.getValue();
+            Row row = output.nextRow(SUMMARY_SHEET);
+            row.createCell(0).setCellValue(entry.getKey());
+            row.createCell(1).setCellValue(stats.getCount());
+            row.createCell(2).setCellValue(stats.getMissing());
+            number(row, 3, stats.getMean());
+            number(row, 4, stats.getVariance());
+            number(row, 5, stats.getStandardDeviation());
+            number(row, 6, stats.getMin());
+            for (int i = 0; i < QUANTILES.length; i++) {
+                number(row, 7 + i, stats.quantile(QUANTILES[i]));
+            }
+            number(row, 7 + QUANTILES.length, stats.getMax());
+
+            if (stats.getCount() == 0) {
+                continue;
+            }
+            long[] histogram = stats.histogram(StreamingStats.HISTOGRAM_BINS);
+            for (int bin = 0; bin < histogram.length; bin++) {
+                row = output.nextRow(HISTOGRAM_SHEET);
+                row.createCell(0).setCellValue(entry.getKey());
+                row.createCell(1).setCellValue(bin + 1);
+                row.createCell(2).setCellValue(stats.binEdge(histogram.length, bin));
+                row.createCell(3).setCellValue(stats.binEdge(histogram.length, bin + 1));
+                row.createCell(4).setCellValue(histogram[bin]);
+                if (histogram[bin] > 0) {
+                    row.createCell(5).setCellValue(Math.log10(histogram[bin]));
+                }
+            }
+        }
+    }
+
+    // blank instead of a NaN, which excel shows as an error
+    private static void number(Row row, int column, double value) {
+        if (!Double.isNaN(value)) {
+            row.createCell(column).setCellValue(value);
+        }
+    }
+}
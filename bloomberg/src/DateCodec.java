@@ -0,0 +1,189 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+/** Parses the date formats found in the exports and the API responses straight to epoch days, without allocating
+ * Same results as the DateTimeFormatter patterns it replaces (smart resolving: day 29-31 past the end of the month becomes the last day):
+ * longer than 8 characters with a '/' is d/M/y, longer than 8 without is y-M-d (API responses), otherwise M/d/yy (20yy)
+ * Maturity buckets and issuance quarters are computed from the epoch days arithmetically **/
+public final class DateCodec {
+
+    public static final int NOT_AVAILABLE = Integer.MIN_VALUE; // "#N/A N/A", "#N/A Field Not Applicable" and the like
+    private static final int DAYS_0000_TO_1970 = 719528;
+    private static final int CACHE_FROM = (int) LocalDate.of(1900, 1, 1).toEpochDay();
+    private static final int CACHE_TO = (int) LocalDate.of(2200, 1, 1).toEpochDay();
+    private static final LocalDate[] DATES = new LocalDate[CACHE_TO - CACHE_FROM]; // shared instances, LocalDate is immutable
+
+    private DateCodec() {
+    }
+
+    /** True for the #N/A sentinels Bloomberg returns instead of a date **/
+    public static boolean isNotAvailable(String text) {
+        return text.startsWith("#N/A");
+    }
+
+    /** Returns the epoch day of the date, or NOT_AVAILABLE for a #N/A sentinel
+     * Throws DateTimeParseException if the text is not a date, like the formatters did **/
+    public static int parse(String text) {
+        return parse(text, 0, text.length());
+    }
+
+    /** Same as parse, for the date between from and to in a longer text **/
+    public static int parse(String text, int from, int to) {
+        if (text.startsWith("#N/A", from)) {
+            return NOT_AVAILABLE;
+        }
+        int first; // end of the first number
+        int second; // end of the second number
+        if (to - from > 8) {
+            char separator = indexOf(text, '/', from, to) != -1 ? '/' : '-';
+            first = number(text, from, to, separator);
+            second = number(text, first + 1, to, separator);
+            int third = number(text, second + 1, to, (char) 0);
+            if (third != to) {
+                throw error(text);
+            }
+            int a = value(text, from, first);
+            int b = value(text, first + 1, second);
+            int c = value(text, second + 1, third);
+            return separator == '/' ? epochDay(text, c, b, a) : epochDay(text, a, b, c);
+        }
+        first = number(text, from, to, '/');
+        second = number(text, first + 1, to, '/');
+        if (to - second - 1 != 2 || number(text, second + 1, to, (char) 0) != to) { // two digit year
+            throw error(text);
+        }
+        return epochDay(text, 2000 + value(text, second + 1, to), value(text, from, first), value(text, first + 1, second));
+    }
+
+    public static int year(int epochDay) {
+        return (int) (civil(epochDay) >> 9);
+    }
+
+    public static int month(int epochDay) {
+        return (int) ((civil(epochDay) >> 5) & 0xF);
+    }
+
+    public static int dayOfMonth(int epochDay) {
+        return (int) (civil(epochDay) & 0x1F);
+    }
+
+    /** 1 to 4 **/
+    public static int quarter(int epochDay) {
+        return (month(epochDay) - 1) / 3 + 1;
+    }
+
+    /** Whole years from one date to the other, same as ChronoUnit.YEARS.between **/
+    public static long yearsBetween(int fromDay, int toDay) {
+        long from = civil(fromDay);
+        long to = civil(toDay);
+        long months = ((to >> 9) * 12 + ((to >> 5) & 0xF)) - ((from >> 9) * 12 + ((from >> 5) & 0xF));
+        long days = (to & 0x1F) - (from & 0x1F);
+        if (months > 0 && days < 0) {
+            months--;
+        } else if (months < 0 && days > 0) {
+            months++;
+        }
+        return months / 12;
+    }
+
+    /** Maturity bucket of a bond issued and maturing on the given days **/
+    public static BloombergMain.Maturities maturity(int issueDay, int maturityDay) {
+        long years = yearsBetween(issueDay, maturityDay);
+        if (years < 5) {
+            return BloombergMain.Maturities.LESS_THAN_FIVE;
+        } else if (years < 10) {
+            return BloombergMain.Maturities.FIVE_YEARS;
+        } else if (years < 20) {
+            return BloombergMain.Maturities.TEN_YEARS;
+        }
+        return BloombergMain.Maturities.TWENTY_YEARS;
+    }
+
+    /** The LocalDate of an epoch day, shared for dates between 1900 and 2200 **/
+    public static LocalDate toLocalDate(int epochDay) {
+        if (epochDay < CACHE_FROM || epochDay >= CACHE_TO) {
+            return LocalDate.ofEpochDay(epochDay);
+        }
+        LocalDate date = DATES[epochDay - CACHE_FROM];
+        if (date == null) { // racing threads may both create it, either instance is fine
+            date = LocalDate.ofEpochDay(epochDay);
+            DATES[epochDay - CACHE_FROM] = date;
+        }
+        return date;
+    }
+
+    /** Index of the separator ending the number that starts at from (or the end of the date when separator is 0) **/
+    private static int number(String text, int from, int to, char separator) {
+        int i = from;
+        while (i < to && text.charAt(i) >= '0' && text.charAt(i) <= '9') {
+            i++;
+        }
+        if (i == from || i - from > 9 || (separator != 0 && (i == to || text.charAt(i) != separator))) {
+            throw error(text);
+        }
+        return i;
+    }
+
+    private static int indexOf(String text, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int value(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static int epochDay(String text, int year, int month, int day) {
+        if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31) {
+            throw error(text);
+        }
+        day = Math.min(day, lengthOfMonth(year, month)); // smart resolving, 31/04 is 30/04
+        // days from 0000-03-01 with march as the first month, so the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return (int) (era * 146097 + dayOfEra + 60 - DAYS_0000_TO_1970);
+    }
+
+    /** year << 9 | month << 5 | day **/
+    private static long civil(int epochDay) {
+        long z = (long) epochDay + DAYS_0000_TO_1970 - 60;
+        long era = Math.floorDiv(z, 146097);
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shifted = (5 * dayOfYear + 2) / 153; // months from march
+        long day = dayOfYear - (153 * shifted + 2) / 5 + 1;
+        long month = shifted < 10 ? shifted + 3 : shifted - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return year << 9 | month << 5 | day;
+    }
+
+    private static int lengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                return (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    private static DateTimeParseException error(String text) {
+        return new DateTimeParseException("Text '" + text + "' could not be parsed", text, 0);
+    }
+}
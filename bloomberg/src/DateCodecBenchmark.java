@@ -0,0 +1,140 @@
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.Random;
+
+// Property check of DateCodec against the DateTimeFormatter path it replaced (random dates in all three formats, unpadded and
+// padded fields, days past the end of the month, invalid text), then a timing of both paths
+// usage: DateCodecBenchmark [random cases] [rounds]
+public class DateCodecBenchmark {
+
+  public static void main(String[] args) {
+    int cases = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    Random random = new Random(42);
+    String[] texts = new String[cases];
+    for (int i = 0; i < cases; i++) {
+      texts[i] = randomText(random);
+    }
+
+    int checked = 0, invalid = 0, failures = 0;
+    for (int i = 0; i < cases; i++) {
+      String text = texts[i];
+      String issued = texts[random.nextInt(cases)];
+      String expected = reference(issued, text);
+      String actual = codec(issued, text);
+      if (!expected.equals(actual)) {
+        if (failures++ < 10) {
+          System.out.println("different: issued " + issued + " maturing " + text + ": " + expected + " vs " + actual);
+        }
+      }
+      checked++;
+      if (expected.startsWith("error")) {
+        invalid++;
+      }
+    }
+    System.out.printf("property check: %d pairs (%d with unparseable text), %d different%n", checked, invalid, failures);
+
+    String[] valid = new String[cases];
+    for (int i = 0; i < cases; i++) {
+      String text;
+      do {
+        text = randomText(random);
+      } while (reference(text, text).startsWith("error") || text.startsWith("#"));
+      valid[i] = text;
+    }
+    for (int round = 1; round <= rounds; round++) { // the first rounds are warm up
+      long start = System.nanoTime();
+      long sum = 0;
+      for (int i = 1; i < cases; i++) {
+        LocalDate issue = getLocalDate(valid[i - 1]);
+        LocalDate maturity = getLocalDate(valid[i]);
+        sum += ChronoUnit.YEARS.between(issue, maturity) + issue.get(IsoFields.QUARTER_OF_YEAR);
+      }
+      long formatterTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long codecSum = 0;
+      for (int i = 1; i < cases; i++) {
+        int issue = DateCodec.parse(valid[i - 1]);
+        int maturity = DateCodec.parse(valid[i]);
+        codecSum += DateCodec.yearsBetween(issue, maturity) + DateCodec.quarter(issue);
+      }
+      long codecTime = System.nanoTime() - start;
+      System.out.printf("round %d: formatter %.1f ns/bond, codec %.1f ns/bond, %.1fx, same=%b%n", round,
+          (double) formatterTime / cases, (double) codecTime / cases, (double) formatterTime / codecTime, sum == codecSum);
+    }
+  }
+
+  // epoch day, years to maturity and quarter as the old Bond code computed them, or the error
+  private static String reference(String issued, String maturing) {
+    try {
+      LocalDate issue = getLocalDate(issued);
+      LocalDate maturity = getLocalDate(maturing);
+      return maturity.toEpochDay() + " " + ChronoUnit.YEARS.between(issue, maturity) + " " + issue.get(IsoFields.QUARTER_OF_YEAR)
+          + " " + issue.getYear();
+    } catch (DateTimeParseException e) {
+      return "error";
+    }
+  }
+
+  private static String codec(String issued, String maturing) {
+    try {
+      int issue = DateCodec.parse(issued);
+      int maturity = DateCodec.parse(maturing);
+      if (issue == DateCodec.NOT_AVAILABLE || maturity == DateCodec.NOT_AVAILABLE) {
+        return "error"; // the formatters cannot parse the sentinels either
+      }
+      return maturity + " " + DateCodec.yearsBetween(issue, maturity) + " " + DateCodec.quarter(issue) + " " + DateCodec.year(issue);
+    } catch (DateTimeParseException e) {
+      return "error";
+    }
+  }
+
+  // Bond.getLocalDate before DateCodec
+  private static LocalDate getLocalDate(String dateStr) {
+    LocalDate date;
+    if (dateStr.length() > 8) {
+      if (dateStr.indexOf('/') != -1) {
+        date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("d/M/y"));
+      } else {
+        date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("y-M-d"));
+      }
+    } else {
+      date = LocalDate.parse(dateStr, DateTimeFormatter.ofPattern("M/d/yy"));
+    }
+    return date;
+  }
+
+  private static String randomText(Random random) {
+    int year = 1950 + random.nextInt(150);
+    int month = random.nextInt(20) == 0 ? random.nextInt(15) : 1 + random.nextInt(12); // some invalid months
+    int day = random.nextInt(10) == 0 ? 28 + random.nextInt(6) : 1 + random.nextInt(28); // end of month clamping and invalid days
+    switch (random.nextInt(8)) {
+      case 0:
+        return pad(random, day) + "/" + pad(random, month) + "/" + year;
+      case 1:
+        return year + "-" + pad(random, month) + "-" + pad(random, day);
+      case 2:
+        return pad(random, month) + "/" + pad(random, day) + "/" + String.format("%02d", year % 100);
+      case 3:
+        return random.nextBoolean() ? "#N/A N/A" : "#N/A Field Not Applicable";
+      case 4: // garbage the formatters reject
+        String[] garbage = {"", "2020", "1/1/2020x", "2020/01/01", "1-1-20", " 1/1/20", "2020-1-1-1", "12/31/2020", "1/2/3/4/5"};
+        return garbage[random.nextInt(garbage.length)];
+      case 5:
+        return String.format("%02d/%02d/%d", day, month, year);
+      case 6:
+        return String.format("%d-%02d-%02d", year, month, day);
+      default:
+        return month + "/" + day + "/" + String.format("%02d", year % 100);
+    }
+  }
+
+  private static String pad(Random random, int value) {
+    return random.nextBoolean() ? String.format("%02d", value) : String.valueOf(value);
+  }
+}
@@ -0,0 +1,24 @@
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+// One way of partitioning the matched pairs (region, rating, green activity...), registered with a CategorisationEngine
+// The engine reads the matches once and asks every registered dimension where the current row goes, the value written next
+// to the two bonds is the VALUE column of the file's MatchLayout
+public interface Dimension {
+
+  // workbook the categorised rows are written to, one sheet per category
+  String outputFile();
+
+  // adds the categories of the reader's current row to categories: none to leave the row out, several to write it to each of them
+  void categorise(MatchReader row, List<String> categories);
+
+  // extra columns the dimension reads besides the value, the engine refuses to run it on a layout without them
+  default Set<MatchLayout.Column> columns() {
+    return EnumSet.noneOf(MatchLayout.Column.class);
+  }
+
+  // called once every row is categorised, to add summary sheets to the dimension's output
+  default void finish(ExcelOutput output) {
+  }
+}
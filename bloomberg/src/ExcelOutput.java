@@ -0,0 +1,72 @@
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Streaming output workbook shared by the writers: only the last ROW_WINDOW rows of each sheet stay in memory, older rows are
+ * flushed to gzip compressed temp files, so the heap no longer grows with the number of rows written
+ * Sheets are created on first use and their handles cached, rows must be appended in increasing order per sheet (SXSSF cannot go back)
+ * Nothing reaches the output file before close(), which writes it and deletes the temp files **/
+public class ExcelOutput implements Closeable {
+
+    public static final int ROW_WINDOW = 100; // rows per sheet kept in memory
+
+    private final String file;
+    private final SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+    private final Map<String, Sheet> sheets = new HashMap<>();
+    private final Map<String, Integer> nextRows = new HashMap<>();
+
+    public ExcelOutput(String file) {
+        this.file = file;
+        workbook.setCompressTempFiles(true);
+    }
+
+    /** The workbook, for cell styles and formats **/
+    public Workbook getWorkbook() {
+        return workbook;
+    }
+
+    /** The sheet with the given name, created on first use **/
+    public Sheet sheet(String name) {
+        Sheet sheet = sheets.get(name);
+        if (sheet == null) {
+            sheet = workbook.createSheet(name);
+            sheets.put(name, sheet);
+        }
+        return sheet;
+    }
+
+    /** Appends a row after the last one created through this method or row() **/
+    public Row nextRow(String sheetName) {
+        return row(sheetName, nextRows.getOrDefault(sheetName, 0));
+    }
+
+    /** Creates the row at the given index, which must be past the rows already created on the sheet **/
+    public Row row(String sheetName, int rownum) {
+        nextRows.put(sheetName, rownum + 1);
+        return sheet(sheetName).createRow(rownum);
+    }
+
+    /** Rows created so far on the sheet, 0 if it does not exist yet **/
+    public int rowCount(String sheetName) {
+        return nextRows.getOrDefault(sheetName, 0);
+    }
+
+    /** Writes the workbook to the file and deletes the temp files **/
+    @Override
+    public void close() throws IOException {
+        try (OutputStream out = new FileOutputStream(file, false)) {
+            workbook.write(out);
+        } finally {
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Peak heap and write throughput of the streaming ExcelOutput vs the in-memory XSSFWorkbook the writers used before,
+// on rows shaped like the match output (two Bond{...} strings and a yield) spread over a few category sheets
+// Peak heap is the peak of the heap pools since the start of the run (it includes garbage not collected yet),
+// live heap is what is left after a full gc once every row has been created, just before the workbook is written
+// usage: ExcelOutputBenchmark [rows] [stream|xssf|both], run each mode in its own JVM for the cleanest peaks
+public class ExcelOutputBenchmark {
+
+  private static final String[] SHEETS = {"Prime", "High grade", "Upper medium grade", "Lower medium grade", "Junk"};
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    String mode = args.length > 1 ? args[1] : "both";
+    System.out.printf("%d rows, max heap %dMB%n", rows, Runtime.getRuntime().maxMemory() >> 20);
+    if (!mode.equals("xssf")) {
+      run("stream", rows);
+    }
+    if (!mode.equals("stream")) {
+      try {
+        run("xssf", rows);
+      } catch (OutOfMemoryError e) {
+        System.out.println("xssf: out of memory");
+      }
+    }
+  }
+
+  private static void run(String mode, int rows) throws IOException {
+    File file = new File("benchmark_output_" + mode + ".xlsx");
+    resetPeaks();
+    long start = System.nanoTime();
+    long live;
+    if (mode.equals("stream")) {
+      ExcelOutput output = new ExcelOutput(file.getPath());
+      int[] rowNums = new int[SHEETS.length];
+      for (int i = 0; i < rows; i++) {
+        int sheet = i % SHEETS.length;
+        fill(output.row(SHEETS[sheet], rowNums[sheet]++), i);
+      }
+      live = liveHeap();
+      output.close();
+    } else {
+      XSSFWorkbook workbook = new XSSFWorkbook();
+      int[] rowNums = new int[SHEETS.length];
+      for (int i = 0; i < rows; i++) { // the way the writers did it, looking the sheet up on every row
+        int sheet = i % SHEETS.length;
+        Sheet spreadsheet = workbook.getSheet(SHEETS[sheet]) != null ? workbook.getSheet(SHEETS[sheet]) : workbook.createSheet(SHEETS[sheet]);
+        fill(spreadsheet.createRow(rowNums[sheet]++), i);
+      }
+      live = liveHeap();
+      try (FileOutputStream out = new FileOutputStream(file)) {
+        workbook.write(out);
+      }
+      workbook.close();
+    }
+    long time = System.nanoTime() - start;
+    System.out.printf("%s: %.1fs, %.0f rows/s, peak heap %dMB, live heap before write %dMB, file %dMB%n", mode, time / 1e9,
+        rows / (time / 1e9), peakHeap() >> 20, live >> 20, file.length() >> 20);
+  }
+
+  private static void fill(Row row, int i) {
+    row.createCell(0).setCellValue("Bond{issuer='Issuer " + (i % 5000) + "', moodysRating='A2', snpRating='A', maturity=TEN_YEARS, "
+        + "maturityDate=2032-03-15, issuanceTerm=Q1, issuanceYear='2022', issuanceDate=2022-03-15, ccy='EUR', green?='true', "
+        + "isin='N/A', ytmBid=" + (i % 700) / 100.0 + ", ytmAsk=" + (i % 710) / 100.0 + "}");
+    row.createCell(1).setCellValue("Bond{issuer='Issuer " + (i % 5000) + "', moodysRating='A2', snpRating='A', maturity=TEN_YEARS, "
+        + "maturityDate=2032-06-15, issuanceTerm=Q2, issuanceYear='2022', issuanceDate=2022-06-15, ccy='EUR', green?='false', "
+        + "isin='XS" + (1000000000L + i) + "', ytmBid=" + (i % 690) / 100.0 + ", ytmAsk=" + (i % 720) / 100.0 + "}");
+    row.createCell(2).setCellValue((i % 97) / 1000.0);
+  }
+
+  private static void resetPeaks() {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+      }
+    }
+  }
+
+  private static long peakHeap() {
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  private static long liveHeap() {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Replays the candidate lookups of match() on recorded data (the lookup cache) with the fixed getMissingFields order
+// and with the FieldSelectivity order, and reports the API calls each would have made
+// match() stops looking a candidate up at its first mismatch, so a real cache mostly holds a candidate's fields up to that
+// mismatch. Where an order reaches a field that was never looked up, its calls are only known within bounds: at least up to
+// that field, which may have been the mismatch, and at most up to the next recorded mismatch or the last field
+// On a cache filled in the fixed order that is the case for most rejected candidates whose adaptive order starts elsewhere,
+// so the adaptive calls, and the calls saved, are reported as a range over every candidate whose fixed order was recorded
+// usage: FieldOrderReplay <lookup cache dir> <conventional file> <green file>...
+public class FieldOrderReplay {
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3) {
+      System.out.println("usage: FieldOrderReplay <lookup cache dir> <conventional file> <green file>...");
+      return;
+    }
+    LookupCache recorded = new LookupCache(args[0]);
+    recorded.setTimeToLive(BloombergMain.Bond.MOODYS_RATING, Long.MAX_VALUE); // replaying, old values are fine
+    recorded.setTimeToLive(BloombergMain.Bond.SNP_RATING, Long.MAX_VALUE);
+    recorded.setTimeToLive(BloombergMain.Bond.ISSUER, Long.MAX_VALUE);
+
+    BloombergMain universe = new BloombergMain();
+    universe.streamFromExcelConventional(args[1]);
+    String[] greenFiles = new String[args.length - 2];
+    System.arraycopy(args, 2, greenFiles, 0, greenFiles.length);
+    universe.streamFromExcelGreen(greenFiles);
+
+    FieldSelectivity stats = new FieldSelectivity();
+    long fixedCalls = 0, adaptiveLow = 0, adaptiveHigh = 0, candidates = 0, exact = 0, rejected = 0, skipped = 0, unrecorded = 0;
+    for (Map.Entry<String, List<BloombergMain.Bond>> entry : universe.getGreenBondsByIssuer().entrySet()) {
+      String issuer = entry.getKey();
+      List<String> ids = universe.getConventionalBondsByIssuer().get(issuer);
+      if (ids == null) {
+        continue;
+      }
+      for (BloombergMain.Bond greenBond : entry.getValue()) {
+        for (String id : ids) {
+          BloombergMain.Bond stored = universe.getConventionalBonds().get(id);
+          List<String> fields = new BloombergMain.Bond(issuer, stored.isin).getMissingFields();
+          Map<String, String> values = new HashMap<>();
+          for (String field : fields) {
+            String value = recorded.get(id, field);
+            if (value != null) {
+              values.put(field, value);
+            }
+          }
+          if (values.isEmpty()) { // never looked up
+            unrecorded++;
+            continue;
+          }
+          Outcome fixed = replay(greenBond, issuer, stored.isin, fields, values, null);
+          if (fixed.low != fixed.high) { // the fixed order itself is not fully recorded, e.g. a run that stopped on an error
+            skipped++;
+            continue;
+          }
+          List<String> ordered = stats.order(issuer, fields);
+          Outcome adaptive = replay(greenBond, issuer, stored.isin, ordered, values, stats); // records what match() would have seen
+          candidates++;
+          fixedCalls += fixed.low;
+          adaptiveLow += adaptive.low;
+          adaptiveHigh += adaptive.high;
+          if (adaptive.low == adaptive.high) {
+            exact++;
+          }
+          if (fixed.rejected) {
+            rejected++;
+          }
+        }
+      }
+    }
+    recorded.close();
+
+    System.out.printf("candidates replayed=%d (rejected %d, adaptive order fully recorded for %d), skipped (fixed order not recorded)=%d, "
+        + "never looked up=%d%n", candidates, rejected, exact, skipped, unrecorded);
+    System.out.printf("fixed order calls=%d, adaptive order calls between %d and %d, saved between %d and %d%n", fixedCalls, adaptiveLow,
+        adaptiveHigh, fixedCalls - adaptiveHigh, fixedCalls - adaptiveLow);
+    if (candidates > 0) {
+      System.out.printf("calls per candidate: fixed %.2f, adaptive %.2f to %.2f%n", (double) fixedCalls / candidates,
+          (double) adaptiveLow / candidates, (double) adaptiveHigh / candidates);
+    }
+  }
+
+  // Looks the fields up in the given order until the first mismatch. A field with no recorded value might have been the mismatch,
+  // so from the first one on the calls are a range; the maturity bucket needs the issue date, without it the maturity is unknown too
+  // Only the outcomes before the first unknown field are recorded in stats, later ones match() might never have seen
+  private static Outcome replay(BloombergMain.Bond greenBond, String issuer, boolean isin, List<String> order, Map<String, String> values,
+                                FieldSelectivity stats) {
+    BloombergMain.Bond bond = new BloombergMain.Bond(issuer, isin);
+    int calls = 0;
+    int firstUnknown = 0;
+    for (String field : order) {
+      calls++;
+      boolean known = values.containsKey(field) && (!field.equals(BloombergMain.Bond.MATURITY) || bond.issuanceDate != null);
+      if (!known) {
+        firstUnknown = firstUnknown == 0 ? calls : firstUnknown;
+        continue;
+      }
+      bond.setField(field, values.get(field));
+      boolean mismatch = bond.isMismatch(greenBond, field);
+      if (stats != null && firstUnknown == 0) {
+        stats.record(issuer, field, mismatch);
+      }
+      if (mismatch) {
+        return new Outcome(firstUnknown == 0 ? calls : firstUnknown, calls, true);
+      }
+    }
+    return new Outcome(firstUnknown == 0 ? calls : firstUnknown, calls, false);
+  }
+
+  // calls made, between low and high when an unrecorded field was reached; rejected is the outcome of the recorded fields
+  private static class Outcome {
+    private final int low;
+    private final int high;
+    private final boolean rejected;
+
+    Outcome(int low, int high, boolean rejected) {
+      this.low = low;
+      this.high = high;
+      this.rejected = rejected;
+    }
+  }
+}
@@ -0,0 +1,71 @@
+import java.util.*;
+
+/** Running mismatch statistics per looked up field, per issuer and overall
+ * Used to look up the field most likely to reject a candidate first, since the lookup loop stops at the first mismatch
+ * Issuer rates are blended with the overall rate until the issuer has enough lookups of its own
+ * Issuers matched in parallel each get a copy, so the order of an issuer doesn't depend on which other issuers ran before it **/
+public class FieldSelectivity {
+
+    private static final double PRIOR_WEIGHT = 5; // the overall rate counts as this many lookups of the issuer
+
+    private final Map<String, Map<String, int[]>> bySegment = new HashMap<>(); // segment -> field -> {lookups, mismatches}
+    private final Map<String, int[]> overall = new HashMap<>();
+
+    /** A copy of the statistics gathered so far, records to the copy don't show in this one or the other way round **/
+    public synchronized FieldSelectivity copy() {
+        FieldSelectivity copy = new FieldSelectivity();
+        for (Map.Entry<String, Map<String, int[]>> segment : bySegment.entrySet()) {
+            Map<String, int[]> fields = new HashMap<>();
+            for (Map.Entry<String, int[]> field : segment.getValue().entrySet()) {
+                fields.put(field.getKey(), field.getValue().clone());
+            }
+            copy.bySegment.put(segment.getKey(), fields);
+        }
+        for (Map.Entry<String, int[]> field : overall.entrySet()) {
+            copy.overall.put(field.getKey(), field.getValue().clone());
+        }
+        return copy;
+    }
+
+    /** Records the outcome of looking up a field for a candidate of the given segment (issuer) **/
+    public synchronized void record(String segment, String field, boolean mismatch) {
+        int[] counts = bySegment.computeIfAbsent(segment, k -> new HashMap<>()).computeIfAbsent(field, k -> new int[2]);
+        int[] total = overall.computeIfAbsent(field, k -> new int[2]);
+        counts[0]++;
+        total[0]++;
+        if (mismatch) {
+            counts[1]++;
+            total[1]++;
+        }
+    }
+
+    /** Estimated probability that looking up the field rejects a candidate of the segment **/
+    public synchronized double mismatchRate(String segment, String field) {
+        int[] total = overall.get(field);
+        double prior = total == null ? 0.5 : (total[1] + 1.0) / (total[0] + 2.0); // no data yet: coin flip
+        Map<String, int[]> fields = bySegment.get(segment);
+        int[] counts = fields == null ? null : fields.get(field);
+        if (counts == null) {
+            return prior;
+        }
+        return (counts[1] + PRIOR_WEIGHT * prior) / (counts[0] + PRIOR_WEIGHT);
+    }
+
+    /** Orders the missing fields by decreasing mismatch rate, every lookup costs the same so this minimises calls per rejected candidate
+     * The issue date is always looked up before the maturity, the maturity bucket is computed from it **/
+    public synchronized List<String> order(String segment, List<String> missingFields) {
+        List<String> ordered = new ArrayList<>(missingFields);
+        Map<String, Double> rates = new HashMap<>();
+        for (String field : ordered) {
+            rates.put(field, mismatchRate(segment, field));
+        }
+        ordered.sort((a, b) -> Double.compare(rates.get(b), rates.get(a))); // stable, ties keep getMissingFields order
+        int maturity = ordered.indexOf(BloombergMain.Bond.MATURITY);
+        int issueDate = ordered.indexOf(BloombergMain.Bond.ISSUE_DATE);
+        if (maturity != -1 && issueDate > maturity) {
+            ordered.remove(issueDate);
+            ordered.add(maturity, BloombergMain.Bond.ISSUE_DATE);
+        }
+        return ordered;
+    }
+}
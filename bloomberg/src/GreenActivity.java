@@ -0,0 +1,87 @@
+import java.util.List;
+
+/** The green project categories of the ICMA Green Bond Principles, as Bloomberg labels them in the use of proceeds field,
+ * plus the undisclosed label of the bonds that do not say
+ * A bond's activities ("Renewable energy/Clean transportation") are parsed once into a bit set (bit = ordinal), without regexes
+ * or substrings; labels that are none of these are handed back so they can be reported instead of dropped **/
+public enum GreenActivity {
+    UNDISCLOSED("undisclosed", "Undisclosed"),
+    ENERGY_EFFICIENCY("Energy smart technologies and energy efficiency", "Energy efficiency"),
+    GREEN_BUILDINGS("Green buildings and infrastructure", "Green buildings"),
+    CLEAN_TRANSPORTATION("Clean transportation", "Clean transportation"),
+    SUSTAINABLE_WATER("Sustainable water management", "Sustainable water management"),
+    RENEWABLE_ENERGY("Renewable energy", "Renewable energy"),
+    BIODIVERSITY("Terrestrial and aquatic biodiversity conservation", "Biodiversity conservation"),
+    POLLUTION_PREVENTION("Pollution prevention and control", "Pollution prevention"),
+    AGRICULTURE_FORESTRY("Agriculture and forestry", "Agriculture and forestry"),
+    CLIMATE_ADAPTATION("Climate change adaptation", "Climate change adaptation"),
+    ECO_EFFICIENT_PRODUCTS("Eco-efficient products, production technologies and processes", "Eco-efficient products");
+
+    private static final GreenActivity[] VALUES = values();
+    public static final int COUNT = VALUES.length;
+    public static final char SEPARATOR = '/';
+
+    private final String label;
+    private final String sheetName;
+
+    GreenActivity(String label, String sheetName) {
+        this.label = label;
+        this.sheetName = sheetName;
+    }
+
+    /** The label as found in the use of proceeds field **/
+    public String label() {
+        return label;
+    }
+
+    /** Short name, within excel's 31 characters for a sheet name **/
+    public String sheetName() {
+        return sheetName;
+    }
+
+    public static GreenActivity get(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /** Bit set of the activities in the '/' separated text, bit i for get(i); labels that are not activities are added to unknown
+     * Blanks around the labels are ignored, empty labels skipped **/
+    public static int parse(String text, List<String> unknown) {
+        int activities = 0;
+        int from = 0;
+        while (from <= text.length()) {
+            int to = text.indexOf(SEPARATOR, from);
+            if (to == -1) {
+                to = text.length();
+            }
+            int start = from;
+            int end = to;
+            while (start < end && text.charAt(start) == ' ') {
+                start++;
+            }
+            while (end > start && text.charAt(end - 1) == ' ') {
+                end--;
+            }
+            if (start < end) {
+                int activity = find(text, start, end);
+                if (activity == -1) {
+                    unknown.add(text.substring(start, end));
+                } else {
+                    activities |= 1 << activity;
+                }
+            }
+            from = to + 1;
+        }
+        return activities;
+    }
+
+    // ordinal of the activity labelled by the text between start and end, -1 if none
+    private static int find(String text, int start, int end) {
+        for (GreenActivity activity : VALUES) {
+            String label = activity.label;
+            if (label.length() == end - start && text.startsWith(label, start)) {
+                return activity.ordinal();
+            }
+        }
+        return -1;
+    }
+}
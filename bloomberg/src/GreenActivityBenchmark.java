@@ -0,0 +1,112 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Counting bonds per green activity on a multi-million row synthetic use of proceeds column (one label string per line):
+// the regex CategoriseGreenActivity compiled on every row with a HashMap lookup per label, vs GreenActivity.parse into a bit set
+// (which also counts the co-occurrences and keeps the unknown labels). Both read the same file, the read-only pass is the baseline
+// usage: GreenActivityBenchmark [rows]
+public class GreenActivityBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+    File file = new File("benchmark_activities.txt");
+    write(file, rows);
+    System.out.printf("%d rows, %dMB%n", rows, file.length() >> 20);
+    for (int round = 0; round < 3; round++) { // the first round warms the JIT up
+      long start = System.nanoTime();
+      long chars = 0;
+      try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          chars += line.length();
+        }
+      }
+      long read = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      Map<String, Integer> rowNums = new HashMap<>();
+      for (GreenActivity activity : GreenActivity.values()) {
+        rowNums.put(activity.label(), 0);
+      }
+      int dropped = 0;
+      try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          Pattern pattern = Pattern.compile("([^/]+)"); // what CategoriseGreenActivity did on every row
+          Matcher matcher = pattern.matcher(line);
+          while (matcher.find()) {
+            String activity = matcher.group(0);
+            Integer rowNum = rowNums.get(activity);
+            if (rowNum == null) {
+              dropped++;
+              continue;
+            }
+            rowNums.put(activity, rowNum + 1);
+          }
+        }
+      }
+      long regex = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      long[][] coOccurrence = new long[GreenActivity.COUNT][GreenActivity.COUNT];
+      List<String> unknown = new ArrayList<>();
+      int unknownCount = 0;
+      try (BufferedReader reader = new BufferedReader(new FileReader(file), 1 << 16)) {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+          unknown.clear();
+          int activities = GreenActivity.parse(line, unknown);
+          unknownCount += unknown.size();
+          for (int i = 0; i < GreenActivity.COUNT; i++) {
+            if ((activities & (1 << i)) != 0) {
+              for (int j = 0; j < GreenActivity.COUNT; j++) {
+                if ((activities & (1 << j)) != 0) {
+                  coOccurrence[i][j]++;
+                }
+              }
+            }
+          }
+        }
+      }
+      long bits = System.nanoTime() - start;
+
+      for (GreenActivity activity : GreenActivity.values()) {
+        if (coOccurrence[activity.ordinal()][activity.ordinal()] != rowNums.get(activity.label())) {
+          throw new IllegalStateException("the two ways disagree on " + activity);
+        }
+      }
+      if (dropped != unknownCount) {
+        throw new IllegalStateException("the two ways disagree on the unknown labels");
+      }
+      System.out.printf("round %d: read only %.0fms (%d chars), regex %.0fms (+%.0f ns/row), bit sets %.0fms (+%.0f ns/row), %d unknown labels%n",
+          round, read / 1e6, chars, regex / 1e6, (double) (regex - read) / rows, bits / 1e6, (double) (bits - read) / rows, unknownCount);
+    }
+  }
+
+  // one to three different activities per row, and now and then a label that is no activity
+  private static void write(File file, int rows) throws IOException {
+    Random random = new Random(11);
+    GreenActivity[] activities = GreenActivity.values();
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file), 1 << 16)) {
+      for (int i = 0; i < rows; i++) {
+        int labels = 1 + random.nextInt(3);
+        int first = random.nextInt(activities.length);
+        for (int j = 0; j < labels; j++) {
+          if (j > 0) {
+            writer.write(GreenActivity.SEPARATOR);
+          }
+          writer.write(random.nextInt(200) == 0 ? "Circular economy" : activities[(first + 4 * j) % activities.length].label());
+        }
+        writer.newLine();
+      }
+    }
+  }
+}
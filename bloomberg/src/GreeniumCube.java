@@ -0,0 +1,419 @@
+import java.io.*;
+import java.util.*;
+
+/** In-memory cube of the matched pairs' ytm differences along region x rating x green activity x maturity x currency
+ * Built in one pass into the base cells (every axis fixed), which are then rolled up into the other group-bys (every subset
+ * of the axes rolled up to ALL, 32 in all), so a roll-up or a slice is a hash lookup per fixed coordinate instead of a rescan
+ * of the matches. Each cell keeps the count, sum, sum of squares and a QuantileSketch of the values, all of which merge
+ *
+ * A pair has one coordinate on every axis but activities, where it has one per green activity of the bond: it is counted
+ * in each of its activities' cells and once in the ALL activity cell, so roll-ups over activity never count a pair twice,
+ * while a query listing several activities adds up their cells and counts a pair with both activities in each of them
+ *
+ * File layout (big endian), version 1: magic, version | per axis: count, then coordinate names | missing values |
+ * cells: count, then key, count, sum, sum of squares, sketch per base cell **/
+public class GreeniumCube {
+
+    public enum Axis {
+        REGION, RATING, ACTIVITY, MATURITY, CURRENCY
+    }
+
+    public static final String UNKNOWN = "Unknown";
+    private static final int AXES = Axis.values().length;
+    private static final int ALL_AXES = (1 << AXES) - 1; // group-bys are bit sets of the axes kept, the others are rolled up
+    private static final int BITS = 12; // per axis in a cell key, coordinate 0 is ALL and c is stored as c + 1
+    private static final int MAX_COORDINATES = (1 << BITS) - 2;
+    private static final int MAGIC = 0x47435542; // "GCUB"
+    private static final int VERSION = 1; // bump whenever the layout changes
+
+    private final List<List<String>> names = new ArrayList<>(); // per axis, coordinate -> name
+    private final List<Map<String, Integer>> coordinates = new ArrayList<>(); // per axis, name -> coordinate
+    private final Map<Long, Cell> base = new HashMap<>(); // the pairs by all five axes, and by all but the activity
+    private Map<Long, Cell> cells = null; // every group-by, rolled up from the base cells when a query needs them
+    private long missing = 0;
+    private final int[] fixed = new int[AXES]; // scratch of add
+
+    public GreeniumCube() {
+        for (int i = 0; i < AXES; i++) {
+            names.add(new ArrayList<>());
+            coordinates.add(new HashMap<>());
+        }
+    }
+
+    /** Count, sum, sum of squares and sketch of the values of a cell, or of several cells merged **/
+    public static class Cell {
+        private long count = 0;
+        private double sum = 0;
+        private double sumOfSquares = 0;
+        private final QuantileSketch sketch;
+
+        public Cell() {
+            this(new QuantileSketch());
+        }
+
+        private Cell(QuantileSketch sketch) {
+            this.sketch = sketch;
+        }
+
+        void add(double value) {
+            count++;
+            sum += value;
+            sumOfSquares += value * value;
+            sketch.add(value);
+        }
+
+        void merge(Cell other) {
+            count += other.count;
+            sum += other.sum;
+            sumOfSquares += other.sumOfSquares;
+            sketch.merge(other.sketch);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+
+        public double getSumOfSquares() {
+            return sumOfSquares;
+        }
+
+        /** NaN if the cell is empty **/
+        public double getMean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /** Sample variance (n - 1), NaN below two values **/
+        public double getVariance() {
+            return count < 2 ? Double.NaN : Math.max(0, (sumOfSquares - sum * sum / count) / (count - 1));
+        }
+
+        public double quantile(double q) {
+            return sketch.quantile(q);
+        }
+    }
+
+    /** Adds a pair, activities are the green bond's activity names (none is UNKNOWN); null coordinates are UNKNOWN
+     * NaN values are counted as missing and left out **/
+    public void add(String region, String rating, Collection<String> activities, String maturity, String currency, double value) {
+        if (Double.isNaN(value)) {
+            missing++;
+            return;
+        }
+        fixed[Axis.REGION.ordinal()] = coordinate(Axis.REGION, region);
+        fixed[Axis.RATING.ordinal()] = coordinate(Axis.RATING, rating);
+        fixed[Axis.MATURITY.ordinal()] = coordinate(Axis.MATURITY, maturity);
+        fixed[Axis.CURRENCY.ordinal()] = coordinate(Axis.CURRENCY, currency);
+        int activity = Axis.ACTIVITY.ordinal();
+        baseCell(key(ALL_AXES & ~(1 << activity), fixed)).add(value);
+        if (activities.isEmpty()) {
+            fixed[activity] = coordinate(Axis.ACTIVITY, UNKNOWN);
+            baseCell(key(ALL_AXES, fixed)).add(value);
+        } else {
+            for (String name : activities) {
+                fixed[activity] = coordinate(Axis.ACTIVITY, name);
+                baseCell(key(ALL_AXES, fixed)).add(value);
+            }
+        }
+        cells = null;
+    }
+
+    /** Starts a query: axes left out are rolled up, the others are sliced to the listed coordinates **/
+    public Query query() {
+        return new Query();
+    }
+
+    /** Coordinate names of the axis, in the order they were first seen **/
+    public List<String> coordinates(Axis axis) {
+        return Collections.unmodifiableList(names.get(axis.ordinal()));
+    }
+
+    /** Cells of all the group-bys **/
+    public int getCellCount() {
+        return rollUp().size();
+    }
+
+    public long getMissing() {
+        return missing;
+    }
+
+    public class Query {
+        private final List<int[]> slices = new ArrayList<>(); // per axis, null for ALL
+
+        private Query() {
+            for (int i = 0; i < AXES; i++) {
+                slices.add(null);
+            }
+        }
+
+        /** Slices the axis to the given coordinates, names the cube has never seen match nothing **/
+        public Query where(Axis axis, String... values) {
+            int[] slice = new int[values.length];
+            int size = 0;
+            for (String value : values) {
+                Integer coordinate = coordinates.get(axis.ordinal()).get(value);
+                if (coordinate != null) {
+                    slice[size++] = coordinate;
+                }
+            }
+            slices.set(axis.ordinal(), Arrays.copyOf(slice, size));
+            return this;
+        }
+
+        /** Slices the rating axis to the ratings of the band, by their S&P symbols **/
+        public Query where(RatingScale.Band band) {
+            List<String> ratings = new ArrayList<>();
+            for (int ordinal = 0; ordinal < RatingScale.SIZE; ordinal++) {
+                if (RatingScale.band(ordinal) == band) {
+                    ratings.add(RatingScale.symbol(RatingScale.Agency.SNP, ordinal));
+                }
+            }
+            return where(Axis.RATING, ratings.toArray(new String[0]));
+        }
+
+        /** The cells of the query merged into one **/
+        public Cell get() {
+            Map<Long, Cell> cells = rollUp();
+            Cell result = new Cell();
+            int groupBy = 0;
+            for (int i = 0; i < AXES; i++) {
+                if (slices.get(i) != null) {
+                    groupBy |= 1 << i;
+                }
+            }
+            collect(cells, groupBy, 0, new int[AXES], result);
+            return result;
+        }
+
+        /** One merged cell per coordinate of the axis, with the rest of the query applied **/
+        public Map<String, Cell> groupBy(Axis axis) {
+            int[] saved = slices.get(axis.ordinal());
+            Map<String, Cell> groups = new LinkedHashMap<>();
+            for (String name : names.get(axis.ordinal())) {
+                Integer coordinate = coordinates.get(axis.ordinal()).get(name);
+                if (saved != null && !contains(saved, coordinate)) {
+                    continue;
+                }
+                slices.set(axis.ordinal(), new int[]{coordinate});
+                groups.put(name, get());
+            }
+            slices.set(axis.ordinal(), saved);
+            return groups;
+        }
+
+        // walks the product of the slices, one lookup per combination
+        private void collect(Map<Long, Cell> cells, int groupBy, int axis, int[] point, Cell result) {
+            if (axis == AXES) {
+                Cell cell = cells.get(key(groupBy, point));
+                if (cell != null) {
+                    result.merge(cell);
+                }
+                return;
+            }
+            int[] slice = slices.get(axis);
+            if (slice == null) {
+                collect(cells, groupBy, axis + 1, point, result);
+                return;
+            }
+            for (int coordinate : slice) {
+                point[axis] = coordinate;
+                collect(cells, groupBy, axis + 1, point, result);
+            }
+        }
+    }
+
+    /** Writes the base cells to a temporary file that replaces the file once complete, the rest is rolled up again on reading **/
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (List<String> axis : names) {
+                out.writeInt(axis.size());
+                for (String name : axis) {
+                    out.writeUTF(name);
+                }
+            }
+            out.writeLong(missing);
+            out.writeInt(base.size());
+            for (Map.Entry<Long, Cell> entry : base.entrySet()) {
+                Cell cell = entry.getValue();
+                out.writeLong(entry.getKey());
+                out.writeLong(cell.count);
+                out.writeDouble(cell.sum);
+                out.writeDouble(cell.sumOfSquares);
+                cell.sketch.write(out);
+            }
+        }
+        if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+            throw new IOException("unable to replace the cube " + file);
+        }
+    }
+
+    /** Reads a cube written by write **/
+    public static GreeniumCube read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a cube of this version");
+            }
+            GreeniumCube cube = new GreeniumCube();
+            for (Axis axis : Axis.values()) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    cube.coordinate(axis, in.readUTF());
+                }
+            }
+            cube.missing = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long key = in.readLong();
+                long cellCount = in.readLong();
+                double sum = in.readDouble();
+                double sumOfSquares = in.readDouble();
+                Cell cell = new Cell(QuantileSketch.read(in));
+                cell.count = cellCount;
+                cell.sum = sum;
+                cell.sumOfSquares = sumOfSquares;
+                cube.base.put(key, cell);
+            }
+            return cube;
+        }
+    }
+
+    /** Builds the cube in one pass over the matches, regions from the index, ratings and maturities of the green bond
+     * The values are the layout's VALUE column, activities come from its ACTIVITY column, UNKNOWN in the files without one **/
+    public static GreeniumCube build(String matchesFile, MatchLayout layout, RegionIndex regions) throws IOException {
+        GreeniumCube cube = new GreeniumCube();
+        List<String> activities = new ArrayList<>();
+        List<String> unknown = new ArrayList<>();
+        int activityColumn = layout.has(MatchLayout.Column.ACTIVITY) ? layout.column(MatchLayout.Column.ACTIVITY) : -1;
+        try (MatchReader reader = new MatchReader(matchesFile, layout)) {
+            while (reader.next()) {
+                int region = regions.region(reader.text(MatchTable.GREEN, BondScanner.ISSUER));
+                int rating = RatingScale.prefer(reader.rating(MatchTable.GREEN, BondScanner.MOODYS_RATING, RatingScale.Agency.MOODYS),
+                        reader.rating(MatchTable.GREEN, BondScanner.SNP_RATING, RatingScale.Agency.SNP));
+                activities.clear();
+                if (activityColumn >= 0 && reader.has(activityColumn)) { // use of proceeds
+                    unknown.clear();
+                    int set = GreenActivity.parse(reader.string(activityColumn), unknown);
+                    for (int i = 0; i < GreenActivity.COUNT; i++) {
+                        if ((set & (1 << i)) != 0) {
+                            activities.add(GreenActivity.get(i).sheetName());
+                        }
+                    }
+                    if (!unknown.isEmpty()) {
+                        activities.add(UNKNOWN);
+                    }
+                }
+                String maturity = reader.text(MatchTable.GREEN, BondScanner.MATURITY);
+                String currency = reader.text(MatchTable.GREEN, BondScanner.CCY);
+                cube.add(region == RegionIndex.NONE ? null : regions.regionName(region), RatingScale.symbol(RatingScale.Agency.SNP, rating),
+                        activities, "null".equals(maturity) ? null : maturity, "null".equals(currency) ? null : currency,
+                        reader.value());
+            }
+        }
+        return cube;
+    }
+
+    private Cell baseCell(long key) {
+        Cell cell = base.get(key);
+        if (cell == null) {
+            cell = new Cell();
+            base.put(key, cell);
+        }
+        return cell;
+    }
+
+    // merges every base cell into its cell of each group-by of a subset of its axes: the base cells with an activity make
+    // the group-bys keeping the activity, the others the group-bys rolling it up, so the ALL activity counts a pair once
+    private Map<Long, Cell> rollUp() {
+        if (cells != null) {
+            return cells;
+        }
+        Map<Long, Cell> rolledUp = new HashMap<>();
+        int activity = 1 << Axis.ACTIVITY.ordinal();
+        for (Map.Entry<Long, Cell> entry : base.entrySet()) {
+            long key = entry.getKey();
+            int kept = (key & (((1L << BITS) - 1) << (Axis.ACTIVITY.ordinal() * BITS))) == 0 ? ALL_AXES & ~activity : ALL_AXES;
+            for (int groupBy = kept; ; groupBy = (groupBy - 1) & kept) {
+                if ((groupBy & activity) == (kept & activity)) {
+                    Cell cell = rolledUp.get(mask(key, groupBy));
+                    if (cell == null) {
+                        cell = new Cell();
+                        rolledUp.put(mask(key, groupBy), cell);
+                    }
+                    cell.merge(entry.getValue());
+                }
+                if (groupBy == 0) {
+                    break;
+                }
+            }
+        }
+        cells = rolledUp;
+        return cells;
+    }
+
+    // the key with the axes outside the group-by rolled up to ALL
+    private static long mask(long key, int groupBy) {
+        for (int axis = 0; axis < AXES; axis++) {
+            if ((groupBy & (1 << axis)) == 0) {
+                key &= ~(((1L << BITS) - 1) << (axis * BITS));
+            }
+        }
+        return key;
+    }
+
+    private int coordinate(Axis axis, String name) {
+        if (name == null) {
+            name = UNKNOWN;
+        }
+        Map<String, Integer> axisCoordinates = coordinates.get(axis.ordinal());
+        Integer coordinate = axisCoordinates.get(name);
+        if (coordinate == null) {
+            if (axisCoordinates.size() == MAX_COORDINATES) {
+                throw new IllegalStateException("too many coordinates on " + axis + ", " + name + " does not fit");
+            }
+            coordinate = axisCoordinates.size();
+            axisCoordinates.put(name, coordinate);
+            names.get(axis.ordinal()).add(name);
+        }
+        return coordinate;
+    }
+
+    private static long key(int groupBy, int[] point) {
+        long key = 0;
+        for (int axis = 0; axis < AXES; axis++) {
+            long coordinate = (groupBy & (1 << axis)) == 0 ? 0 : point[axis] + 1;
+            key |= coordinate << (axis * BITS);
+        }
+        return key;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int v : values) {
+            if (v == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // builds the cube of the green activity matches, writes it and shows a few queries
+    public static void main(String[] args) throws IOException {
+        String matchesFile = args.length > 0 ? args[0] : "/Users/Panos/Desktop/FYP/green_activity_yield_matches.xlsx";
+        CategoriseMatches regions = new CategoriseMatches();
+        regions.loadRegions("/Users/Panos/Downloads/green_bonds_africa.xlsx", "/Users/Panos/Downloads/green_bonds_central-south_america.xlsx",
+                "/Users/Panos/Downloads/green_bonds_north_america.xlsx", "/Users/Panos/Downloads/green_bonds_europe_EUR.xlsx",
+                "/Users/Panos/Downloads/green_european_non-EUR.xlsx");
+        GreeniumCube cube = build(matchesFile, MatchLayout.GREEN_ACTIVITY, regions.regions);
+        cube.write(new File("greenium.cube"));
+        System.out.println(cube.getCellCount() + " cells, " + cube.getMissing() + " pairs without a value");
+        for (Map.Entry<String, Cell> entry : cube.query().where(RatingScale.Band.PRIME).groupBy(Axis.REGION).entrySet()) {
+            System.out.printf("prime, %s: %d pairs, mean ytm %% diff %.4f, median %.4f%n", entry.getKey(), entry.getValue().getCount(),
+                    entry.getValue().getMean(), entry.getValue().quantile(0.5));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+// Roll-up and slice queries on the greenium cube vs rescanning the pairs, on synthetic pairs spread over the five axes
+// Reports the build rate, the cube's cells and file size, the write, read and roll-up times and the time per query either way
+// usage: GreeniumCubeBenchmark [pairs]
+public class GreeniumCubeBenchmark {
+
+  private static final String[] REGIONS = {"Africa", "Central-South America", "North America", "Europe EUR", "Europe non-EUR"};
+  private static final String[] MATURITIES = {"Short", "Medium", "Long", "Very long"};
+  private static final String[] CURRENCIES = {"EUR", "USD", "GBP", "SEK", "NOK", "CHF", "JPY", "CNY", "AUD", "CAD"};
+  private static final int QUERIES = 10_000;
+
+  public static void main(String[] args) throws IOException {
+    int pairs = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Random random = new Random(24);
+    String[] regions = new String[pairs];
+    String[] ratings = new String[pairs];
+    List<List<String>> activities = new ArrayList<>();
+    String[] maturities = new String[pairs];
+    String[] currencies = new String[pairs];
+    double[] values = new double[pairs];
+    for (int i = 0; i < pairs; i++) {
+      regions[i] = REGIONS[random.nextInt(REGIONS.length)];
+      ratings[i] = RatingScale.symbol(RatingScale.Agency.SNP, Math.min(random.nextInt(12), random.nextInt(23)));
+      List<String> labels = new ArrayList<>();
+      int first = random.nextInt(GreenActivity.COUNT);
+      for (int j = random.nextInt(3); j >= 0; j--) {
+        labels.add(GreenActivity.get((first + 4 * j) % GreenActivity.COUNT).sheetName());
+      }
+      activities.add(random.nextInt(20) == 0 ? Collections.<String>emptyList() : labels);
+      maturities[i] = MATURITIES[random.nextInt(MATURITIES.length)];
+      currencies[i] = CURRENCIES[Math.min(random.nextInt(CURRENCIES.length), random.nextInt(CURRENCIES.length))];
+      values[i] = random.nextInt(100) == 0 ? Double.NaN : random.nextGaussian() * 2 - 0.5;
+    }
+
+    GreeniumCube cube = null;
+    long build = 0;
+    for (int round = 0; round < 3; round++) { // the first rounds warm the JIT up
+      long start = System.nanoTime();
+      cube = new GreeniumCube();
+      for (int i = 0; i < pairs; i++) {
+        cube.add(regions[i], ratings[i], activities.get(i), maturities[i], currencies[i], values[i]);
+      }
+      build = System.nanoTime() - start;
+    }
+    File file = new File("benchmark_greenium.cube");
+    long start = System.nanoTime();
+    cube.write(file);
+    long write = System.nanoTime() - start;
+    start = System.nanoTime();
+    GreeniumCube read = GreeniumCube.read(file);
+    long readTime = System.nanoTime() - start;
+    start = System.nanoTime();
+    int cells = read.getCellCount(); // rolls the base cells up
+    long rollUp = System.nanoTime() - start;
+    System.out.printf("%d pairs: build %.0fms (%.0f pairs/s), %d cells, file %.1fMB, write %.0fms, read %.0fms, roll-up %.0fms%n", pairs,
+        build / 1e6, pairs / (build / 1e9), cells, file.length() / 1048576.0, write / 1e6, readTime / 1e6, rollUp / 1e6);
+
+    // the same queries both ways: a region and a rating band, a currency and an activity, a full roll-up over one axis
+    for (int round = 0; round < 3; round++) {
+      start = System.nanoTime();
+      double cubeSum = 0;
+      long cubeCount = 0;
+      for (int q = 0; q < QUERIES; q++) {
+        GreeniumCube.Cell cell = query(read, q);
+        cubeSum += cell.getSum();
+        cubeCount += cell.getCount();
+      }
+      long cubeTime = System.nanoTime() - start;
+
+      int scans = Math.max(1, QUERIES / 1000); // a rescan per query is slow enough to need fewer of them
+      start = System.nanoTime();
+      double scanSum = 0;
+      long scanCount = 0;
+      for (int q = 0; q < scans; q++) {
+        for (int i = 0; i < pairs; i++) {
+          if (!Double.isNaN(values[i]) && matches(q, regions[i], ratings[i], activities.get(i), maturities[i], currencies[i])) {
+            scanSum += values[i];
+            scanCount++;
+          }
+        }
+      }
+      long scanTime = System.nanoTime() - start;
+
+      double checkSum = 0;
+      long checkCount = 0;
+      for (int q = 0; q < scans; q++) {
+        GreeniumCube.Cell cell = query(read, q);
+        checkSum += cell.getSum();
+        checkCount += cell.getCount();
+      }
+      if (checkCount != scanCount || Math.abs(checkSum - scanSum) > 1e-6 * Math.max(1, Math.abs(scanSum))) {
+        throw new IllegalStateException("the cube and the scan disagree: " + checkCount + " vs " + scanCount);
+      }
+      System.out.printf("round %d: cube %.2f us/query (%d pairs, sum %.1f), rescan %.2f ms/query%n", round,
+          cubeTime / 1e3 / QUERIES, cubeCount, cubeSum, scanTime / 1e6 / scans);
+    }
+    GreeniumCube.Cell all = read.query().get();
+    System.out.printf("all pairs: %d, mean %.4f, median %.4f, p95 %.4f, %d missing%n", all.getCount(), all.getMean(),
+        all.quantile(0.5), all.quantile(0.95), read.getMissing());
+    file.delete();
+  }
+
+  private static GreeniumCube.Cell query(GreeniumCube cube, int q) {
+    switch (q % 3) {
+      case 0:
+        return cube.query().where(GreeniumCube.Axis.REGION, REGIONS[q % REGIONS.length]).where(RatingScale.Band.values()[q % 4]).get();
+      case 1:
+        return cube.query().where(GreeniumCube.Axis.CURRENCY, CURRENCIES[q % CURRENCIES.length])
+            .where(GreeniumCube.Axis.ACTIVITY, GreenActivity.get(q % GreenActivity.COUNT).sheetName()).get();
+      default:
+        return cube.query().where(GreeniumCube.Axis.MATURITY, MATURITIES[q % MATURITIES.length]).get();
+    }
+  }
+
+  private static boolean matches(int q, String region, String rating, List<String> activities, String maturity,
+      String currency) {
+    switch (q % 3) {
+      case 0:
+        return region.equals(REGIONS[q % REGIONS.length])
+            && RatingScale.band(RatingScale.parse(RatingScale.Agency.SNP, rating)) == RatingScale.Band.values()[q % 4];
+      case 1:
+        return currency.equals(CURRENCIES[q % CURRENCIES.length])
+            && activities.contains(GreenActivity.get(q % GreenActivity.COUNT).sheetName());
+      default:
+        return maturity.equals(MATURITIES[q % MATURITIES.length]);
+    }
+  }
+}
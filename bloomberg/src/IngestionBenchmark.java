@@ -0,0 +1,94 @@
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+// Compares peak heap and rows/sec of the DOM (XSSFWorkbook) and streaming (XSSFReader + SAX) loaders on a synthetic conventional bond export
+// usage: IngestionBenchmark [rows] [dom|stream]; run each mode in its own JVM for a clean peak heap number
+public class IngestionBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    String mode = args.length > 1 ? args[1] : "both";
+
+    File input = new File("synthetic_conventional_" + rows + ".xlsx");
+    if (!input.exists()) {
+      writeSyntheticFile(input, rows);
+    }
+
+    if (!mode.equals("stream")) {
+      run("dom", input, rows, false);
+    }
+    if (!mode.equals("dom")) {
+      run("stream", input, rows, true);
+    }
+  }
+
+  private static void run(String name, File input, int rows, boolean stream) {
+    System.gc();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      pool.resetPeakUsage();
+    }
+    long start = System.nanoTime();
+    BloombergMain main = new BloombergMain();
+    if (stream) {
+      main.streamFromExcelConventional(input.getPath());
+    } else {
+      main.readFromExcelConventional(input.getPath());
+    }
+    long elapsed = System.nanoTime() - start;
+    long peak = 0;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    System.out.printf("%-6s rows=%d time=%.2fs rows/sec=%.0f peakHeap=%dMB%n",
+        name, rows, elapsed / 1e9, rows / (elapsed / 1e9), peak / (1024 * 1024));
+  }
+
+  // Writes a file shaped like the FIGI exports: a light blue title row, a dark red processed row, then issuer:id rows
+  private static void writeSyntheticFile(File file, int rows) throws IOException {
+    try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+         FileOutputStream out = new FileOutputStream(file)) {
+      SXSSFSheet sheet = workbook.createSheet("Sheet1");
+      CellStyle title = fill(workbook, StreamingSheetReader.LIGHT_BLUE);
+      CellStyle processed = fill(workbook, StreamingSheetReader.DARK_RED);
+
+      Row header = sheet.createRow(0);
+      header.createCell(0).setCellValue("Issuer Name");
+      header.createCell(1).setCellValue("FIGI");
+      header.getCell(0).setCellStyle(title);
+
+      Row skipped = sheet.createRow(1);
+      skipped.createCell(0).setCellValue("Processed Issuer");
+      skipped.createCell(1).setCellValue("BBG000000000");
+      skipped.getCell(0).setCellStyle(processed);
+
+      for (int i = 0; i < rows; i++) {
+        Row row = sheet.createRow(i + 2);
+        row.createCell(0).setCellValue("Issuer " + (i % 5000));
+        row.createCell(1).setCellValue(String.format("BBG%09d", i));
+      }
+      workbook.write(out);
+      workbook.dispose();
+    }
+  }
+
+  private static CellStyle fill(SXSSFWorkbook workbook, byte[] rgb) {
+    XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
+    style.setFillForegroundColor(new XSSFColor(rgb, null));
+    style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    return style;
+  }
+}
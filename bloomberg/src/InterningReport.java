@@ -0,0 +1,62 @@
+import java.util.List;
+
+// Heap held by the loaded universe with the SymbolTable interning, and with every bond holding its own copy of each string
+// like the loaders produced before (one String per cell)
+// usage: InterningReport <conventional file> [green file]...
+public class InterningReport {
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.out.println("usage: InterningReport <conventional file> [green file]...");
+      return;
+    }
+    BloombergMain universe = new BloombergMain();
+    universe.streamFromExcelConventional(args[0]);
+    if (args.length > 1) {
+      String[] greenFiles = new String[args.length - 1];
+      System.arraycopy(args, 1, greenFiles, 0, greenFiles.length);
+      universe.streamFromExcelGreen(greenFiles);
+    }
+    long interned = usedHeap();
+
+    int bonds = 0;
+    for (BloombergMain.Bond bond : universe.getConventionalBonds().values()) {
+      copyStrings(bond);
+      bonds++;
+    }
+    for (List<BloombergMain.Bond> green : universe.getGreenBondsByIssuer().values()) {
+      for (BloombergMain.Bond bond : green) {
+        copyStrings(bond);
+        bonds++;
+      }
+    }
+    long copied = usedHeap();
+
+    // the universe is still used here, so it is not collected before the second measurement
+    System.out.printf("bonds=%d issuers with conventional bonds=%d%n", bonds, universe.getConventionalBondsByIssuer().size());
+    System.out.printf("distinct issuers=%d currencies=%d ratings=%d years=%d%n", SymbolTable.ISSUERS.size(),
+        SymbolTable.CURRENCIES.size(), SymbolTable.RATINGS.size(), SymbolTable.YEARS.size());
+    System.out.printf("heap with interning %.1fMB, with a string per cell %.1fMB, saved %.1fMB (%.0f bytes per bond)%n",
+        interned / 1048576.0, copied / 1048576.0, (copied - interned) / 1048576.0, (double) (copied - interned) / Math.max(1, bonds));
+  }
+
+  private static void copyStrings(BloombergMain.Bond bond) {
+    bond.issuer = copy(bond.issuer);
+    bond.moodysRating = copy(bond.moodysRating);
+    bond.snpRating = copy(bond.snpRating);
+    bond.ccy = copy(bond.ccy);
+    bond.issuanceYear = copy(bond.issuanceYear);
+  }
+
+  private static String copy(String value) {
+    return value == null ? null : new String(value.toCharArray());
+  }
+
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+}
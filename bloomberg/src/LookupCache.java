@@ -0,0 +1,272 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Persistent cache of Bloomberg lookups keyed by (security id, field id), so reruns do not spend the monthly limit again
+ * Values are appended to a log file, a memory-mapped open addressing table maps the key hash to the record's offset in the log
+ * Every field has a time to live: ratings change, issue dates and currencies do not **/
+public class LookupCache implements Closeable {
+
+    private static final int MAGIC = 0x4C4B5031; // "LKP1"
+    private static final int HEADER_BYTES = 24; // magic, capacity, size, indexed log length
+    private static final int SLOT_BYTES = 16; // key hash, log offset + 1 (0 marks an empty slot)
+    private static final long NEVER = Long.MAX_VALUE;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final int INITIAL_CAPACITY = 1 << 16;
+
+    private final File logFile;
+    private File indexFile;
+    private final Map<String, Long> ttlMillis = new HashMap<>();
+    private final RandomAccessFile log;
+    private RandomAccessFile indexRaf;
+    private MappedByteBuffer index;
+    private int capacity;
+    private int size;
+
+    private int hits = 0;
+    private int misses = 0;
+    private int expired = 0;
+
+    public LookupCache(String directory) throws IOException {
+        File dir = new File(directory);
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("unable to create cache directory " + directory);
+        }
+        this.logFile = new File(dir, "lookups.log");
+        this.log = new RandomAccessFile(logFile, "rw");
+
+        ttlMillis.put(BloombergMain.Bond.MOODYS_RATING, 30 * DAY_MILLIS);
+        ttlMillis.put(BloombergMain.Bond.SNP_RATING, 30 * DAY_MILLIS);
+        ttlMillis.put(BloombergMain.Bond.ISSUER, 365 * DAY_MILLIS); // issuers get renamed or merged now and then
+        ttlMillis.put(BloombergMain.Bond.ISSUE_DATE, NEVER);
+        ttlMillis.put(BloombergMain.Bond.MATURITY, NEVER);
+        ttlMillis.put(BloombergMain.Bond.CURRENCY, NEVER);
+
+        openIndex();
+    }
+
+    /** Overrides the time to live of a field, fields without one never expire **/
+    public void setTimeToLive(String field, long millis) {
+        ttlMillis.put(field, millis);
+    }
+
+    /** Returns the cached value or null if it is not cached or has expired **/
+    public synchronized String get(String securityId, String field) throws IOException {
+        long hash = hash(securityId, field);
+        int slot = slotOf(hash);
+        while (true) {
+            long offset = index.getLong(slotPosition(slot) + 8);
+            if (offset == 0) {
+                misses++;
+                return null;
+            }
+            if (index.getLong(slotPosition(slot)) == hash) {
+                log.seek(offset - 1);
+                long time = log.readLong();
+                String id = log.readUTF();
+                String f = log.readUTF();
+                String value = log.readUTF();
+                if (id.equals(securityId) && f.equals(field)) {
+                    long ttl = ttlMillis.getOrDefault(field, NEVER);
+                    if (ttl != NEVER && System.currentTimeMillis() - time > ttl) {
+                        expired++;
+                        misses++;
+                        return null;
+                    }
+                    hits++;
+                    return value;
+                }
+            }
+            slot = (slot + 1) % capacity;
+        }
+    }
+
+    /** Appends the value to the log and points the index at it, a newer value replaces the older one **/
+    public synchronized void put(String securityId, String field, String value) throws IOException {
+        long offset = log.length();
+        log.seek(offset);
+        log.writeLong(System.currentTimeMillis());
+        log.writeUTF(securityId);
+        log.writeUTF(field);
+        log.writeUTF(value);
+        insert(hash(securityId, field), securityId, field, offset);
+        index.putLong(12, log.length());
+    }
+
+    public int getHits() {
+        return hits;
+    }
+
+    public int getMisses() {
+        return misses;
+    }
+
+    public int getExpired() {
+        return expired;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        index.force();
+        indexRaf.close();
+        log.close();
+    }
+
+    /** Maps the newest index file, rebuilding it from the log if it is missing or corrupt, and indexes what it is missing from the log (e.g. after a crash)
+     * Index files are named after their capacity so growing never has to resize a file that is still mapped (not possible on Windows) **/
+    private void openIndex() throws IOException {
+        File newest = null;
+        int newestCapacity = 0;
+        File[] files = logFile.getParentFile().listFiles((dir, name) -> name.matches("lookups\\.\\d+\\.idx"));
+        if (files != null) {
+            for (File file : files) {
+                int slots = Integer.parseInt(file.getName().split("\\.")[1]);
+                if (slots > newestCapacity) {
+                    newest = file;
+                    newestCapacity = slots;
+                }
+            }
+            for (File file : files) {
+                if (file != newest && !file.delete()) {
+                    System.out.println("unable to delete old cache index " + file);
+                }
+            }
+        }
+        if (newest != null) {
+            mapIndex(newestCapacity);
+            long indexedLength = index.getLong(12);
+            if (index.getInt(0) == MAGIC && index.getInt(4) == capacity && indexedLength <= log.length()) {
+                size = index.getInt(8);
+                replay(indexedLength);
+                return;
+            }
+            clearIndex(); // corrupt or written for a different log, index the whole log again
+        } else {
+            mapIndex(INITIAL_CAPACITY);
+        }
+        replay(0);
+    }
+
+    private void mapIndex(int slots) throws IOException {
+        capacity = slots;
+        indexFile = new File(logFile.getParentFile(), "lookups." + slots + ".idx");
+        boolean fresh = !indexFile.exists();
+        indexRaf = new RandomAccessFile(indexFile, "rw");
+        long bytes = HEADER_BYTES + (long) slots * SLOT_BYTES;
+        if (indexRaf.length() != bytes) {
+            indexRaf.setLength(bytes);
+            fresh = true;
+        }
+        index = indexRaf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        if (fresh) {
+            clearIndex();
+        }
+    }
+
+    private void clearIndex() {
+        for (int i = 0; i < HEADER_BYTES + capacity * SLOT_BYTES; i += 8) {
+            index.putLong(i, 0);
+        }
+        index.putInt(0, MAGIC);
+        index.putInt(4, capacity);
+        size = 0;
+    }
+
+    /** Moves the index into a new file with twice the capacity, the old file is deleted on the next start if it is still mapped **/
+    private void grow() throws IOException {
+        MappedByteBuffer old = index;
+        int oldCapacity = capacity;
+        RandomAccessFile oldRaf = indexRaf;
+        File oldFile = indexFile;
+        mapIndex(oldCapacity * 2);
+        clearIndex();
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            long offset = old.getLong(slotPosition(slot) + 8);
+            if (offset != 0) {
+                long hash = old.getLong(slotPosition(slot));
+                int newSlot = slotOf(hash);
+                while (index.getLong(slotPosition(newSlot) + 8) != 0) {
+                    newSlot = (newSlot + 1) % capacity;
+                }
+                index.putLong(slotPosition(newSlot), hash);
+                index.putLong(slotPosition(newSlot) + 8, offset);
+                size++;
+            }
+        }
+        index.putInt(8, size);
+        index.putLong(12, old.getLong(12));
+        oldRaf.close();
+        oldFile.delete(); // fails while the old mapping is alive on Windows, openIndex cleans it up then
+    }
+
+    /** Indexes the log records from the given offset on, a torn record at the end of the log is cut off **/
+    private void replay(long from) throws IOException {
+        long offset = from;
+        log.seek(offset);
+        while (offset < log.length()) {
+            try {
+                log.readLong();
+                String id = log.readUTF();
+                String field = log.readUTF();
+                log.readUTF();
+                insert(hash(id, field), id, field, offset);
+                offset = log.getFilePointer();
+            } catch (EOFException | UTFDataFormatException e) {
+                log.setLength(offset);
+                break;
+            }
+        }
+        index.putLong(12, offset);
+    }
+
+    private void insert(long hash, String securityId, String field, long offset) throws IOException {
+        if ((size + 1) * 10L > capacity * 7L) { // keep the load factor under 0.7
+            grow();
+        }
+        int slot = slotOf(hash);
+        while (true) {
+            int position = slotPosition(slot);
+            long existing = index.getLong(position + 8);
+            if (existing == 0) {
+                size++;
+                index.putInt(8, size);
+                break;
+            }
+            if (index.getLong(position) == hash && sameKey(existing - 1, securityId, field)) {
+                break; // newer value for the same key, overwrite the pointer
+            }
+            slot = (slot + 1) % capacity;
+        }
+        index.putLong(slotPosition(slot), hash);
+        index.putLong(slotPosition(slot) + 8, offset + 1);
+    }
+
+    private boolean sameKey(long offset, String securityId, String field) throws IOException {
+        long position = log.getFilePointer();
+        log.seek(offset + 8);
+        boolean same = log.readUTF().equals(securityId) && log.readUTF().equals(field);
+        log.seek(position);
+        return same;
+    }
+
+    private int slotOf(long hash) {
+        return (int) Long.remainderUnsigned(hash, capacity);
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_BYTES + slot * SLOT_BYTES;
+    }
+
+    /** 64 bit FNV-1a of "id\0field" **/
+    private static long hash(String securityId, String field) {
+        long hash = 0xcbf29ce484222325L;
+        String key = securityId + '\0' + field;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,49 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+// Runs AsyncLookup against a local fake refdata provider with an injected delay and a limited number of workers,
+// so latency rises once more requests are in flight than the provider can serve
+// usage: LookupLatencyBenchmark [lookups] [delay ms] [provider workers]
+public class LookupLatencyBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    int delayMillis = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    int workers = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+
+    run("sequential (window 1)", lookups, delayMillis, workers, 1, 1, 1);
+    run("fixed window 8", lookups, delayMillis, workers, 8, 8, 8);
+    run("adaptive window 1-64", lookups, delayMillis, workers, 4, 1, 64);
+  }
+
+  private static void run(String name, int lookups, int delayMillis, int workers, int initial, int min, int max) throws Exception {
+    ExecutorService provider = Executors.newFixedThreadPool(workers);
+    AsyncLookup[] lookup = new AsyncLookup[1];
+    // fake provider: answers every lookup after the delay, requests queue up once all workers are busy
+    lookup[0] = new AsyncLookup((correlationId, security, field) -> provider.execute(() -> {
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      lookup[0].complete(correlationId, security + ":" + field);
+    }), initial, min, max);
+
+    long start = System.nanoTime();
+    List<CompletableFuture<String>> futures = new ArrayList<>(lookups);
+    for (int i = 0; i < lookups; i++) {
+      futures.add(lookup[0].lookup(String.format("BBG%09d", i), "DS031"));
+    }
+    CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+    long elapsed = System.nanoTime() - start;
+    provider.shutdown();
+    provider.awaitTermination(1, TimeUnit.SECONDS);
+
+    System.out.printf("%-22s %d lookups in %.2fs (%.0f/s), final window %d, avg latency %.1fms%n",
+        name, lookups, elapsed / 1e9, lookups / (elapsed / 1e9), lookup[0].getWindow(), lookup[0].getAverageLatencyMillis());
+  }
+}
@@ -0,0 +1,165 @@
+import java.util.*;
+
+/** Hash index over the conventional bonds of one issuer, keyed on the packed key of the fields greenAndConventionalEquals compares
+ * Probing it with a green bond returns the same matches as comparing the green bond with every conventional bond,
+ * in the same order, but in O(1) instead of O(C) per green bond
+ * Bonds with missing fields are also indexed by the mask of their present fields, so the ones still compatible with a green bond
+ * (areAllPresentFieldsEqual) are found with one probe per distinct mask instead of a scan **/
+public class MatchIndex {
+
+    private final List<String> ids; // conventional bond ids of the issuer, positions are the order of the issuer's list
+    private final List<BloombergMain.Bond> bonds;
+    private final PackedBonds packer; // shared, so keys of green and conventional bonds use the same dictionaries
+    private final long[] keys; // current key of every position, needed to move a bond after a lookup fills its fields
+    private final Map<Long, List<Integer>> positionsByKey = new HashMap<>();
+    private final Map<Long, Map<Long, List<Integer>>> partialByMask = new HashMap<>(); // present mask -> key -> positions missing fields
+    private final BitSet complete = new BitSet(); // positions with no missing fields
+    private BitSet loaded; // positions complete before matching started, lookups made while matching don't change it
+
+    public MatchIndex(List<String> ids, Map<String, BloombergMain.Bond> conventionalBonds, PackedBonds packer) {
+        this.ids = ids;
+        this.packer = packer;
+        this.bonds = new ArrayList<>(ids.size());
+        this.keys = new long[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            BloombergMain.Bond bond = conventionalBonds.get(ids.get(i));
+            bonds.add(bond);
+            if (bond != null) {
+                keys[i] = packer.key(bond);
+                positionsByKey.computeIfAbsent(keys[i], k -> new ArrayList<>()).add(i); // positions are added in increasing order
+                addPartial(i, bond);
+            }
+        }
+        markLoaded();
+    }
+
+    /** Marks the bonds complete now as the ones loaded before matching, call it after a prefetch
+     * How far a lookup got depends on the order its fields were looked up in, so the bonds completed while matching must not
+     * end the scan or count as local matches, or the pairs would depend on that order **/
+    public void markLoaded() {
+        loaded = (BitSet) complete.clone();
+    }
+
+    /** Returns the positions of the conventional bonds equal to the green bond, in list order **/
+    public List<Integer> probe(BloombergMain.Bond greenBond) {
+        long key = packer.key(greenBond);
+        List<Integer> positions = positionsByKey.getOrDefault(key, Collections.emptyList());
+        if (PackedBonds.isExact(key)) {
+            return positions;
+        }
+        List<Integer> equal = new ArrayList<>(); // the key's rating overflowed, other spellings share it
+        for (int position : positions) {
+            if (greenBond.greenAndConventionalEquals(bonds.get(position))) {
+                equal.add(position);
+            }
+        }
+        return equal;
+    }
+
+    /** Returns the positions of the loaded bonds equal to the green bond, in list order **/
+    public List<Integer> probeLoaded(BloombergMain.Bond greenBond) {
+        List<Integer> positions = new ArrayList<>();
+        for (int position : probe(greenBond)) {
+            if (loaded.get(position)) {
+                positions.add(position);
+            }
+        }
+        return positions;
+    }
+
+    /** Returns the bonds still compatible with the green bond (probeCompatible) and the bonds completed while matching that equal it,
+     * in list order. The same bonds whatever order earlier lookups went in, since a lookup only fills in the bond's real values **/
+    public List<Integer> probeCandidates(BloombergMain.Bond greenBond) {
+        List<Integer> candidates = probeCompatible(greenBond);
+        for (int position : probe(greenBond)) {
+            if (!loaded.get(position)) {
+                candidates.add(position);
+            }
+        }
+        Collections.sort(candidates);
+        return candidates;
+    }
+
+    /** Returns the positions of the bonds with missing fields whose present fields all equal the green bond's, in list order
+     * These are the candidates worth spending lookups on **/
+    public List<Integer> probeCompatible(BloombergMain.Bond greenBond) {
+        long greenKey = packer.key(greenBond);
+        List<Integer> compatible = new ArrayList<>();
+        for (Map.Entry<Long, Map<Long, List<Integer>>> entry : partialByMask.entrySet()) {
+            // the key of a bond with missing fields only has its present fields set, so it is its own masked key
+            List<Integer> positions = entry.getValue().get(greenKey & entry.getKey());
+            if (positions != null) {
+                compatible.addAll(positions);
+            }
+        }
+        if (!PackedBonds.isExact(greenKey)) {
+            compatible.removeIf(position -> !greenBond.areAllPresentFieldsEqual(bonds.get(position)));
+        }
+        Collections.sort(compatible);
+        return compatible;
+    }
+
+    /** True while some bond still has missing fields, i.e. matching may look up and change bonds **/
+    public boolean hasMissingFields() {
+        return !partialByMask.isEmpty();
+    }
+
+    /** Position of the first loaded bond with no missing fields, or the number of bonds if there is none **/
+    public int firstComplete() {
+        int position = loaded.nextSetBit(0);
+        return position == -1 ? ids.size() : position;
+    }
+
+    public String id(int position) {
+        return ids.get(position);
+    }
+
+    public BloombergMain.Bond bond(int position) {
+        return bonds.get(position);
+    }
+
+    /** Must be called after the bond at the given position has been changed (e.g. by a lookup) so it is found under its new key **/
+    public void refresh(int position) {
+        BloombergMain.Bond bond = bonds.get(position);
+        long key = packer.key(bond);
+        if (key == keys[position] && complete.get(position) == bond.getMissingFields().isEmpty()) {
+            return;
+        }
+        if (!complete.get(position)) {
+            long mask = PackedBonds.presentMask(keys[position]);
+            Map<Long, List<Integer>> byKey = partialByMask.get(mask);
+            List<Integer> partial = byKey.get(keys[position]);
+            partial.remove(Integer.valueOf(position));
+            if (partial.isEmpty()) {
+                byKey.remove(keys[position]);
+                if (byKey.isEmpty()) {
+                    partialByMask.remove(mask);
+                }
+            }
+        }
+        addPartial(position, bond);
+        List<Integer> old = positionsByKey.get(keys[position]);
+        old.remove(Integer.valueOf(position));
+        if (old.isEmpty()) {
+            positionsByKey.remove(keys[position]);
+        }
+        keys[position] = key;
+        insertSorted(positionsByKey.computeIfAbsent(key, k -> new ArrayList<>()), position);
+    }
+
+    private void addPartial(int position, BloombergMain.Bond bond) {
+        if (bond.getMissingFields().isEmpty()) {
+            complete.set(position);
+            return;
+        }
+        complete.clear(position);
+        long key = packer.key(bond);
+        insertSorted(partialByMask.computeIfAbsent(PackedBonds.presentMask(key), k -> new HashMap<>())
+                .computeIfAbsent(key, k -> new ArrayList<>()), position);
+    }
+
+    private static void insertSorted(List<Integer> positions, int position) {
+        int insertAt = Collections.binarySearch(positions, position);
+        positions.add(-insertAt - 1, position); // keep the list sorted so probes return matches in list order
+    }
+}
@@ -0,0 +1,169 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** Append-only journal of a matching run, so progress survives a crash without rewriting the xlsx outputs
+ * Records every looked up value as it is set on a bond, and every issuer once it is fully matched with its matches
+ * (green bond position in the issuer's list, conventional bond id); an issuer record is the checkpoint for that issuer
+ * Records are written to the file as they come and forced to disk in batches (every SYNC_RECORDS records or SYNC_MILLIS),
+ * or right away by checkpoint(). A process crash loses nothing, a power loss at most the last unforced batch, which is redone
+ *
+ * Record layout (big endian): length of type + payload, type, payload, CRC32 of type + payload
+ * A torn or corrupt record at the end (a crash mid-write) and everything after it is cut off when the journal is replayed **/
+public class MatchJournal implements Closeable {
+
+    static final int SYNC_RECORDS = 256;
+    static final long SYNC_MILLIS = 1000;
+    private static final byte LOOKUP = 1;
+    private static final byte ISSUER = 2;
+
+    /** Receives the records of a journal being replayed, in the order they were written **/
+    public interface Listener {
+        void lookup(String securityId, String field, String value);
+
+        void issuer(String issuer, int[] greenPositions, String[] conventionalIds);
+    }
+
+    private final File file;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    private int unsynced = 0;
+    private long lastSync = System.currentTimeMillis();
+    private int records = 0;
+
+    /** Opens the journal, resume keeps what an earlier run wrote (call replay before appending), otherwise it starts empty **/
+    public MatchJournal(File file, boolean resume) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (!resume) {
+            channel.truncate(0);
+        }
+        channel.position(channel.size());
+        this.out = new DataOutputStream(Channels.newOutputStream(channel));
+    }
+
+    /** Replays the journal into the listener, cuts off a torn tail and leaves the journal positioned to append after the last good record
+     * Returns the number of records replayed **/
+    public synchronized int replay(Listener listener) throws IOException {
+        channel.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+        long good = 0;
+        int replayed = 0;
+        long size = channel.size();
+        while (good < size) {
+            byte[] record;
+            try {
+                int length = in.readInt();
+                if (length <= 0 || length > size - good - 12) {
+                    break;
+                }
+                record = new byte[length];
+                in.readFully(record);
+                long crc = in.readLong();
+                CRC32 check = new CRC32();
+                check.update(record);
+                if (check.getValue() != crc) {
+                    break;
+                }
+            } catch (EOFException e) {
+                break;
+            }
+            try {
+                apply(record, listener);
+            } catch (IOException | RuntimeException e) { // a record with a good CRC that does not parse was written by another version
+                System.out.println("unreadable journal record at " + good + ", the rest of the journal is redone");
+                break;
+            }
+            good += 4 + record.length + 8;
+            replayed++;
+        }
+        if (good < size) {
+            System.out.println("cut " + (size - good) + " bytes of torn records off the end of " + file);
+            channel.truncate(good);
+        }
+        channel.position(good);
+        records = replayed;
+        return replayed;
+    }
+
+    /** Journals a value set on a bond, whether it came from the API or the lookup cache **/
+    public synchronized void lookup(String securityId, String field, String value) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(LOOKUP);
+        record.writeUTF(securityId);
+        record.writeUTF(field);
+        record.writeUTF(value);
+        append(bytes.toByteArray());
+    }
+
+    /** Journals a fully matched issuer with its matches, the issuer is skipped when the run is resumed **/
+    public synchronized void issuer(String issuer, List<Integer> greenPositions, List<String> conventionalIds) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 24 * greenPositions.size());
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeByte(ISSUER);
+        record.writeUTF(issuer);
+        record.writeInt(greenPositions.size());
+        for (int i = 0; i < greenPositions.size(); i++) {
+            record.writeInt(greenPositions.get(i));
+            record.writeUTF(conventionalIds.get(i));
+        }
+        append(bytes.toByteArray());
+    }
+
+    /** Forces everything written so far to disk, cheap compared to rewriting the outputs **/
+    public synchronized void checkpoint() throws IOException {
+        out.flush();
+        channel.force(false);
+        unsynced = 0;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /** Records written or replayed since the journal was opened **/
+    public synchronized int getRecords() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        checkpoint();
+        channel.close();
+    }
+
+    private void append(byte[] record) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer frame = ByteBuffer.allocate(4 + record.length + 8);
+        frame.putInt(record.length).put(record).putLong(crc.getValue());
+        out.write(frame.array()); // one write per record, so a process crash never leaves a record in a user space buffer
+        records++;
+        unsynced++;
+        if (unsynced >= SYNC_RECORDS || System.currentTimeMillis() - lastSync >= SYNC_MILLIS) {
+            checkpoint();
+        }
+    }
+
+    private static void apply(byte[] bytes, Listener listener) throws IOException {
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(bytes));
+        byte type = record.readByte();
+        if (type == LOOKUP) {
+            listener.lookup(record.readUTF(), record.readUTF(), record.readUTF());
+        } else if (type == ISSUER) {
+            String issuer = record.readUTF();
+            int count = record.readInt();
+            int[] greenPositions = new int[count];
+            String[] conventionalIds = new String[count];
+            for (int i = 0; i < count; i++) {
+                greenPositions[i] = record.readInt();
+                conventionalIds[i] = record.readUTF();
+            }
+            listener.issuer(issuer, greenPositions, conventionalIds);
+        } else {
+            throw new IOException("unknown journal record type " + type);
+        }
+    }
+}
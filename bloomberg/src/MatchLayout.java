@@ -0,0 +1,50 @@
+/** Where a match file keeps the columns the yield step adds after the bonds, as indices among those extra columns (MatchReader.number)
+ * The files differ: the yield matches carry the green bond's ytmBid and the issuer rating, the green activity matches the ytm % diff
+ * and the use of proceeds, so a tool names the layout of the file it reads instead of hard coding column numbers
+ * MatchReader checks the first pair against the layout, a file read with the wrong one fails there instead of mixing up columns **/
+public enum MatchLayout {
+
+    /** yield_matches.xlsx: the green ytmBid in column 10 and the issuer rating in column 15 of the string layout **/
+    YIELD_MATCHES("yield matches", 8, -1, 13),
+    /** green_activity_yield_matches.xlsx: the ytm % diff in column 8 and the use of proceeds in column 13 of the string layout **/
+    GREEN_ACTIVITY("green activity matches", 6, 11, -1);
+
+    /** The extra columns a tool may need, VALUE is the number categorised and written next to the two bonds **/
+    public enum Column {
+        VALUE, ACTIVITY, ISSUER_RATING
+    }
+
+    private final String description;
+    private final int[] columns; // by Column ordinal, -1 if the file has no such column
+
+    MatchLayout(String description, int value, int activity, int issuerRating) {
+        this.description = description;
+        this.columns = new int[]{value, activity, issuerRating};
+    }
+
+    public boolean has(Column column) {
+        return columns[column.ordinal()] >= 0;
+    }
+
+    /** Index of the column among the extra columns, throws IllegalArgumentException if the file has no such column **/
+    public int column(Column column) {
+        if (!has(column)) {
+            throw new IllegalArgumentException(description + " have no " + column + " column");
+        }
+        return columns[column.ordinal()];
+    }
+
+    /** Highest extra column index the file has **/
+    int lastColumn() {
+        int last = -1;
+        for (int column : columns) {
+            last = Math.max(last, column);
+        }
+        return last;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+}
@@ -0,0 +1,211 @@
+import javafx.util.Pair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.*;
+
+// Differential run of the lookup loop: the same universe matched with the fields looked up in different orders must give the same pairs
+// The conventional bonds miss random fields, their real values come from a lookup cache so nothing goes to the API
+// Checks the two issuer case where the order decided whether a mismatching candidate became complete and ended later scans,
+// then a random universe under the fixed getMissingFields order, its reverse and the adaptive FieldSelectivity order
+// usage: MatchOrderHarness [issuers] [conventional bonds per issuer] [green bonds per issuer]
+public class MatchOrderHarness {
+
+  private static final String[] MOODYS = {"A1", "A2"};
+  private static final String[] SNP = {"A+", "A"};
+  private static final String[] CCY = {"EUR", "USD"};
+
+  public static void main(String[] args) throws IOException {
+    int issuers = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+    int perIssuer = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+    int greenPerIssuer = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+    File dir = Files.createTempDirectory("match_order").toFile();
+    try (LookupCache cache = new LookupCache(dir.getPath())) {
+      twoProfiles(cache);
+      Universe universe = new Universe(issuers, perIssuer, greenPerIssuer, cache);
+      Map<String, FieldSelectivity> orders = new LinkedHashMap<>();
+      orders.put("fixed", new FixedOrder(false));
+      orders.put("reversed", new FixedOrder(true));
+      orders.put("adaptive", new FieldSelectivity());
+      List<String> reference = null;
+      for (Map.Entry<String, FieldSelectivity> order : orders.entrySet()) {
+        int hits = cache.getHits();
+        BloombergMain main = universe.load(cache);
+        main.setFieldStats(order.getValue());
+        List<String> pairs = match(main);
+        if (reference == null) {
+          reference = pairs;
+        }
+        check(pairs.equals(reference), order.getKey() + " order matched " + pairs.size() + " pairs, the fixed order " + reference.size());
+        System.out.printf("%s order: %d pairs, %d lookups%n", order.getKey(), pairs.size(), cache.getHits() - hits);
+      }
+    } finally {
+      for (File file : Objects.requireNonNull(dir.listFiles())) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  // issuer I: green G1 and G2, conventional B0 equal to G1 but for the S&P rating and B1 equal to G2, both missing their ratings
+  // looked up with the S&P rating last B0 gets complete while matching G1, with it first B0 stays partial; G2 has to match B1 either way
+  private static void twoProfiles(LookupCache cache) throws IOException {
+    List<String> reference = null;
+    for (boolean snpFirst : new boolean[]{false, true}) {
+      BloombergMain main = new BloombergMain();
+      addGreen(main, new BloombergMain.Bond("I", "2029-05-20", "A1", "A+", "EUR", "2019-05-20", true));
+      addGreen(main, new BloombergMain.Bond("I", "2029-05-20", "A2", "A", "EUR", "2019-05-20", true));
+      addConventional(main, cache, "BBG000000001", new BloombergMain.Bond("I", "2029-05-20", "A1", "A", "EUR", "2019-05-20", false), 0b00011);
+      addConventional(main, cache, "BBG000000002", new BloombergMain.Bond("I", "2029-05-20", "A2", "A", "EUR", "2019-05-20", false), 0b00011);
+      FieldSelectivity stats = new FieldSelectivity();
+      if (snpFirst) {
+        for (int i = 0; i < 20; i++) {
+          stats.record("other issuer", BloombergMain.Bond.SNP_RATING, true);
+        }
+      }
+      main.setCache(cache);
+      main.setFieldStats(stats);
+      List<String> pairs = match(main);
+      check(pairs.size() == 1, (snpFirst ? "S&P first" : "fixed order") + " matched " + pairs.size() + " pairs instead of 1");
+      if (reference == null) {
+        reference = pairs;
+      }
+      check(pairs.equals(reference), "the S&P first order matched other pairs than the fixed order");
+    }
+    System.out.println("two profiles: G2 matches B1 whether B0's S&P rating is looked up first or last");
+  }
+
+  // matches the universe and returns its pairs as green bond number:conventional id, comparable between loads of the same universe
+  static List<String> match(BloombergMain main) {
+    PrintStream console = System.out;
+    System.setOut(new PrintStream(new ByteArrayOutputStream())); // progress output
+    try {
+      check(main.matchAll(), "a lookup missed the cache");
+    } finally {
+      System.setOut(console);
+    }
+    Map<BloombergMain.Bond, String> ids = new IdentityHashMap<>();
+    for (Map.Entry<String, BloombergMain.Bond> entry : main.getConventionalBonds().entrySet()) {
+      ids.put(entry.getValue(), entry.getKey());
+    }
+    Map<BloombergMain.Bond, Integer> greens = new IdentityHashMap<>();
+    for (List<BloombergMain.Bond> bonds : main.getGreenBondsByIssuer().values()) {
+      for (BloombergMain.Bond bond : bonds) {
+        greens.put(bond, greens.size());
+      }
+    }
+    List<String> pairs = new ArrayList<>();
+    for (Pair<BloombergMain.Bond, BloombergMain.Bond> pair : main.getMatchedBonds()) {
+      pairs.add(greens.get(pair.getKey()) + ":" + ids.get(pair.getValue()));
+    }
+    return pairs;
+  }
+
+  private static void addGreen(BloombergMain main, BloombergMain.Bond bond) {
+    main.getGreenBondsByIssuer().computeIfAbsent(bond.issuer, k -> new ArrayList<>()).add(bond);
+  }
+
+  // the fields whose bit is set in missing are left out of the bond and put in the cache, the bits from the left are in
+  // getMissingFields order: issue date, maturity, currency, Moody's, S&P. The issuer is always known
+  private static void addConventional(BloombergMain main, LookupCache cache, String id, BloombergMain.Bond full, int missing)
+      throws IOException {
+    String[][] fields = {
+        {BloombergMain.Bond.ISSUE_DATE, full.issuanceDate.toString()},
+        {BloombergMain.Bond.MATURITY, full.maturityDate.toString()},
+        {BloombergMain.Bond.CURRENCY, full.ccy},
+        {BloombergMain.Bond.MOODYS_RATING, full.moodysRating},
+        {BloombergMain.Bond.SNP_RATING, full.snpRating}};
+    BloombergMain.Bond bond = new BloombergMain.Bond(full.issuer, false);
+    for (int i = 0; i < fields.length; i++) {
+      if ((missing & (0b10000 >> i)) != 0) {
+        cache.put(id, fields[i][0], fields[i][1]);
+      } else {
+        bond.setField(fields[i][0], fields[i][1]);
+      }
+    }
+    main.getConventionalBonds().put(id, bond);
+    main.getConventionalBondsByIssuer().computeIfAbsent(full.issuer, k -> new ArrayList<>()).add(id);
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  // looks the fields up in getMissingFields order or its reverse, whatever the statistics say
+  // the issue date stays before the maturity like in every FieldSelectivity order, the maturity bucket is computed from it
+  static class FixedOrder extends FieldSelectivity {
+    private final boolean reversed;
+
+    FixedOrder(boolean reversed) {
+      this.reversed = reversed;
+    }
+
+    @Override
+    public synchronized List<String> order(String segment, List<String> missingFields) {
+      List<String> ordered = new ArrayList<>(missingFields);
+      if (reversed) {
+        Collections.reverse(ordered);
+        int issueDate = ordered.indexOf(BloombergMain.Bond.ISSUE_DATE);
+        int maturity = ordered.indexOf(BloombergMain.Bond.MATURITY);
+        if (issueDate != -1 && maturity != -1) {
+          Collections.swap(ordered, issueDate, maturity);
+        }
+      }
+      return ordered;
+    }
+
+    @Override
+    public FieldSelectivity copy() {
+      return this; // no statistics, the pool tasks can share it
+    }
+  }
+
+  // few distinct values, so many candidates stay compatible and get looked up; the real values are cached once,
+  // load builds fresh bonds from the same seed since matching fills in their fields
+  static class Universe {
+    private final int issuers;
+    private final int perIssuer;
+    private final int greenPerIssuer;
+
+    Universe(int issuers, int perIssuer, int greenPerIssuer, LookupCache cache) throws IOException {
+      this.issuers = issuers;
+      this.perIssuer = perIssuer;
+      this.greenPerIssuer = greenPerIssuer;
+      load(cache);
+    }
+
+    BloombergMain load(LookupCache cache) throws IOException {
+      Random random = new Random(42);
+      BloombergMain main = new BloombergMain();
+      for (int i = 0; i < issuers; i++) {
+        String issuer = "Issuer " + i;
+        for (int c = 0; c < perIssuer; c++) {
+          int missing = 0;
+          for (int bit = 1; bit <= 0b10000; bit <<= 1) {
+            if (random.nextInt(10) < 4) {
+              missing |= bit;
+            }
+          }
+          addConventional(main, cache, String.format("BBG%04d%05d", i, c), randomBond(random, issuer, false), missing);
+        }
+        for (int g = 0; g < greenPerIssuer; g++) {
+          addGreen(main, randomBond(random, issuer, true));
+        }
+      }
+      main.setCache(cache);
+      return main;
+    }
+  }
+
+  private static BloombergMain.Bond randomBond(Random random, String issuer, boolean green) {
+    String issuance = (2019 + random.nextInt(2)) + "-05-20";
+    String maturity = (2029 + random.nextInt(2) * 10) + "-05-20";
+    return new BloombergMain.Bond(issuer, maturity, MOODYS[random.nextInt(2)], SNP[random.nextInt(2)], CCY[random.nextInt(2)],
+        issuance, green);
+  }
+}
@@ -0,0 +1,286 @@
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Color;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/** Reads the matched pairs of a match workbook field by field, for the post-processing tools
+ * Reads the typed layout (MatchTable) when the workbook has it filled in by the yield step, otherwise the Bond{...} strings through a
+ * BondScanner, so the tools work on both without any regex. Title (light blue), skipped (dark red) and header rows are passed over
+ * Fields are BondScanner constants and sides MatchTable.GREEN / CONVENTIONAL; values are the text toString would have written
+ * ("null" for a missing value), dates are epoch days. The columns the yield step adds after the bonds are read by their index
+ * among those extra columns, which is the same in both layouts, or through the MatchLayout of the file **/
+public class MatchReader implements Closeable {
+
+    private static final byte[] LIGHT_BLUE = new byte[]{91, -101, -43};
+    private static final byte[] DARK_RED = new byte[]{-64, 0, 0};
+    private static final int LEGACY_BOND_COLUMNS = 2; // one Bond{...} string per side
+
+    private final XSSFWorkbook workbook;
+    private final Iterator<Row> rows;
+    private final boolean typed;
+    private final MatchLayout layout; // null if the extra columns are only read by index
+    private Row row;
+
+    // legacy layout, scanned once per row
+    private final BondScanner[] scanners = {new BondScanner(), new BondScanner()};
+
+    // typed layout, read once per row
+    private final String[][] texts = new String[2][BondScanner.FIELD_COUNT];
+    private final int[][] days = new int[2][2]; // maturity day, issuance day
+    private final double[][] yields = new double[2][2]; // ytmBid, ytmAsk
+
+    public MatchReader(String matchesFile) throws IOException {
+        this(new FileInputStream(matchesFile), null);
+    }
+
+    /** Reader of a file with the given layout of extra columns, checked on the first pair **/
+    public MatchReader(String matchesFile, MatchLayout layout) throws IOException {
+        this(new FileInputStream(matchesFile), layout);
+    }
+
+    public MatchReader(InputStream in) throws IOException {
+        this(in, null);
+    }
+
+    public MatchReader(InputStream in, MatchLayout layout) throws IOException {
+        this.layout = layout;
+        try {
+            workbook = new XSSFWorkbook(in);
+        } finally {
+            in.close();
+        }
+        XSSFSheet sheet = workbook.getSheet(MatchTable.SHEET);
+        if (sheet == null || !isFilledIn(sheet, layout)) {
+            sheet = workbook.getSheetAt(0);
+        }
+        Row first = sheet.getRow(sheet.getFirstRowNum());
+        Cell firstCell = first == null ? null : first.getCell(0);
+        typed = firstCell != null && firstCell.getCellType() == CellType.STRING
+                && firstCell.getStringCellValue().equals(MatchTable.header(MatchTable.GREEN, BondScanner.ISSUER));
+        rows = sheet.iterator();
+        if (typed) {
+            rows.next(); // header
+        }
+    }
+
+    /** True if the workbook has the typed layout, false for the Bond{...} strings **/
+    public boolean isTyped() {
+        return typed;
+    }
+
+    /** Moves to the next matched pair, returns false when there are no more
+     * Throws IllegalArgumentException if a Bond{...} string does not have the toString layout, or if the first pair does not have
+     * the reader's MatchLayout **/
+    public boolean next() {
+        while (rows.hasNext()) {
+            Row candidate = rows.next();
+            if (!typed && candidate.getFirstCellNum() != 0) { // avoid weird excel error
+                return false;
+            }
+            if (typed && candidate.getLastCellNum() <= 0) {
+                continue;
+            }
+            if (isTitleOrSkipped(candidate.getCell(0))) {
+                continue;
+            }
+            if (!typed && !isBond(candidate.getCell(0))) { // header written by the yield step
+                continue;
+            }
+            if (row == null && layout != null) {
+                checkLayout(candidate);
+            }
+            row = candidate;
+            for (int side = MatchTable.GREEN; side <= MatchTable.CONVENTIONAL; side++) {
+                if (typed) {
+                    readBond(side);
+                } else {
+                    scanners[side].scan(row.getCell(side).getStringCellValue());
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /** Row of the current pair in the sheet **/
+    public int rowNum() {
+        return row.getRowNum();
+    }
+
+    public String text(int side, int field) {
+        return typed ? texts[side][field] : scanners[side].text(field);
+    }
+
+    public boolean equals(int side, int field, String value) {
+        return typed ? texts[side][field].equals(value) : scanners[side].equals(field, value);
+    }
+
+    /** RatingScale ordinal of BondScanner.MOODYS_RATING or SNP_RATING, RatingScale.UNKNOWN if missing **/
+    public int rating(int side, int field, RatingScale.Agency agency) {
+        return typed ? RatingScale.parse(agency, texts[side][field]) : scanners[side].rating(field, agency);
+    }
+
+    /** Epoch day, DateCodec.NOT_AVAILABLE if there is no maturity date **/
+    public int maturityDay(int side) {
+        return typed ? days[side][0] : scanners[side].maturityDay();
+    }
+
+    public int issuanceDay(int side) {
+        return typed ? days[side][1] : scanners[side].issuanceDay();
+    }
+
+    public boolean isGreen(int side) {
+        return typed ? texts[side][BondScanner.GREEN].equals("true") : scanners[side].isGreen();
+    }
+
+    /** NaN if the yield step has not filled it in **/
+    public double ytmBid(int side) {
+        return typed ? yields[side][0] : scanners[side].ytmBid();
+    }
+
+    public double ytmAsk(int side) {
+        return typed ? yields[side][1] : scanners[side].ytmAsk();
+    }
+
+    /** The bond as a Bond{...} string, what the tools copy into their own outputs **/
+    public String record(int side) {
+        if (!typed) {
+            return row.getCell(side).getStringCellValue();
+        }
+        return BondScanner.format(texts[side]);
+    }
+
+    /** Numeric value of an extra column, index 0 is the first column after the bonds **/
+    public double number(int extra) {
+        return row.getCell(extraColumn(extra)).getNumericCellValue();
+    }
+
+    /** True if the current row has a value in the extra column (older match files lack the columns added later) **/
+    public boolean has(int extra) {
+        Cell cell = row.getCell(extraColumn(extra));
+        return cell != null && cell.getCellType() != CellType.BLANK;
+    }
+
+    /** Text value of an extra column **/
+    public String string(int extra) {
+        return row.getCell(extraColumn(extra)).getStringCellValue();
+    }
+
+    /** The layout's VALUE column, NaN if blank **/
+    public double value() {
+        Cell cell = row.getCell(extraColumn(layout().column(MatchLayout.Column.VALUE)));
+        return cell == null || cell.getCellType() == CellType.BLANK ? Double.NaN : cell.getNumericCellValue();
+    }
+
+    /** Text of one of the layout's columns, throws IllegalArgumentException if the file has no such column **/
+    public String string(MatchLayout.Column column) {
+        return string(layout().column(column));
+    }
+
+    @Override
+    public void close() throws IOException {
+        workbook.close();
+    }
+
+    private MatchLayout layout() {
+        if (layout == null) {
+            throw new IllegalStateException("no MatchLayout given, the extra columns can only be read by index");
+        }
+        return layout;
+    }
+
+    /** The VALUE column has to be a number (or blank), the others text: a file read with the wrong layout has a number,
+     * a text or nothing where the layout expects the other **/
+    private void checkLayout(Row first) {
+        for (MatchLayout.Column column : MatchLayout.Column.values()) {
+            if (!layout.has(column)) {
+                continue;
+            }
+            Cell cell = first.getCell(extraColumn(layout.column(column)));
+            CellType type = cell == null ? CellType.BLANK : cell.getCellType();
+            boolean fits = column == MatchLayout.Column.VALUE ? type == CellType.NUMERIC || type == CellType.BLANK : type == CellType.STRING;
+            if (!fits) {
+                throw new IllegalArgumentException("column " + extraColumn(layout.column(column)) + " of the first pair is " + type
+                        + ", " + layout + " have their " + column + " there");
+            }
+        }
+    }
+
+    private int extraColumn(int extra) {
+        return (typed ? MatchTable.BOND_COLUMNS : LEGACY_BOND_COLUMNS) + extra;
+    }
+
+    private void readBond(int side) {
+        String[] text = texts[side];
+        for (int field = 0; field < BondScanner.FIELD_COUNT; field++) {
+            Cell cell = row.getCell(MatchTable.column(side, field));
+            if (cell == null || cell.getCellType() == CellType.BLANK) {
+                text[field] = field == BondScanner.ISIN ? "N/A" : "null";
+            } else if (field == BondScanner.MATURITY_DATE || field == BondScanner.ISSUANCE_DATE) {
+                text[field] = cell.getLocalDateTimeCellValue().toLocalDate().toString();
+            } else if (cell.getCellType() == CellType.NUMERIC) {
+                double value = cell.getNumericCellValue();
+                text[field] = field == BondScanner.ISSUANCE_YEAR ? String.valueOf((long) value) : String.valueOf(value);
+            } else if (cell.getCellType() == CellType.BOOLEAN) {
+                text[field] = String.valueOf(cell.getBooleanCellValue());
+            } else {
+                text[field] = cell.getStringCellValue();
+            }
+        }
+        days[side][0] = day(row.getCell(MatchTable.column(side, BondScanner.MATURITY_DATE)));
+        days[side][1] = day(row.getCell(MatchTable.column(side, BondScanner.ISSUANCE_DATE)));
+        yields[side][0] = yieldValue(row.getCell(MatchTable.column(side, BondScanner.YTM_BID)));
+        yields[side][1] = yieldValue(row.getCell(MatchTable.column(side, BondScanner.YTM_ASK)));
+    }
+
+    /** The typed sheet is written with blank yields and no extra columns, until the yield step has filled it in the Bond{...}
+     * strings of the first sheet are the ones with the yields: the first pair with a green ytmBid has to reach the last extra column
+     * of the layout (or have at least one extra column without a layout) **/
+    private static boolean isFilledIn(XSSFSheet sheet, MatchLayout layout) {
+        int extraColumns = layout == null ? 1 : layout.lastColumn() + 1;
+        int ytmBid = MatchTable.column(MatchTable.GREEN, BondScanner.YTM_BID);
+        for (Row candidate : sheet) {
+            Cell cell = candidate.getCell(ytmBid);
+            if (cell != null && cell.getCellType() == CellType.NUMERIC) {
+                return candidate.getLastCellNum() >= MatchTable.BOND_COLUMNS + extraColumns;
+            }
+        }
+        return false;
+    }
+
+    private static int day(Cell cell) {
+        if (cell == null || cell.getCellType() == CellType.BLANK) {
+            return DateCodec.NOT_AVAILABLE;
+        }
+        return (int) cell.getLocalDateTimeCellValue().toLocalDate().toEpochDay();
+    }
+
+    private static double yieldValue(Cell cell) {
+        if (cell == null || cell.getCellType() != CellType.NUMERIC) {
+            return Double.NaN;
+        }
+        return cell.getNumericCellValue();
+    }
+
+    private static boolean isBond(Cell cell) {
+        return cell != null && cell.getCellType() == CellType.STRING && cell.getStringCellValue().startsWith("Bond{");
+    }
+
+    private static boolean isTitleOrSkipped(Cell cell) {
+        if (cell == null) {
+            return false;
+        }
+        Color color = cell.getCellStyle().getFillForegroundColorColor();
+        return color != null && (Arrays.equals(((XSSFColor) color).getRGB(), LIGHT_BLUE) || Arrays.equals(((XSSFColor) color).getRGB(), DARK_RED));
+    }
+}
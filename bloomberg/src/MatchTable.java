@@ -0,0 +1,82 @@
+import javafx.util.Pair;
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Workbook;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+/** Typed, columnar layout of the matched pairs: one column per Bond.toString field for the green bond, then the same for the
+ * conventional bond, so the post-processing reads issuer, ratings and dates straight from the cells instead of re-parsing strings
+ * Dates are date cells, the issuance year and the yields are numbers, the id column holds the ISIN/FIGI the bond was matched under
+ * The yields are left blank, the yield step fills them in; any columns it adds go after the bond columns **/
+public class MatchTable {
+
+    public static final String SHEET = "Typed Matches";
+    public static final int GREEN = 0;
+    public static final int CONVENTIONAL = 1;
+    public static final int BOND_COLUMNS = 2 * BondScanner.FIELD_COUNT; // extra columns start here
+    private static final String[] SIDES = {"green ", "conventional "};
+
+    /** Column of a field (BondScanner constant) of one side of the pair **/
+    public static int column(int side, int field) {
+        return side * BondScanner.FIELD_COUNT + field;
+    }
+
+    /** Header of a column, e.g. "green issuer" or "conventional maturityDate" **/
+    public static String header(int side, int field) {
+        return SIDES[side] + BondScanner.name(field);
+    }
+
+    /** Adds the typed sheet with a header row and one row per pair, ids are the ISIN/FIGI of the matched conventional bonds **/
+    public static void write(ExcelOutput output, List<Pair<BloombergMain.Bond, BloombergMain.Bond>> pairs, Map<BloombergMain.Bond, String> ids) {
+        Workbook workbook = output.getWorkbook();
+        CellStyle dateStyle = workbook.createCellStyle();
+        dateStyle.setDataFormat(workbook.getCreationHelper().createDataFormat().getFormat("yyyy-mm-dd"));
+        Row header = output.nextRow(SHEET);
+        for (int side = GREEN; side <= CONVENTIONAL; side++) {
+            for (int field = 0; field < BondScanner.FIELD_COUNT; field++) {
+                header.createCell(column(side, field)).setCellValue(header(side, field));
+            }
+        }
+        for (Pair<BloombergMain.Bond, BloombergMain.Bond> pair : pairs) {
+            Row row = output.nextRow(SHEET);
+            writeBond(row, GREEN, pair.getKey(), ids.get(pair.getKey()), dateStyle);
+            writeBond(row, CONVENTIONAL, pair.getValue(), ids.get(pair.getValue()), dateStyle);
+        }
+    }
+
+    private static void writeBond(Row row, int side, BloombergMain.Bond bond, String id, CellStyle dateStyle) {
+        text(row, side, BondScanner.ISSUER, bond.issuer);
+        text(row, side, BondScanner.MOODYS_RATING, bond.moodysRating);
+        text(row, side, BondScanner.SNP_RATING, bond.snpRating);
+        text(row, side, BondScanner.MATURITY, bond.maturity == null ? null : bond.maturity.name());
+        date(row, side, BondScanner.MATURITY_DATE, bond.maturityDate, dateStyle);
+        text(row, side, BondScanner.ISSUANCE_TERM, bond.issuanceTerm == null ? null : bond.issuanceTerm.name());
+        if (bond.issuanceYear != null) {
+            row.createCell(column(side, BondScanner.ISSUANCE_YEAR)).setCellValue(Integer.parseInt(bond.issuanceYear));
+        }
+        date(row, side, BondScanner.ISSUANCE_DATE, bond.issuanceDate, dateStyle);
+        text(row, side, BondScanner.CCY, bond.ccy);
+        row.createCell(column(side, BondScanner.GREEN)).setCellValue(bond.green);
+        text(row, side, BondScanner.ISIN, id);
+        // ytmBid and ytmAsk stay blank until the yield step
+    }
+
+    /** Missing values are left blank, the reader reads a blank cell as toString's "null" **/
+    private static void text(Row row, int side, int field, String value) {
+        if (value != null) {
+            row.createCell(column(side, field)).setCellValue(value);
+        }
+    }
+
+    private static void date(Row row, int side, int field, LocalDate value, CellStyle dateStyle) {
+        if (value != null) {
+            Cell cell = row.createCell(column(side, field));
+            cell.setCellValue(value);
+            cell.setCellStyle(dateStyle);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+import java.util.*;
+
+// Scale check of the local matching step: nested loop over greenAndConventionalEquals vs the MatchIndex hash join
+// usage: MatchingBenchmark [issuers] [conventional bonds per issuer] [green bonds per issuer]
+public class MatchingBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "NR"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "NR"};
+  private static final String[] CCY = {"EUR", "USD", "GBP", "JPY"};
+
+  public static void main(String[] args) {
+    int issuers = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+    int conventionalPerIssuer = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+    int greenPerIssuer = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+
+    Random random = new Random(42);
+    Map<String, BloombergMain.Bond> conventionalBonds = new HashMap<>();
+    Map<String, List<String>> conventionalByIssuer = new HashMap<>();
+    Map<String, List<BloombergMain.Bond>> greenByIssuer = new HashMap<>();
+    for (int i = 0; i < issuers; i++) {
+      String issuer = "Issuer " + i;
+      List<String> ids = new ArrayList<>();
+      for (int j = 0; j < conventionalPerIssuer; j++) {
+        String id = String.format("BBG%04d%07d", i, j);
+        ids.add(id);
+        conventionalBonds.put(id, randomBond(random, issuer, false));
+      }
+      conventionalByIssuer.put(issuer, ids);
+      List<BloombergMain.Bond> green = new ArrayList<>();
+      for (int j = 0; j < greenPerIssuer; j++) {
+        green.add(randomBond(random, issuer, true));
+      }
+      greenByIssuer.put(issuer, green);
+    }
+
+    long start = System.nanoTime();
+    List<String> nested = new ArrayList<>();
+    for (String issuer : greenByIssuer.keySet()) {
+      List<String> ids = conventionalByIssuer.get(issuer);
+      for (BloombergMain.Bond green : greenByIssuer.get(issuer)) {
+        for (String id : ids) {
+          if (green.greenAndConventionalEquals(conventionalBonds.get(id))) {
+            nested.add(System.identityHashCode(green) + ":" + id);
+          }
+        }
+      }
+    }
+    long nestedTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    List<String> indexed = new ArrayList<>();
+    PackedBonds packer = new PackedBonds();
+    for (String issuer : greenByIssuer.keySet()) {
+      MatchIndex index = new MatchIndex(conventionalByIssuer.get(issuer), conventionalBonds, packer);
+      for (BloombergMain.Bond green : greenByIssuer.get(issuer)) {
+        for (int position : index.probe(green)) {
+          indexed.add(System.identityHashCode(green) + ":" + index.id(position));
+        }
+      }
+    }
+    long indexedTime = System.nanoTime() - start;
+
+    System.out.printf("issuers=%d conventional/issuer=%d green/issuer=%d pairs=%d same=%b%n",
+        issuers, conventionalPerIssuer, greenPerIssuer, indexed.size(), nested.equals(indexed));
+    System.out.printf("nested loop %.1fms, hash join %.1fms (incl. index build), speedup %.1fx%n",
+        nestedTime / 1e6, indexedTime / 1e6, (double) nestedTime / indexedTime);
+  }
+
+  // dates are in the yyyy-MM-dd format the API returns
+  private static BloombergMain.Bond randomBond(Random random, String issuer, boolean green) {
+    int rating = random.nextInt(MOODYS.length);
+    int year = 2015 + random.nextInt(8);
+    String monthDay = String.format("-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+    String issuance = year + monthDay;
+    String maturity = (year + 2 + random.nextInt(30)) + monthDay;
+    return new BloombergMain.Bond(issuer, maturity, MOODYS[rating], SNP[rating], CCY[random.nextInt(CCY.length)], issuance, green);
+  }
+}
@@ -0,0 +1,134 @@
+import java.util.*;
+
+// Equality paths of Bond vs the packed key: greenAndConventionalEquals vs key compare, areAllPresentFieldsEqual vs masked compare
+// Then checks that more rating spellings than the key has codes for still match like the Bond comparison, instead of failing
+// usage: PackedBondBenchmark [bonds] [rounds]
+public class PackedBondBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "NR"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "NR"};
+  private static final String[] CCY = {"EUR", "USD", "GBP", "JPY"};
+
+  public static void main(String[] args) {
+    int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+    Random random = new Random(42);
+    BloombergMain.Bond[] bonds = new BloombergMain.Bond[count];
+    PackedBonds packer = new PackedBonds();
+    long[] keys = new long[count];
+    for (int i = 0; i < count; i++) {
+      bonds[i] = randomBond(random, i);
+      keys[i] = packer.key(bonds[i]);
+    }
+
+    // pairs of (green, conventional) rows, the conventional side has some fields missing half of the time
+    int[] green = new int[count];
+    int[] conventional = new int[count];
+    for (int i = 0; i < count; i++) {
+      green[i] = random.nextInt(count);
+      conventional[i] = random.nextInt(count);
+    }
+    BloombergMain.Bond[] partial = new BloombergMain.Bond[count];
+    long[] partialKeys = new long[count];
+    for (int i = 0; i < count; i++) {
+      partial[i] = random.nextBoolean() ? bonds[conventional[i]] : withoutLookedUpFields(bonds[conventional[i]]);
+      partialKeys[i] = packer.key(partial[i]);
+    }
+
+    for (int round = 1; round <= rounds; round++) { // the first rounds are warm up
+      long start = System.nanoTime();
+      int objectEquals = 0;
+      for (int i = 0; i < count; i++) {
+        if (bonds[green[i]].greenAndConventionalEquals(bonds[conventional[i]])) objectEquals++;
+      }
+      long objectEqualsTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int keyEquals = 0;
+      for (int i = 0; i < count; i++) {
+        if (keys[green[i]] == keys[conventional[i]]) keyEquals++;
+      }
+      long keyEqualsTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int objectPresent = 0;
+      for (int i = 0; i < count; i++) {
+        if (bonds[green[i]].areAllPresentFieldsEqual(partial[i])) objectPresent++;
+      }
+      long objectPresentTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int maskedPresent = 0;
+      for (int i = 0; i < count; i++) {
+        if (PackedBonds.presentFieldsEqual(keys[green[i]], partialKeys[i])) maskedPresent++;
+      }
+      long maskedPresentTime = System.nanoTime() - start;
+
+      System.out.printf("round %d: equals %.2f vs %.2f ns/op (same=%b), present fields %.2f vs %.2f ns/op (same=%b)%n", round,
+          (double) objectEqualsTime / count, (double) keyEqualsTime / count, objectEquals == keyEquals,
+          (double) objectPresentTime / count, (double) maskedPresentTime / count, objectPresent == maskedPresent);
+    }
+    overflow(random);
+  }
+
+  // 2000 conventional bonds with 1000 Moody's spellings, far more than the rating codes, matched through MatchIndex and by comparing
+  // every pair; the spellings past the codes share one, so those keys are checked against the bonds
+  private static void overflow(Random random) {
+    Map<String, BloombergMain.Bond> conventional = new LinkedHashMap<>();
+    for (int i = 0; i < 2000; i++) {
+      BloombergMain.Bond bond = randomBond(random, 0);
+      bond.moodysRating = spelling(i % 1000);
+      if (i % 3 == 0) {
+        bond.snpRating = null; // still to be looked up
+      }
+      conventional.put(String.format("BBG%09d", i), bond);
+    }
+    List<String> ids = new ArrayList<>(conventional.keySet());
+    MatchIndex index = new MatchIndex(ids, conventional, new PackedBonds());
+    int matched = 0;
+    int compatible = 0;
+    for (int i = 0; i < 2000; i++) {
+      BloombergMain.Bond source = conventional.get(ids.get(random.nextInt(ids.size())));
+      // half of them copy a conventional bond, so there are matches among the spellings past the codes too
+      String moodys = i % 2 == 0 ? source.moodysRating : spelling(random.nextInt(1000));
+      BloombergMain.Bond green = new BloombergMain.Bond(source.issuer, source.maturityDate.toString(), moodys,
+          source.snpRating == null ? "AA" : source.snpRating, source.ccy, source.issuanceDate.toString(), true);
+      List<Integer> equal = new ArrayList<>();
+      List<Integer> present = new ArrayList<>();
+      for (int position = 0; position < ids.size(); position++) {
+        BloombergMain.Bond bond = conventional.get(ids.get(position));
+        if (green.greenAndConventionalEquals(bond)) equal.add(position);
+        if (!bond.getMissingFields().isEmpty() && green.areAllPresentFieldsEqual(bond)) present.add(position);
+      }
+      if (!index.probe(green).equals(equal) || !index.probeCompatible(green).equals(present)) {
+        throw new IllegalStateException("the index disagrees with the Bond comparison for " + green);
+      }
+      matched += equal.size();
+      compatible += present.size();
+    }
+    System.out.printf("1000 Moody's spellings: 2000 probes agree with the Bond comparison, %d matches, %d compatible%n", matched,
+        compatible);
+  }
+
+  // on the scale, or with the outlook and watch suffixes Bloomberg adds
+  private static String spelling(int i) {
+    return MOODYS[i % MOODYS.length] + (i < MOODYS.length ? "" : " *" + i);
+  }
+
+  // a conventional bond as it is before the lookups: issuer and id only
+  private static BloombergMain.Bond withoutLookedUpFields(BloombergMain.Bond bond) {
+    return new BloombergMain.Bond(bond.issuer, false);
+  }
+
+  // strings are built per bond, like the ones read from the API or a workbook
+  private static BloombergMain.Bond randomBond(Random random, int i) {
+    int rating = random.nextInt(MOODYS.length);
+    int year = 2015 + random.nextInt(8);
+    String monthDay = String.format("-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+    String issuance = year + monthDay;
+    String maturity = (year + 2 + random.nextInt(30)) + monthDay;
+    return new BloombergMain.Bond(new String("Issuer " + (i % 50)), maturity, new String(MOODYS[rating]), new String(SNP[rating]),
+        new String(CCY[random.nextInt(CCY.length)]), issuance, i % 10 == 0);
+  }
+}
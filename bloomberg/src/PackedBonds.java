@@ -0,0 +1,113 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/** Packs the fields compared when matching into one long key
+ * greenAndConventionalEquals becomes a key compare and areAllPresentFieldsEqual a masked compare. Issuers, issue years and
+ * currencies use their SymbolTable ids, ratings their RatingScale ordinal and enums their ordinal
+ * Only the key is packed, the bonds themselves stay Bond objects
+ *
+ * Key layout (a field of 0 means the field is missing, like a null field in Bond):
+ * issuer 24 bits | moody's 9 | s&p 9 | maturity bucket 3 | issue quarter 3 | issue year 8 | ccy 8 **/
+public class PackedBonds {
+
+    private static final int CCY_SHIFT = 0;
+    private static final int YEAR_SHIFT = 8;
+    private static final int QUARTER_SHIFT = 16;
+    private static final int MATURITY_SHIFT = 19;
+    private static final int SNP_SHIFT = 22;
+    private static final int MOODYS_SHIFT = 31;
+    private static final int ISSUER_SHIFT = 40;
+
+    private static final long CCY_MASK = 0xFFL << CCY_SHIFT;
+    private static final long YEAR_MASK = 0xFFL << YEAR_SHIFT;
+    private static final long QUARTER_MASK = 0x7L << QUARTER_SHIFT;
+    private static final long MATURITY_MASK = 0x7L << MATURITY_SHIFT;
+    private static final long SNP_MASK = 0x1FFL << SNP_SHIFT;
+    private static final long MOODYS_MASK = 0x1FFL << MOODYS_SHIFT;
+    private static final long ISSUER_MASK = 0xFFFFFFL << ISSUER_SHIFT;
+    private static final long[] FIELD_MASKS = {CCY_MASK, YEAR_MASK, QUARTER_MASK, MATURITY_MASK, SNP_MASK, MOODYS_MASK, ISSUER_MASK};
+
+    // shared by every rating spelling that no longer fits in the dictionary, keys holding it are not exact
+    private static final int OVERFLOW = 0x1FF;
+
+    // a rating's code is its RatingScale ordinal + 1; ratings off the scale, or written other than the canonical way, get codes after them
+    private final Dictionary moodysRatings = new Dictionary(OVERFLOW, RatingScale.Agency.MOODYS);
+    private final Dictionary snpRatings = new Dictionary(OVERFLOW, RatingScale.Agency.SNP);
+
+    /** Packs the fields greenAndConventionalEquals compares into a long, equal exact keys mean equal fields (missing ones included) **/
+    public long key(BloombergMain.Bond bond) {
+        long key = 0;
+        key |= (long) symbolCode(SymbolTable.ISSUERS, bond.issuer, 0xFFFFFF) << ISSUER_SHIFT;
+        key |= (long) moodysRatings.code(bond.moodysRating) << MOODYS_SHIFT;
+        key |= (long) snpRatings.code(bond.snpRating) << SNP_SHIFT;
+        key |= (long) (bond.maturity == null ? 0 : bond.maturity.ordinal() + 1) << MATURITY_SHIFT;
+        key |= (long) (bond.issuanceTerm == null ? 0 : bond.issuanceTerm.ordinal() + 1) << QUARTER_SHIFT;
+        key |= (long) symbolCode(SymbolTable.YEARS, bond.issuanceYear, 0xFF) << YEAR_SHIFT; // any year, 255 distinct ones fit
+        key |= (long) symbolCode(SymbolTable.CURRENCIES, bond.ccy, 0xFF) << CCY_SHIFT;
+        return key;
+    }
+
+    /** Symbol id + 1, so 0 is left for a missing field **/
+    private static int symbolCode(SymbolTable table, String value, int maxCode) {
+        if (value == null) {
+            return 0;
+        }
+        int code = table.id(value) + 1;
+        if (code > maxCode) {
+            throw new IllegalStateException("too many distinct values to pack, " + value + " does not fit");
+        }
+        return code;
+    }
+
+    /** Same as areAllPresentFieldsEqual on exact keys: only the fields present in the conventional bond are compared **/
+    public static boolean presentFieldsEqual(long greenKey, long conventionalKey) {
+        return ((greenKey ^ conventionalKey) & presentMask(conventionalKey)) == 0;
+    }
+
+    /** Mask with all bits set of the fields that are present in the key **/
+    public static long presentMask(long key) {
+        long mask = 0;
+        for (long fieldMask : FIELD_MASKS) {
+            if ((key & fieldMask) != 0) {
+                mask |= fieldMask;
+            }
+        }
+        return mask;
+    }
+
+    /** False if a rating of the key got the overflow code, then equal keys don't mean equal ratings and the bonds have to be compared **/
+    public static boolean isExact(long key) {
+        return (key & MOODYS_MASK) >>> MOODYS_SHIFT != OVERFLOW && (key & SNP_MASK) >>> SNP_SHIFT != OVERFLOW;
+    }
+
+    /** Rating -> code dictionary, code 0 is null **/
+    private static class Dictionary {
+        private final RatingScale.Agency agency;
+        private final Map<String, Integer> codes = new HashMap<>(); // ratings off the scale
+        private final int overflow;
+
+        Dictionary(int overflow, RatingScale.Agency agency) {
+            this.overflow = overflow;
+            this.agency = agency;
+        }
+
+        int code(String value) {
+            if (value == null) {
+                return 0;
+            }
+            int ordinal = RatingScale.parse(agency, value);
+            if (ordinal != RatingScale.UNKNOWN && value.equals(RatingScale.symbol(agency, ordinal))) { // aliases keep codes of their own, equal codes are equal strings
+                return ordinal + 1;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = RatingScale.SIZE + 1 + codes.size();
+                if (code >= overflow) {
+                    return overflow; // Bloomberg has many spellings (outlooks, watches, provisional ratings), keep matching on the rest
+                }
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+import javafx.util.Pair;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.*;
+
+// Wall clock of matchAll() on 1 to N threads on a synthetic, skewed universe (one issuer holds half of the bonds)
+// The conventional bonds are fully known, so this measures the local matching, not the lookups
+// Then checks that a universe with missing fields, looked up from a cache, gives the same pairs on the pool as on one thread:
+// each pool task orders its lookups with its own copy of the field statistics
+// usage: ParallelMatchingBenchmark [issuers] [conventional bonds] [green bonds] [rounds] [max threads, default the cores]
+public class ParallelMatchingBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "NR"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "NR"};
+  private static final String[] CCY = {"EUR", "USD", "GBP", "JPY"};
+
+  public static void main(String[] args) throws IOException {
+    int issuers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+    int conventional = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+    int green = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+    int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 3;
+
+    Random random = new Random(42);
+    BloombergMain universe = new BloombergMain();
+    for (int i = 0; i < conventional; i++) {
+      String issuer = skewedIssuer(random, issuers);
+      String id = String.format("BBG%09d", i);
+      universe.getConventionalBonds().put(id, randomBond(random, issuer, false));
+      universe.getConventionalBondsByIssuer().computeIfAbsent(issuer, k -> new ArrayList<>()).add(id);
+    }
+    for (int i = 0; i < green; i++) {
+      String issuer = skewedIssuer(random, issuers);
+      universe.getGreenBondsByIssuer().computeIfAbsent(issuer, k -> new ArrayList<>()).add(randomBond(random, issuer, true));
+    }
+
+    int cores = args.length > 4 ? Integer.parseInt(args[4]) : Runtime.getRuntime().availableProcessors();
+    List<Integer> threadCounts = new ArrayList<>();
+    for (int threads = 1; threads < cores; threads *= 2) {
+      threadCounts.add(threads);
+    }
+    threadCounts.add(cores);
+
+    List<String> reference = null;
+    double single = 0;
+    PrintStream console = System.out;
+    for (int threads : threadCounts) {
+      long best = Long.MAX_VALUE;
+      List<String> pairs = null;
+      for (int round = 0; round < rounds; round++) {
+        BloombergMain main = new BloombergMain();
+        main.getConventionalBonds().putAll(universe.getConventionalBonds());
+        main.getConventionalBondsByIssuer().putAll(universe.getConventionalBondsByIssuer());
+        main.getGreenBondsByIssuer().putAll(universe.getGreenBondsByIssuer());
+        main.setThreads(threads);
+        System.setOut(new PrintStream(new ByteArrayOutputStream())); // progress output
+        long start = System.nanoTime();
+        main.matchAll();
+        best = Math.min(best, System.nanoTime() - start);
+        System.setOut(console);
+        pairs = new ArrayList<>();
+        for (Pair<BloombergMain.Bond, BloombergMain.Bond> pair : main.getMatchedBonds()) {
+          pairs.add(System.identityHashCode(pair.getKey()) + ":" + System.identityHashCode(pair.getValue()));
+        }
+      }
+      if (reference == null) {
+        reference = pairs;
+        single = best;
+      }
+      System.out.printf("threads=%d best of %d: %.1fms, speedup %.2fx, pairs=%d, same order as 1 thread=%b%n",
+          threads, rounds, best / 1e6, single / best, pairs.size(), pairs.equals(reference));
+    }
+    missingFields(threadCounts);
+  }
+
+  private static void missingFields(List<Integer> threadCounts) throws IOException {
+    File dir = Files.createTempDirectory("parallel_lookups").toFile();
+    try (LookupCache cache = new LookupCache(dir.getPath())) {
+      MatchOrderHarness.Universe universe = new MatchOrderHarness.Universe(200, 30, 10, cache);
+      List<String> reference = null;
+      for (int threads : threadCounts) {
+        for (int round = 0; round < 3; round++) { // the pool runs the issuers in a different order every time
+          int hits = cache.getHits();
+          BloombergMain main = universe.load(cache);
+          main.setThreads(threads);
+          List<String> pairs = MatchOrderHarness.match(main);
+          if (reference == null) {
+            reference = pairs;
+          }
+          if (!pairs.equals(reference)) {
+            throw new IllegalStateException(threads + " threads matched " + pairs.size() + " pairs, 1 thread " + reference.size());
+          }
+          System.out.printf("missing fields, threads=%d round %d: pairs=%d, lookups=%d, same pairs as 1 thread%n", threads, round,
+              pairs.size(), cache.getHits() - hits);
+        }
+      }
+    } finally {
+      for (File file : Objects.requireNonNull(dir.listFiles())) {
+        file.delete();
+      }
+      dir.delete();
+    }
+  }
+
+  // issuer 0 gets half of the bonds, the rest are spread evenly
+  private static String skewedIssuer(Random random, int issuers) {
+    return "Issuer " + (random.nextBoolean() ? 0 : 1 + random.nextInt(issuers - 1));
+  }
+
+  // dates are in the yyyy-MM-dd format the API returns
+  private static BloombergMain.Bond randomBond(Random random, String issuer, boolean green) {
+    int rating = random.nextInt(MOODYS.length);
+    int year = 2015 + random.nextInt(8);
+    String monthDay = String.format("-%02d-%02d", 1 + random.nextInt(12), 1 + random.nextInt(28));
+    String issuance = year + monthDay;
+    String maturity = (year + 2 + random.nextInt(30)) + monthDay;
+    return new BloombergMain.Bond(issuer, maturity, MOODYS[rating], SNP[rating], CCY[random.nextInt(CCY.length)], issuance, green);
+  }
+}
@@ -0,0 +1,233 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/** Mergeable quantile sketch with a relative accuracy guarantee (the DDSketch scheme)
+ * A value x != 0 goes to the bucket ceil(log(|x|) / log(gamma)) of its sign, with gamma = (1 + accuracy) / (1 - accuracy),
+ * so every quantile comes back within accuracy * |value| of the exact one. Zeros are counted apart
+ * Memory is bounded: each sign keeps at most MAX_BUCKETS buckets, past that the buckets closest to zero are folded together,
+ * which only costs accuracy on the values of the smallest magnitudes. Two sketches with the same accuracy merge by adding
+ * their bucket counts, so sketches of partitions processed in parallel merge to the sketch of the whole **/
+public class QuantileSketch {
+
+    public static final double DEFAULT_ACCURACY = 0.01;
+    static final int MAX_BUCKETS = 2048;
+
+    private final double accuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final Buckets positive = new Buckets();
+    private final Buckets negative = new Buckets(); // by the bucket of |x|
+    private long zeros = 0;
+
+    public QuantileSketch() {
+        this(DEFAULT_ACCURACY);
+    }
+
+    public QuantileSketch(double accuracy) {
+        if (accuracy <= 0 || accuracy >= 1) {
+            throw new IllegalArgumentException("accuracy must be in (0, 1), got " + accuracy);
+        }
+        this.accuracy = accuracy;
+        this.gamma = (1 + accuracy) / (1 - accuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    /** Adds a value, NaN and the infinities are ignored **/
+    public void add(double value) {
+        if (Double.isInfinite(value)) {
+            return;
+        }
+        if (value > 0) {
+            positive.add(index(value), 1);
+        } else if (value < 0) {
+            negative.add(index(-value), 1);
+        } else if (value == 0) {
+            zeros++;
+        }
+    }
+
+    /** Adds the other sketch's values to this one **/
+    public void merge(QuantileSketch other) {
+        if (other.accuracy != accuracy) {
+            throw new IllegalArgumentException("cannot merge sketches of accuracy " + accuracy + " and " + other.accuracy);
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeros += other.zeros;
+    }
+
+    public long count() {
+        return positive.total + negative.total + zeros;
+    }
+
+    public double getAccuracy() {
+        return accuracy;
+    }
+
+    /** Value at the quantile q in [0, 1] (the value of rank q * (count - 1)), NaN if the sketch is empty **/
+    public double quantile(double q) {
+        long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) (Math.max(0, Math.min(1, q)) * (count - 1));
+        if (rank < negative.total) { // the most negative values are in the highest buckets of |x|
+            long seen = 0;
+            for (int i = negative.counts.length - 1; i >= 0; i--) {
+                seen += negative.counts[i];
+                if (seen > rank) {
+                    return -value(negative.offset + i);
+                }
+            }
+        }
+        rank -= negative.total;
+        if (rank < zeros) {
+            return 0;
+        }
+        rank -= zeros;
+        long seen = 0;
+        for (int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if (seen > rank) {
+                return value(positive.offset + i);
+            }
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    /** Approximate number of values <= x: every bucket whose representative value is <= x counts in full **/
+    public long rank(double x) {
+        long rank = 0;
+        for (int i = negative.counts.length - 1; i >= 0; i--) {
+            if (-value(negative.offset + i) <= x) {
+                rank += negative.counts[i];
+            }
+        }
+        if (x >= 0) {
+            rank += zeros;
+            for (int i = 0; i < positive.counts.length && value(positive.offset + i) <= x; i++) {
+                rank += positive.counts[i];
+            }
+        }
+        return rank;
+    }
+
+    /** Writes the sketch compactly: accuracy, zeros, then per sign the used bucket range with variable length counts **/
+    public void write(DataOutput out) throws IOException {
+        out.writeDouble(accuracy);
+        writeCount(out, zeros);
+        positive.write(out);
+        negative.write(out);
+    }
+
+    /** Reads a sketch written by write **/
+    public static QuantileSketch read(DataInput in) throws IOException {
+        QuantileSketch sketch = new QuantileSketch(in.readDouble());
+        sketch.zeros = readCount(in);
+        sketch.positive.read(in);
+        sketch.negative.read(in);
+        return sketch;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    // representative value of a bucket, within accuracy of every value in it
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    // 7 bits per byte, high bit set on all but the last byte: bucket counts are mostly small
+    private static void writeCount(DataOutput out, long count) throws IOException {
+        while ((count & ~0x7FL) != 0) {
+            out.writeByte((int) (count & 0x7F) | 0x80);
+            count >>>= 7;
+        }
+        out.writeByte((int) count);
+    }
+
+    private static long readCount(DataInput in) throws IOException {
+        long count = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.readByte();
+            count |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return count;
+            }
+        }
+    }
+
+    /** Counts of consecutive bucket indexes, grown as needed and folded from the low end past MAX_BUCKETS **/
+    private static final class Buckets {
+        private long[] counts = new long[0];
+        private int offset = 0; // bucket index of counts[0]
+        private long total = 0;
+
+        void add(int index, long count) {
+            if (counts.length == 0) {
+                counts = new long[16];
+                offset = index - 8;
+            }
+            if (index < offset && counts.length < MAX_BUCKETS) { // a full low end just folds
+                grow(index, offset + counts.length - 1);
+            } else if (index >= offset + counts.length) {
+                grow(offset, index);
+            }
+            counts[Math.max(index, offset) - offset] += count; // below a folded low end goes to the lowest bucket
+            total += count;
+        }
+
+        void write(DataOutput out) throws IOException {
+            int first = 0;
+            int last = counts.length - 1;
+            while (first <= last && counts[first] == 0) {
+                first++;
+            }
+            while (last >= first && counts[last] == 0) {
+                last--;
+            }
+            out.writeInt(offset + first);
+            writeCount(out, last - first + 1);
+            for (int i = first; i <= last; i++) {
+                writeCount(out, counts[i]);
+            }
+        }
+
+        void read(DataInput in) throws IOException {
+            offset = in.readInt();
+            counts = new long[(int) readCount(in)];
+            total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = readCount(in);
+                total += counts[i];
+            }
+        }
+
+        void merge(Buckets other) {
+            for (int i = 0; i < other.counts.length; i++) {
+                if (other.counts[i] != 0) {
+                    add(other.offset + i, other.counts[i]);
+                }
+            }
+        }
+
+        // makes room for the indexes from low to high (one of them is a current bound), past MAX_BUCKETS the low end is folded
+        private void grow(int low, int high) {
+            int length = Math.min(MAX_BUCKETS, Math.max(high - low + 1, 2 * counts.length));
+            int newOffset = low < offset ? high - length + 1 : offset; // growing down keeps the top, growing up the bottom
+            if (high >= newOffset + length) {
+                newOffset = high - length + 1;
+            }
+            long[] grown = new long[length];
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0) {
+                    grown[Math.max(offset + i, newOffset) - newOffset] += counts[i];
+                }
+            }
+            counts = grown;
+            offset = newOffset;
+        }
+    }
+}
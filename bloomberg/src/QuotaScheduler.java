@@ -0,0 +1,165 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Gatekeeper in front of the Bloomberg lookups
+ * A token bucket limits the request rate, and a ledger persisted to disk keeps the calls made this month under a hard budget
+ * Lower priority lookups are refused earlier, so the last part of the budget is kept for lookups that are likely to complete a match
+ * Refused lookups are recorded so they can be done next month **/
+public class QuotaScheduler {
+
+    /** How likely the lookup is to produce a match, decides how much of the budget it may use **/
+    public enum Priority {
+        COMPLETES_MATCH(1.0), // last missing field of a candidate whose other fields all match
+        LIKELY(0.95), // few fields missing and all present ones match
+        SPECULATIVE(0.8); // everything else
+
+        private final double budgetShare;
+
+        Priority(double budgetShare) {
+            this.budgetShare = budgetShare;
+        }
+    }
+
+    /** Time source, replaced by a simulated clock when testing **/
+    public interface Clock {
+        long millis();
+
+        void sleep(long millis) throws InterruptedException;
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long millis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void sleep(long millis) throws InterruptedException {
+            Thread.sleep(millis);
+        }
+    };
+
+    private final Clock clock;
+    private final File ledgerFile;
+    private final int monthlyBudget;
+    private final double tokensPerMilli;
+    private final double bucketSize;
+
+    private double tokens;
+    private long lastRefill;
+    private YearMonth month;
+    private int usedThisMonth;
+    private final List<String[]> deferred = new ArrayList<>(); // security id, field id, priority
+
+    /** requestsPerSecond is the sustained rate, burst the number of requests that may go out back to back **/
+    public QuotaScheduler(Clock clock, String ledgerFile, int monthlyBudget, double requestsPerSecond, int burst) throws IOException {
+        this.clock = clock;
+        this.ledgerFile = new File(ledgerFile);
+        this.monthlyBudget = monthlyBudget;
+        this.tokensPerMilli = requestsPerSecond / 1000.0;
+        this.bucketSize = burst;
+        this.tokens = burst;
+        this.lastRefill = clock.millis();
+        this.month = currentMonth();
+        this.usedThisMonth = readLedger();
+    }
+
+    /** Waits for a token and takes one unit of the monthly budget
+     * Returns false if the budget left for this priority is used up, the caller should then defer() the lookup **/
+    public synchronized boolean acquire(Priority priority) throws InterruptedException {
+        YearMonth now = currentMonth();
+        if (!now.equals(month)) { // new month, new budget
+            month = now;
+            usedThisMonth = 0;
+        }
+        if (usedThisMonth + 1 > monthlyBudget * priority.budgetShare) {
+            return false;
+        }
+        refill();
+        while (tokens < 1) {
+            clock.sleep((long) Math.ceil((1 - tokens) / tokensPerMilli));
+            refill();
+        }
+        tokens -= 1;
+        usedThisMonth++;
+        writeLedger();
+        return true;
+    }
+
+    /** Records a lookup that was refused, see getDeferred **/
+    public synchronized void defer(String securityId, String field, Priority priority) {
+        deferred.add(new String[]{securityId, field, priority.name()});
+    }
+
+    /** Priority of a lookup given how many of the candidate's missing fields are left including this one **/
+    public static Priority priorityOf(int fieldsLeft, int fieldsMissing) {
+        if (fieldsLeft == 1) {
+            return Priority.COMPLETES_MATCH;
+        }
+        return fieldsMissing <= 2 ? Priority.LIKELY : Priority.SPECULATIVE;
+    }
+
+    public synchronized int getUsedThisMonth() {
+        return usedThisMonth;
+    }
+
+    public synchronized int getRemaining() {
+        return Math.max(0, monthlyBudget - usedThisMonth);
+    }
+
+    public synchronized List<String[]> getDeferred() {
+        return new ArrayList<>(deferred);
+    }
+
+    private void refill() {
+        long now = clock.millis();
+        tokens = Math.min(bucketSize, tokens + (now - lastRefill) * tokensPerMilli);
+        lastRefill = now;
+    }
+
+    private YearMonth currentMonth() {
+        return YearMonth.from(Instant.ofEpochMilli(clock.millis()).atZone(ZoneOffset.UTC));
+    }
+
+    /** The ledger is a single line "yyyy-MM used", anything from an earlier month counts as nothing used **/
+    private int readLedger() throws IOException {
+        if (!ledgerFile.exists()) {
+            return 0;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(ledgerFile), StandardCharsets.UTF_8))) {
+            String line = reader.readLine();
+            if (line == null) {
+                return 0;
+            }
+            String[] parts = line.trim().split(" ");
+            if (parts.length != 2 || !YearMonth.parse(parts[0]).equals(month)) {
+                return 0;
+            }
+            return Integer.parseInt(parts[1]);
+        }
+    }
+
+    /** Written after every call so a crash never loses calls that were made
+     * The new ledger replaces the old one in a single atomic move, there is no moment without a ledger on disk **/
+    private void writeLedger() {
+        File tmp = new File(ledgerFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(month + " " + usedThisMonth + "\n");
+        } catch (IOException e) {
+            System.out.println("unable to write the api budget ledger");
+            return;
+        }
+        try {
+            Files.move(tmp.toPath(), ledgerFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.out.println("unable to replace the api budget ledger");
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Map;
+
+// Runs QuotaScheduler on a simulated clock, so an hour of rate limiting or a month end take no time at all
+// Checks the token bucket's pacing, the budget share of each priority, the ledger across restarts and month ends, and
+// BatchLookup over BatchLookupHarness's stub session running out of budget: the requests refused are deferred, not failed
+// usage: QuotaSchedulerHarness
+public class QuotaSchedulerHarness {
+
+  private static final long MONTH_END = Instant.parse("2026-10-31T23:00:00Z").toEpochMilli();
+  private static final File LEDGER = new File("harness_budget.txt");
+
+  public static void main(String[] args) throws Exception {
+    LEDGER.delete();
+    tokenBucket();
+    LEDGER.delete();
+    priorities();
+    LEDGER.delete();
+    ledger();
+    LEDGER.delete();
+    fakeSession();
+    LEDGER.delete();
+  }
+
+  // the burst goes out at once, after that one request per 1/rate seconds
+  private static void tokenBucket() throws Exception {
+    SimulatedClock clock = new SimulatedClock(MONTH_END - 3_600_000);
+    QuotaScheduler scheduler = new QuotaScheduler(clock, LEDGER.getPath(), 100_000, 10, 20);
+    for (int i = 0; i < 20; i++) {
+      check(scheduler.acquire(QuotaScheduler.Priority.COMPLETES_MATCH), "refused within the budget");
+    }
+    check(clock.slept == 0, "the burst should not wait, slept " + clock.slept + "ms");
+    for (int i = 0; i < 100; i++) {
+      check(scheduler.acquire(QuotaScheduler.Priority.COMPLETES_MATCH), "refused within the budget");
+    }
+    check(clock.slept == 10_000, "100 requests at 10/s should take 10s, took " + clock.slept + "ms");
+    clock.now += 60_000; // idle for a minute, the bucket refills up to the burst and no more
+    long slept = clock.slept;
+    for (int i = 0; i < 21; i++) {
+      scheduler.acquire(QuotaScheduler.Priority.COMPLETES_MATCH);
+    }
+    check(clock.slept - slept == 100, "after the burst the 21st request should wait 100ms, waited " + (clock.slept - slept) + "ms");
+    System.out.printf("token bucket: 20 burst, 100 paced over %ds, refilled to 20 after a minute idle%n", (clock.slept - 100) / 1000);
+  }
+
+  // a speculative lookup may use 80% of the budget, a likely one 95%, one completing a match all of it
+  private static void priorities() throws Exception {
+    SimulatedClock clock = new SimulatedClock(MONTH_END - 3_600_000);
+    QuotaScheduler scheduler = new QuotaScheduler(clock, LEDGER.getPath(), 100, 1000, 1000);
+    int speculative = acquireAll(scheduler, QuotaScheduler.Priority.SPECULATIVE);
+    int likely = acquireAll(scheduler, QuotaScheduler.Priority.LIKELY);
+    int completing = acquireAll(scheduler, QuotaScheduler.Priority.COMPLETES_MATCH);
+    check(speculative == 80 && likely == 15 && completing == 5, speculative + " + " + likely + " + " + completing);
+    check(scheduler.getRemaining() == 0, scheduler.getRemaining() + " left");
+    System.out.printf("priorities: %d speculative, then %d likely, then %d completing a match out of 100%n", speculative, likely,
+        completing);
+  }
+
+  // a restart carries on from the ledger, a new month starts from nothing, and the ledger is never left half replaced
+  private static void ledger() throws Exception {
+    SimulatedClock clock = new SimulatedClock(MONTH_END - 3_600_000);
+    QuotaScheduler scheduler = new QuotaScheduler(clock, LEDGER.getPath(), 100, 1000, 1000);
+    for (int i = 0; i < 30; i++) {
+      scheduler.acquire(QuotaScheduler.Priority.LIKELY);
+    }
+    check(new String(Files.readAllBytes(LEDGER.toPath()), StandardCharsets.UTF_8).equals("2026-10 30\n"), "ledger not written");
+    check(!new File(LEDGER.getPath() + ".tmp").exists(), "the temporary ledger was left behind");
+    QuotaScheduler restarted = new QuotaScheduler(clock, LEDGER.getPath(), 100, 1000, 1000);
+    check(restarted.getUsedThisMonth() == 30, "a restart should see 30 used, saw " + restarted.getUsedThisMonth());
+
+    clock.now = MONTH_END + 3_600_001; // past midnight UTC, November
+    check(new QuotaScheduler(clock, LEDGER.getPath(), 100, 1000, 1000).getUsedThisMonth() == 0, "last month's ledger was counted");
+    check(restarted.acquire(QuotaScheduler.Priority.SPECULATIVE) && restarted.getUsedThisMonth() == 1, "the budget did not reset");
+    System.out.println("ledger: 30 used survived a restart, reset to 1 used after the month end");
+  }
+
+  // BatchLookup spends one unit per request, the requests past the budget of their priority are deferred and the lookup goes on
+  private static void fakeSession() throws Exception {
+    SimulatedClock clock = new SimulatedClock(MONTH_END - 3_600_000);
+    QuotaScheduler scheduler = new QuotaScheduler(clock, LEDGER.getPath(), 10, 1, 2);
+    Map<String, BloombergMain.Bond> bonds = BatchLookupHarness.bonds(200);
+    BatchLookup lookup = new BatchLookup(new BatchLookupHarness.StubChannel(BatchLookupHarness.service(), false), bonds, 25);
+    lookup.setScheduler(scheduler);
+    boolean ok = lookup.lookupMissingFields(new ArrayList<>(bonds.keySet()));
+    int deferredFields = scheduler.getDeferred().size();
+    int resolvable = lookup.getFieldsRequested();
+    check(ok, "running out of budget is not a failure");
+    check(lookup.getRequestsSent() == scheduler.getUsedThisMonth(), lookup.getRequestsSent() + " requests for "
+        + scheduler.getUsedThisMonth() + " units");
+    // 9 requests: 6 asking for two fields (likely) and 3 for five (speculative), only 8 units are open to the speculative ones
+    check(lookup.getRequestsSent() == 8, lookup.getRequestsSent() + " requests sent");
+    check(deferredFields > 0 && resolvable + deferredFields == fieldsMissing(200), resolvable + " requested + "
+        + deferredFields + " deferred");
+    check(clock.slept == 6_000, "8 requests at 1/s with a burst of 2 should take 6s, took " + clock.slept + "ms");
+    System.out.printf("fake session: %d requests sent on a budget of 10, %d fields requested, %d deferred, %ds on the clock%n",
+        lookup.getRequestsSent(), resolvable, deferredFields, clock.slept / 1000);
+  }
+
+  private static int acquireAll(QuotaScheduler scheduler, QuotaScheduler.Priority priority) throws InterruptedException {
+    int granted = 0;
+    while (scheduler.acquire(priority)) {
+      granted++;
+    }
+    return granted;
+  }
+
+  private static int fieldsMissing(int count) {
+    int missing = 0;
+    for (BloombergMain.Bond bond : BatchLookupHarness.bonds(count).values()) {
+      missing += bond.getMissingFields().size();
+    }
+    return missing;
+  }
+
+  private static void check(boolean condition, String message) {
+    if (!condition) {
+      throw new IllegalStateException(message);
+    }
+  }
+
+  // time only moves when the scheduler sleeps or the harness moves it
+  private static class SimulatedClock implements QuotaScheduler.Clock {
+    private long now;
+    private long slept = 0;
+
+    SimulatedClock(long now) {
+      this.now = now;
+    }
+
+    @Override
+    public long millis() {
+      return now;
+    }
+
+    @Override
+    public void sleep(long millis) {
+      now += millis;
+      slept += millis;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** One ordinal scale for the Moody's, S&P and Fitch ratings, replacing the string maps and switches of the categorisers
+ * Ordinals are dense and go from the best rating to the worst, the same numbers the notebooks' ratings_mapping gives:
+ * AAA / Aaa = 0 ... C / Ca = 20, D / Moody's C = 21, NR = 22 (Moody's has no CC, it goes from Caa3 to Ca)
+ * Parsing is one probe of a perfect hash table over (agency, symbol), without allocating, so ratings can be read straight out of
+ * a Bond{...} string. "#N/A N/A" and the withdrawn markers parse as NR, like Bond.setField treats empty responses **/
+public final class RatingScale {
+
+    public enum Agency {
+        MOODYS, SNP, FITCH
+    }
+
+    /** Grade bands of the categorisers, NR (and the empty and withdrawn ratings parsed as NR) has a band of its own, an unrated
+     * bond is no junk bond **/
+    public enum Band {
+        PRIME("Prime"),
+        HIGH_GRADE("High grade"),
+        UPPER_MEDIUM_GRADE("Upper medium grade"),
+        LOWER_MEDIUM_GRADE("Lower medium grade"),
+        JUNK("Junk"),
+        NOT_RATED("Not rated");
+
+        private final String label;
+
+        Band(String label) {
+            this.label = label;
+        }
+
+        /** Sheet name the categorisers write the band to **/
+        public String label() {
+            return label;
+        }
+    }
+
+    public static final int DEFAULT = 21; // D, SD, RD and Moody's C
+    public static final int NOT_RATED = 22;
+    public static final int SIZE = NOT_RATED + 1;
+    public static final int UNKNOWN = -1; // not a rating of that agency
+    private static final int LOWEST_INVESTMENT_GRADE = 9; // BBB- / Baa3
+
+    // canonical symbol of every ordinal, per agency
+    private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "Ba1", "Ba2", "Ba3",
+            "B1", "B2", "B3", "Caa1", "Caa2", "Caa3", null, "Ca", "C", "NR"};
+    private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "BB+", "BB", "BB-",
+            "B+", "B", "B-", "CCC+", "CCC", "CCC-", "CC", "C", "D", "NR"};
+    private static final String[][] SYMBOLS = {MOODYS, SNP, SNP}; // Fitch writes its ratings like S&P
+    private static final Band[] BANDS = new Band[SIZE];
+
+    // perfect hash table, filled once: the multiplier is searched for so that no two (agency, symbol) pairs share a slot
+    private static final int TABLE_BITS = 10;
+    private static final String[] KEYS = new String[1 << TABLE_BITS];
+    private static final byte[] KEY_AGENCIES = new byte[1 << TABLE_BITS];
+    private static final byte[] ORDINALS = new byte[1 << TABLE_BITS];
+    private static final List<Entry> ENTRIES = new ArrayList<>();
+    private static final int MULTIPLIER;
+
+    static {
+        for (int ordinal = 0; ordinal < SIZE; ordinal++) {
+            BANDS[ordinal] = ordinal == 0 ? Band.PRIME : ordinal <= 3 ? Band.HIGH_GRADE : ordinal <= 6 ? Band.UPPER_MEDIUM_GRADE
+                    : ordinal <= LOWEST_INVESTMENT_GRADE ? Band.LOWER_MEDIUM_GRADE : ordinal < NOT_RATED ? Band.JUNK : Band.NOT_RATED;
+        }
+        // every accepted (agency, symbol): the canonical symbols and the aliases the exports and the API use
+        for (Agency agency : Agency.values()) {
+            for (int ordinal = 0; ordinal < SIZE; ordinal++) {
+                if (SYMBOLS[agency.ordinal()][ordinal] != null) {
+                    ENTRIES.add(new Entry(agency, SYMBOLS[agency.ordinal()][ordinal], ordinal));
+                }
+            }
+            ENTRIES.add(new Entry(agency, "#N/A N/A", NOT_RATED));
+        }
+        ENTRIES.add(new Entry(Agency.MOODYS, "WR", NOT_RATED)); // withdrawn
+        ENTRIES.add(new Entry(Agency.SNP, "SD", DEFAULT)); // selective default
+        ENTRIES.add(new Entry(Agency.FITCH, "RD", DEFAULT)); // restricted default
+        ENTRIES.add(new Entry(Agency.FITCH, "WD", NOT_RATED)); // withdrawn
+        int multiplier = 0x9E3779B9;
+        while (!fill(multiplier)) {
+            multiplier += 2;
+        }
+        MULTIPLIER = multiplier;
+    }
+
+    private RatingScale() {
+    }
+
+    /** Ordinal of the agency's rating, NOT_RATED for NR and the empty responses, UNKNOWN for null or anything off the scale **/
+    public static int parse(Agency agency, String rating) {
+        return rating == null ? UNKNOWN : parse(agency, rating, 0, rating.length());
+    }
+
+    /** Same as parse, for the rating between from and to in a longer text **/
+    public static int parse(Agency agency, String text, int from, int to) {
+        int slot = slot(hash(agency.ordinal(), text, from, to), MULTIPLIER);
+        String key = KEYS[slot];
+        if (key == null || KEY_AGENCIES[slot] != agency.ordinal() || key.length() != to - from || !text.startsWith(key, from)) {
+            return UNKNOWN;
+        }
+        return ORDINALS[slot];
+    }
+
+    /** The agency's canonical symbol for the ordinal, null if the agency has no such rating (Moody's CC) **/
+    public static String symbol(Agency agency, int ordinal) {
+        return ordinal < 0 || ordinal >= SIZE ? null : SYMBOLS[agency.ordinal()][ordinal];
+    }
+
+    /** Grade band of the ordinal, null for UNKNOWN **/
+    public static Band band(int ordinal) {
+        return ordinal < 0 || ordinal >= SIZE ? null : BANDS[ordinal];
+    }
+
+    public static boolean isInvestmentGrade(int ordinal) {
+        return ordinal >= 0 && ordinal <= LOWEST_INVESTMENT_GRADE;
+    }
+
+    /** True for an actual rating, neither NR nor UNKNOWN **/
+    public static boolean isRated(int ordinal) {
+        return ordinal >= 0 && ordinal < NOT_RATED;
+    }
+
+    /** The first rating if it is an actual rating, otherwise the second: Moody's first, S&P when Moody's has none **/
+    public static int prefer(int first, int second) {
+        return isRated(first) ? first : second;
+    }
+
+    private static boolean fill(int multiplier) {
+        Arrays.fill(KEYS, null);
+        for (Entry entry : ENTRIES) {
+            int slot = slot(hash(entry.agency.ordinal(), entry.symbol, 0, entry.symbol.length()), multiplier);
+            if (KEYS[slot] != null) {
+                return false;
+            }
+            KEYS[slot] = entry.symbol;
+            KEY_AGENCIES[slot] = (byte) entry.agency.ordinal();
+            ORDINALS[slot] = (byte) entry.ordinal;
+        }
+        return true;
+    }
+
+    private static int hash(int agency, String text, int from, int to) {
+        int hash = agency + 1;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int slot(int hash, int multiplier) {
+        return (hash * multiplier) >>> (32 - TABLE_BITS);
+    }
+
+    private static final class Entry {
+        private final Agency agency;
+        private final String symbol;
+        private final int ordinal;
+
+        private Entry(Agency agency, String symbol, int ordinal) {
+            this.agency = agency;
+            this.symbol = symbol;
+            this.ordinal = ordinal;
+        }
+    }
+}
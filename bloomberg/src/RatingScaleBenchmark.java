@@ -0,0 +1,102 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+// Rating -> grade band on millions of rows: the string switch of the categorisers (S&P mapped to Moody's through a HashMap,
+// then a switch on the Moody's rating) vs the RatingScale ordinal lookup
+// The ratings sit in one long text, like the rating fields of the Bond{...} strings MatchReader scans: the switch takes them out
+// with substring (what BondScanner.text does), the ordinal lookup parses them in place
+// usage: RatingScaleBenchmark [rows] [rounds]
+public class RatingScaleBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "Ba1", "Ba2", "Ba3",
+      "B1", "B2", "B3", "NR", "NR", "NR", "NR"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "BB+", "BB", "BB-",
+      "B+", "B", "B-", "NR"};
+
+  private static final Map<String, String> snpToMoodys = new HashMap<>();
+
+  static {
+    for (int i = 0; i < SNP.length; i++) {
+      snpToMoodys.put(SNP[i], MOODYS[i]);
+    }
+  }
+
+  public static void main(String[] args) {
+    int rows = args.length > 0 ? Integer.parseInt(args[0]) : 4_000_000;
+    int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    Random random = new Random(42);
+    int[] moodysPicks = new int[rows];
+    int[] snpPicks = new int[rows];
+    for (int i = 0; i < rows; i++) {
+      moodysPicks[i] = random.nextInt(MOODYS.length);
+      snpPicks[i] = random.nextInt(SNP.length);
+    }
+    System.out.printf("%d rows, %d rounds%n", rows, rounds);
+    StringBuilder builder = new StringBuilder();
+    int[] bounds = new int[4 * rows]; // moody's from, to, s&p from, to
+    for (int i = 0; i < rows; i++) {
+      builder.append("moodysRating='");
+      bounds[4 * i] = builder.length();
+      bounds[4 * i + 1] = builder.append(MOODYS[moodysPicks[i]]).length();
+      builder.append("', snpRating='");
+      bounds[4 * i + 2] = builder.length();
+      bounds[4 * i + 3] = builder.append(SNP[snpPicks[i]]).length();
+      builder.append("', ");
+    }
+    String text = builder.toString();
+    for (int round = 0; round < rounds; round++) { // the first rounds warm the JIT up
+      long start = System.nanoTime();
+      int[] switchCounts = new int[RatingScale.Band.values().length];
+      for (int i = 0; i < rows; i++) {
+        String moodys = text.substring(bounds[4 * i], bounds[4 * i + 1]);
+        String snp = text.substring(bounds[4 * i + 2], bounds[4 * i + 3]);
+        switchCounts[bandBySwitch(moodys, snp)]++;
+      }
+      long switchTime = System.nanoTime() - start;
+
+      start = System.nanoTime();
+      int[] ordinalCounts = new int[RatingScale.Band.values().length];
+      for (int i = 0; i < rows; i++) {
+        int rating = RatingScale.parse(RatingScale.Agency.MOODYS, text, bounds[4 * i], bounds[4 * i + 1]);
+        if (!RatingScale.isRated(rating)) {
+          rating = RatingScale.parse(RatingScale.Agency.SNP, text, bounds[4 * i + 2], bounds[4 * i + 3]);
+        }
+        ordinalCounts[RatingScale.band(rating).ordinal()]++;
+      }
+      long ordinalTime = System.nanoTime() - start;
+      if (!Arrays.equals(switchCounts, ordinalCounts)) {
+        throw new IllegalStateException("the two ways disagree");
+      }
+      System.out.printf("round %d: switch %.1f ns/row, ordinal %.1f ns/row (%.1fx)%n", round, (double) switchTime / rows,
+          (double) ordinalTime / rows, (double) switchTime / ordinalTime);
+    }
+  }
+
+  // what CategoriseRatings did before RatingScale, with NR in a band of its own instead of junk
+  private static int bandBySwitch(String moodys, String snp) {
+    String rating = moodys != null & !Objects.equals(moodys, "NR") ? moodys : snpToMoodys.get(snp);
+    switch (rating) {
+      case "Aaa":
+        return RatingScale.Band.PRIME.ordinal();
+      case "Aa1":
+      case "Aa2":
+      case "Aa3":
+        return RatingScale.Band.HIGH_GRADE.ordinal();
+      case "A1":
+      case "A2":
+      case "A3":
+        return RatingScale.Band.UPPER_MEDIUM_GRADE.ordinal();
+      case "Baa1":
+      case "Baa2":
+      case "Baa3":
+        return RatingScale.Band.LOWER_MEDIUM_GRADE.ordinal();
+      case "NR":
+        return RatingScale.Band.NOT_RATED.ordinal();
+      default:
+        return RatingScale.Band.JUNK.ordinal();
+    }
+  }
+}
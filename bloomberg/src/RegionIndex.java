@@ -0,0 +1,303 @@
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.CellType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/** Issuer -> region (and country) index, built once from the region workbooks and memory-mapped by later runs
+ * One lookup per issuer instead of a set per region probed one after the other, for any number of regions and countries
+ * The index records the size, modification time and CRC32 of the workbooks it was built from, like UniverseSnapshot,
+ * and is rebuilt as soon as one of them changes
+ *
+ * Layout (big endian), version 1:
+ * magic, version | sources: count, then path, size, mtime, crc per source | regions: count, then names | countries: count, then names |
+ * table: capacity (a power of two), then per slot issuer hash, key position (-1 for an empty slot), region, country |
+ * keys: length + UTF-16 chars per issuer. Lookups probe the mapped table with absolute reads, so the index is safe to share between threads **/
+public class RegionIndex {
+
+    public static final int NONE = -1;
+    private static final int MAGIC = 0x52474E53; // "RGNS"
+    private static final int VERSION = 1; // bump whenever the layout changes, older indexes are then rebuilt
+    private static final int SLOT_BYTES = 12;
+
+    private final ByteBuffer buffer;
+    private final String[] regions;
+    private final String[] countries;
+    private final int tableStart;
+    private final int mask;
+    private final int issuers;
+
+    private RegionIndex(ByteBuffer buffer, String[] regions, String[] countries, int tableStart, int capacity, int issuers) {
+        this.buffer = buffer;
+        this.regions = regions;
+        this.countries = countries;
+        this.tableStart = tableStart;
+        this.mask = capacity - 1;
+        this.issuers = issuers;
+    }
+
+    /** Maps the index, returns null if there is no index or it is not valid for the sources **/
+    public static RegionIndex open(File index, List<File> sources) {
+        if (!index.exists()) {
+            return null;
+        }
+        try (FileChannel channel = new RandomAccessFile(index, "r").getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            int sourceCount = buffer.getInt();
+            if (sourceCount != sources.size()) {
+                return null;
+            }
+            for (File source : sources) {
+                String path = readString(buffer);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                long crc = buffer.getLong();
+                if (!path.equals(source.getAbsolutePath()) || size != source.length() || modified != source.lastModified()
+                        || crc != UniverseSnapshot.contentHash(source)) {
+                    return null;
+                }
+            }
+            String[] regions = readStrings(buffer);
+            String[] countries = readStrings(buffer);
+            int issuers = buffer.getInt();
+            int capacity = buffer.getInt();
+            return new RegionIndex(buffer, regions, countries, buffer.position(), capacity, issuers);
+        } catch (IOException | RuntimeException e) { // a truncated or corrupt index is rebuilt from the workbooks
+            System.out.println("unable to read the region index " + index + ", rebuilding it");
+            return null;
+        }
+    }
+
+    /** Maps the index, building it from the builder's workbooks first if it is missing or stale **/
+    public static RegionIndex openOrBuild(File index, Builder builder) throws IOException {
+        RegionIndex regionIndex = open(index, builder.sources);
+        if (regionIndex == null) {
+            builder.write(index);
+            regionIndex = open(index, builder.sources);
+            if (regionIndex == null) {
+                throw new IOException("unable to map the region index " + index + " just written");
+            }
+        }
+        return regionIndex;
+    }
+
+    /** Region id of the issuer, NONE if the issuer is in none of the regions **/
+    public int region(String issuer) {
+        int slot = find(issuer);
+        return slot == NONE ? NONE : buffer.getShort(slot + 8);
+    }
+
+    /** Country id of the issuer, NONE if the issuer is not indexed or its workbook has no country column **/
+    public int country(String issuer) {
+        int slot = find(issuer);
+        return slot == NONE ? NONE : buffer.getShort(slot + 10);
+    }
+
+    public String regionName(int region) {
+        return regions[region];
+    }
+
+    public String countryName(int country) {
+        return countries[country];
+    }
+
+    public int regionCount() {
+        return regions.length;
+    }
+
+    public int countryCount() {
+        return countries.length;
+    }
+
+    public int size() {
+        return issuers;
+    }
+
+    // position of the issuer's slot in the buffer, NONE if it is not indexed
+    private int find(String issuer) {
+        int hash = spread(issuer.hashCode()); // cached by the string, free for the interned issuer names
+        for (int i = hash & mask; ; i = (i + 1) & mask) {
+            int slot = tableStart + i * SLOT_BYTES;
+            int key = buffer.getInt(slot + 4);
+            if (key == NONE) {
+                return NONE;
+            }
+            if (buffer.getInt(slot) == hash && keyEquals(key, issuer)) {
+                return slot;
+            }
+        }
+    }
+
+    private boolean keyEquals(int key, String issuer) {
+        if (buffer.getInt(key) != issuer.length()) {
+            return false;
+        }
+        for (int i = 0; i < issuer.length(); i++) {
+            if (buffer.getChar(key + 4 + 2 * i) != issuer.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /** Collects the issuers of the region workbooks and writes the index
+     * An issuer listed in several regions stays in the first one added, like the if/else chain the categoriser had **/
+    public static class Builder {
+        private final List<File> sources = new ArrayList<>();
+        private final List<String> sourceRegions = new ArrayList<>();
+        private final List<Integer> countryColumns = new ArrayList<>();
+        private final Map<String, int[]> entries = new LinkedHashMap<>(); // issuer -> region, country
+        private final Map<String, Integer> regions = new LinkedHashMap<>(); // name -> id, in id order
+        private final Map<String, Integer> countries = new LinkedHashMap<>();
+        private boolean loaded = false;
+
+        /** Adds a workbook whose first sheet lists the region's issuers in column 0, countryColumn is NONE if it has no country **/
+        public Builder addWorkbook(String file, String region, int countryColumn) {
+            sources.add(new File(file));
+            sourceRegions.add(region);
+            countryColumns.add(countryColumn);
+            return this;
+        }
+
+        /** Adds an issuer directly, country may be null **/
+        public Builder add(String issuer, String region, String country) {
+            entries.putIfAbsent(issuer, new int[]{id(regions, region), country == null ? NONE : id(countries, country)});
+            return this;
+        }
+
+        /** Writes the index to a temporary file that replaces the index once complete **/
+        public void write(File index) throws IOException {
+            load();
+            if (regions.size() > Short.MAX_VALUE || countries.size() > Short.MAX_VALUE) {
+                throw new IOException("too many regions or countries for the index");
+            }
+            int capacity = Integer.highestOneBit(Math.max(2, entries.size() * 2 - 1)) << 1; // at most half full
+            int[] slotKeys = new int[capacity];
+            int[] slotHashes = new int[capacity];
+            String[] slotIssuers = new String[capacity];
+            Arrays.fill(slotKeys, NONE);
+            for (String issuer : entries.keySet()) {
+                int hash = spread(issuer.hashCode());
+                int i = hash & (capacity - 1);
+                while (slotIssuers[i] != null) {
+                    i = (i + 1) & (capacity - 1);
+                }
+                slotIssuers[i] = issuer;
+                slotHashes[i] = hash;
+            }
+
+            ByteArrayOutputStream header = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.size());
+            for (File source : sources) {
+                writeString(out, source.getAbsolutePath());
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeLong(UniverseSnapshot.contentHash(source));
+            }
+            writeStrings(out, regions.keySet());
+            writeStrings(out, countries.keySet());
+            out.writeInt(entries.size());
+            out.writeInt(capacity);
+            int key = header.size() + capacity * SLOT_BYTES; // keys follow the table
+            for (int i = 0; i < capacity; i++) {
+                if (slotIssuers[i] != null) {
+                    slotKeys[i] = key;
+                    key += 4 + 2 * slotIssuers[i].length();
+                }
+            }
+
+            File tmp = new File(index.getPath() + ".tmp");
+            try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+                header.writeTo(file);
+                for (int i = 0; i < capacity; i++) {
+                    int[] entry = slotIssuers[i] == null ? null : entries.get(slotIssuers[i]);
+                    file.writeInt(slotHashes[i]);
+                    file.writeInt(slotKeys[i]);
+                    file.writeShort(entry == null ? NONE : entry[0]);
+                    file.writeShort(entry == null ? NONE : entry[1]);
+                }
+                for (int i = 0; i < capacity; i++) {
+                    if (slotIssuers[i] != null) {
+                        file.writeInt(slotIssuers[i].length());
+                        file.writeChars(slotIssuers[i]);
+                    }
+                }
+            }
+            if (index.exists() && !index.delete() || !tmp.renameTo(index)) {
+                throw new IOException("unable to replace the region index " + index);
+            }
+        }
+
+        // reads the workbooks once, in the order they were added
+        private void load() throws IOException {
+            if (loaded) {
+                return;
+            }
+            loaded = true;
+            for (int i = 0; i < sources.size(); i++) {
+                try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(sources.get(i)))) {
+                    for (Row row : workbook.getSheetAt(0)) {
+                        if (row.getFirstCellNum() != 0) { // avoid weird excel error
+                            break;
+                        }
+                        String issuer = row.getCell(0).getStringCellValue();
+                        Cell country = countryColumns.get(i) == NONE ? null : row.getCell(countryColumns.get(i));
+                        add(issuer, sourceRegions.get(i), country == null || country.getCellType() != CellType.STRING ? null
+                                : country.getStringCellValue());
+                    }
+                }
+            }
+        }
+
+        private static int id(Map<String, Integer> ids, String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = ids.size();
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    private static void writeStrings(DataOutputStream out, Collection<String> strings) throws IOException {
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            writeString(out, string);
+        }
+    }
+
+    private static String[] readStrings(ByteBuffer buffer) {
+        String[] strings = new String[buffer.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = readString(buffer);
+        }
+        return strings;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
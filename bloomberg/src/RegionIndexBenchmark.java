@@ -0,0 +1,125 @@
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+// Startup and per-row cost of the region lookup: the five workbooks loaded into one HashSet per region and probed one after
+// the other (what CategoriseMatches did) vs the RegionIndex, built on the first run and memory-mapped by the next ones
+// Per-row lookups use a fresh String per row, like the issuer MatchReader takes out of a Bond{...} string
+// usage: RegionIndexBenchmark [issuers] [lookups]
+public class RegionIndexBenchmark {
+
+  private static final String[] REGIONS = {"African Bonds", "South American Bonds", "North American Bonds", "European Bonds", "European Bonds"};
+
+  public static void main(String[] args) throws IOException {
+    int issuers = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+    int lookups = args.length > 1 ? Integer.parseInt(args[1]) : 5_000_000;
+    String[] files = {"benchmark_region_africa.xlsx", "benchmark_region_south_america.xlsx", "benchmark_region_north_america.xlsx",
+        "benchmark_region_europe_EUR.xlsx", "benchmark_region_europe_non-EUR.xlsx"};
+    writeRegions(files, issuers);
+    File indexFile = new File("benchmark_regions.index");
+    indexFile.delete();
+    System.out.printf("%d issuers over %d workbooks, %d lookups%n", issuers, files.length, lookups);
+
+    long start = System.nanoTime();
+    List<Set<String>> sets = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      sets.add(new HashSet<>());
+    }
+    for (int i = 0; i < files.length; i++) {
+      populateSet(files[i], sets.get(Math.min(i, 3)));
+    }
+    System.out.printf("startup: workbooks into sets %.0fms", (System.nanoTime() - start) / 1e6);
+    start = System.nanoTime();
+    RegionIndex built = RegionIndex.openOrBuild(indexFile, builder(files));
+    System.out.printf(", first run (build + write + map) %.0fms", (System.nanoTime() - start) / 1e6);
+    start = System.nanoTime();
+    RegionIndex index = RegionIndex.openOrBuild(indexFile, builder(files));
+    System.out.printf(", next runs (validate + map) %.1fms, index %dKB%n", (System.nanoTime() - start) / 1e6, indexFile.length() >> 10);
+
+    Random random = new Random(7);
+    int[] picks = new int[lookups];
+    for (int i = 0; i < lookups; i++) {
+      picks[i] = random.nextInt(issuers + issuers / 10); // a tenth of the lookups are issuers in no region
+    }
+    for (int round = 0; round < 5; round++) { // the first rounds warm the JIT up
+      String[] names = fresh(picks);
+      start = System.nanoTime();
+      int[] chainCounts = new int[5];
+      for (String name : names) {
+        int region = sets.get(0).contains(name) ? 0 : sets.get(1).contains(name) ? 1 : sets.get(2).contains(name) ? 2
+            : sets.get(3).contains(name) ? 3 : 4;
+        chainCounts[region]++;
+      }
+      long chain = System.nanoTime() - start;
+
+      names = fresh(picks);
+      start = System.nanoTime();
+      int[] indexCounts = new int[5];
+      for (String name : names) {
+        int region = index.region(name);
+        indexCounts[region == RegionIndex.NONE ? 4 : region]++;
+      }
+      long mapped = System.nanoTime() - start;
+      for (int i = 0; i < 5; i++) {
+        if (chainCounts[i] != indexCounts[i]) {
+          throw new IllegalStateException("the set chain and the index disagree on region " + i);
+        }
+      }
+      System.out.printf("round %d: set chain %.1f ns/row, region index %.1f ns/row (%.1fx)%n", round, (double) chain / lookups,
+          (double) mapped / lookups, (double) chain / mapped);
+    }
+    System.out.println(built.size() + " issuers indexed");
+  }
+
+  private static RegionIndex.Builder builder(String[] files) {
+    RegionIndex.Builder builder = new RegionIndex.Builder();
+    for (int i = 0; i < files.length; i++) {
+      builder.addWorkbook(files[i], REGIONS[i], RegionIndex.NONE);
+    }
+    return builder;
+  }
+
+  private static String[] fresh(int[] picks) {
+    String[] names = new String[picks.length];
+    for (int i = 0; i < picks.length; i++) {
+      names[i] = new String(("Issuer " + picks[i]).toCharArray());
+    }
+    return names;
+  }
+
+  // what CategoriseMatches.populateSets did, once per workbook
+  private static void populateSet(String file, Set<String> set) throws IOException {
+    try (XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(file))) {
+      XSSFSheet sheet = workbook.getSheetAt(0);
+      for (Row row : sheet) {
+        if (row.getFirstCellNum() != 0) { // avoid weird excel error
+          break;
+        }
+        set.add(row.getCell(0).getStringCellValue());
+      }
+    }
+  }
+
+  // every issuer in one of the regions, round robin
+  private static void writeRegions(String[] files, int issuers) throws IOException {
+    ExcelOutput[] outputs = new ExcelOutput[files.length];
+    for (int i = 0; i < files.length; i++) {
+      outputs[i] = new ExcelOutput(files[i]);
+    }
+    for (int i = 0; i < issuers; i++) {
+      outputs[i % files.length].nextRow("Issuers").createCell(0).setCellValue("Issuer " + i);
+    }
+    for (ExcelOutput output : outputs) {
+      output.close();
+    }
+  }
+}
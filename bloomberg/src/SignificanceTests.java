@@ -0,0 +1,746 @@
+import org.apache.poi.ss.usermodel.Row;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/** The tests of statistical_testing.R on the values of every category, without the export to R
+ * shapiroWilk is R's shapiro.test (Royston's algorithm AS R94, as in R's swilk.c) and wilcoxon is R's one sample
+ * wilcox.test(x, mu, conf.int = TRUE, conf.level) with its defaults: the exact distribution below 50 values without ties or
+ * zeros, otherwise the normal approximation with continuity correction, and the Hodges-Lehmann estimate and confidence
+ * interval (the Walsh averages when exact, otherwise R's root search on the asymptotic statistic with the same tolerance)
+ * Normal quantiles and probabilities are R's too (Wichura's AS241 and Cody's algorithm), so the results agree with R's
+ * to the digits it prints. Both work on primitive arrays and keep no state, categories are tested in parallel **/
+public class SignificanceTests {
+
+    public static final double CONFIDENCE_LEVEL = 0.999; // what statistical_testing.R asked for
+    public static final String SIGNIFICANCE_SHEET = "Significance";
+    private static final String[] HEADER = {"category", "n", "W", "normality p-value", "V", "signed rank p-value", "pseudo median",
+            "CI low", "CI high", "confidence level", "method"};
+    static final int MAX_SHAPIRO_WILK = 5000; // R refuses larger samples, the p-value approximation is not fitted past it
+    private static final int EXACT_BELOW = 50;
+    private static final double ROOT_TOLERANCE = 1e-4; // what wilcox.test passes to uniroot
+    private static final int ROOT_ITERATIONS = 1000;
+
+    /** W and its p-value, NaN for fewer than 3 or more than MAX_SHAPIRO_WILK values or identical values **/
+    public static class ShapiroWilk {
+        private final int n;
+        private final double w;
+        private final double pValue;
+
+        ShapiroWilk(int n, double w, double pValue) {
+            this.n = n;
+            this.w = w;
+            this.pValue = pValue;
+        }
+
+        public int getN() {
+            return n;
+        }
+
+        public double getW() {
+            return w;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+    }
+
+    /** V (the sum of the ranks of the positive differences), its two-sided p-value, the pseudo median and its confidence interval
+     * The confidence level is the one achieved, below the requested level when the sample is too small for it (R warns) **/
+    public static class Wilcoxon {
+        private final int n;
+        private final double v;
+        private final double pValue;
+        private final double estimate;
+        private final double low;
+        private final double high;
+        private final double confidenceLevel;
+        private final boolean exact;
+
+        Wilcoxon(int n, double v, double pValue, double estimate, double low, double high, double confidenceLevel, boolean exact) {
+            this.n = n;
+            this.v = v;
+            this.pValue = pValue;
+            this.estimate = estimate;
+            this.low = low;
+            this.high = high;
+            this.confidenceLevel = confidenceLevel;
+            this.exact = exact;
+        }
+
+        /** Values tested, the differences equal to mu are left out as R does **/
+        public int getN() {
+            return n;
+        }
+
+        public double getV() {
+            return v;
+        }
+
+        public double getPValue() {
+            return pValue;
+        }
+
+        public double getEstimate() {
+            return estimate;
+        }
+
+        public double getLow() {
+            return low;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public double getConfidenceLevel() {
+            return confidenceLevel;
+        }
+
+        public boolean isExact() {
+            return exact;
+        }
+
+        public String getMethod() {
+            return exact ? "Wilcoxon signed rank exact test" : "Wilcoxon signed rank test with continuity correction";
+        }
+    }
+
+    /** Both tests of a category **/
+    public static class Result {
+        private final ShapiroWilk normality;
+        private final Wilcoxon location;
+
+        Result(ShapiroWilk normality, Wilcoxon location) {
+            this.normality = normality;
+            this.location = location;
+        }
+
+        public ShapiroWilk getNormality() {
+            return normality;
+        }
+
+        public Wilcoxon getLocation() {
+            return location;
+        }
+    }
+
+    /** Both tests on the values of every category of every dimension, mu = 0 at CONFIDENCE_LEVEL, on threads threads
+     * The results come back in the order of the dimensions and of their categories whatever the number of threads **/
+    public static List<Map<String, Result>> testAll(List<Map<String, double[]>> dimensions, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Map<String, ForkJoinTask<Result>>> tasks = new ArrayList<>();
+            for (Map<String, double[]> samples : dimensions) {
+                Map<String, ForkJoinTask<Result>> dimensionTasks = new LinkedHashMap<>();
+                for (Map.Entry<String, double[]> entry : samples.entrySet()) {
+                    double[] values = entry.getValue();
+                    dimensionTasks.put(entry.getKey(), pool.submit(() -> test(values)));
+                }
+                tasks.add(dimensionTasks);
+            }
+            List<Map<String, Result>> results = new ArrayList<>();
+            for (Map<String, ForkJoinTask<Result>> dimensionTasks : tasks) {
+                Map<String, Result> dimensionResults = new LinkedHashMap<>();
+                for (Map.Entry<String, ForkJoinTask<Result>> entry : dimensionTasks.entrySet()) {
+                    dimensionResults.put(entry.getKey(), entry.getValue().join());
+                }
+                results.add(dimensionResults);
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** What statistical_testing.R printed for its column of values **/
+    public static Result test(double[] x) {
+        return new Result(shapiroWilk(x), wilcoxon(x, 0, CONFIDENCE_LEVEL));
+    }
+
+    /** Writes a row per category: n, W and its p-value, V and its p-value, the pseudo median and its interval **/
+    public static void write(ExcelOutput output, Map<String, Result> results) {
+        Row header = output.nextRow(SIGNIFICANCE_SHEET);
+        for (int i = 0; i < HEADER.length; i++) {
+            header.createCell(i).setCellValue(HEADER[i]);
+        }
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            ShapiroWilk normality = entry.getValue().getNormality();
+            Wilcoxon location = entry.getValue().getLocation();
+            Row row = output.nextRow(SIGNIFICANCE_SHEET);
+            row.createCell(0).setCellValue(entry.getKey());
+            row.createCell(1).setCellValue(normality.getN());
+            number(row, 2, normality.getW());
+            number(row, 3, normality.getPValue());
+            number(row, 4, location.getV());
+            number(row, 5, location.getPValue());
+            number(row, 6, location.getEstimate());
+            number(row, 7, location.getLow());
+            number(row, 8, location.getHigh());
+            number(row, 9, location.getConfidenceLevel());
+            row.createCell(10).setCellValue(location.getMethod());
+        }
+    }
+
+    /** R's shapiro.test, NaN values are left out **/
+    public static ShapiroWilk shapiroWilk(double[] values) {
+        double[] x = withoutNaN(values);
+        Arrays.sort(x);
+        int n = x.length;
+        if (n < 3 || n > MAX_SHAPIRO_WILK || x[n - 1] - x[0] < 1e-10) {
+            return new ShapiroWilk(n, Double.NaN, Double.NaN);
+        }
+        int nn2 = n / 2;
+        double[] a = new double[nn2 + 1]; // from 1, as in swilk.c
+        double an = n;
+        if (n == 3) {
+            a[1] = Math.sqrt(0.5);
+        } else {
+            double an25 = an + 0.25;
+            double summ2 = 0;
+            for (int i = 1; i <= nn2; i++) {
+                a[i] = qnorm((i - 0.375) / an25); // negative, the normalisation below flips them
+                summ2 += a[i] * a[i];
+            }
+            summ2 *= 2;
+            double ssumm2 = Math.sqrt(summ2);
+            double rsn = 1 / Math.sqrt(an);
+            double a1 = poly(C1, rsn) - a[1] / ssumm2;
+            int i1;
+            double fac;
+            if (n > 5) {
+                i1 = 3;
+                double a2 = -a[2] / ssumm2 + poly(C2, rsn);
+                fac = Math.sqrt((summ2 - 2 * (a[1] * a[1]) - 2 * (a[2] * a[2])) / (1 - 2 * (a1 * a1) - 2 * (a2 * a2)));
+                a[2] = a2;
+            } else {
+                i1 = 2;
+                fac = Math.sqrt((summ2 - 2 * (a[1] * a[1])) / (1 - 2 * (a1 * a1)));
+            }
+            a[1] = a1;
+            for (int i = i1; i <= nn2; i++) {
+                a[i] /= -fac;
+            }
+        }
+
+        double range = x[n - 1] - x[0];
+        double sx = x[0] / range;
+        double sa = -a[1];
+        for (int i = 1, j = n - 1; i < n; j--) {
+            sx += x[i] / range;
+            i++;
+            if (i != j) {
+                sa += Integer.signum(i - j) * a[Math.min(i, j)];
+            }
+        }
+        sa /= n;
+        sx /= n;
+        double ssa = 0;
+        double ssx = 0;
+        double sax = 0;
+        for (int i = 0, j = n - 1; i < n; i++, j--) {
+            double asa = i != j ? Integer.signum(i - j) * a[1 + Math.min(i, j)] - sa : -sa;
+            double xsx = x[i] / range - sx;
+            ssa += asa * asa;
+            ssx += xsx * xsx;
+            sax += asa * xsx;
+        }
+        // 1 - W, without the rounding error of W very near 1
+        double ssassx = Math.sqrt(ssa * ssx);
+        double w1 = (ssassx - sax) * (ssassx + sax) / (ssa * ssx);
+        double w = 1 - w1;
+
+        if (n == 3) { // exact
+            return new ShapiroWilk(n, w, Math.max(0, 6 / Math.PI * (Math.asin(Math.sqrt(w)) - Math.PI / 3)));
+        }
+        double y = Math.log(w1);
+        double m;
+        double s;
+        if (n <= 11) {
+            double gamma = poly(G, an);
+            if (y >= gamma) {
+                return new ShapiroWilk(n, w, 1e-99);
+            }
+            y = -Math.log(gamma - y);
+            m = poly(C3, an);
+            s = Math.exp(poly(C4, an));
+        } else {
+            double logN = Math.log(an);
+            m = poly(C5, logN);
+            s = Math.exp(poly(C6, logN));
+        }
+        return new ShapiroWilk(n, w, pnorm((y - m) / s, false));
+    }
+
+    /** R's wilcox.test(x, mu = mu, conf.int = TRUE, conf.level = confidenceLevel), two-sided, NaN values are left out **/
+    public static Wilcoxon wilcoxon(double[] values, double mu, double confidenceLevel) {
+        double[] finite = withoutNaN(values);
+        int n = 0;
+        for (double value : finite) {
+            if (value - mu != 0) {
+                finite[n++] = value - mu;
+            }
+        }
+        boolean zeros = n < finite.length;
+        double[] x = Arrays.copyOf(finite, n);
+        if (n == 0) {
+            return new Wilcoxon(0, 0, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, false);
+        }
+        SignedRanks ranks = new SignedRanks(n);
+        ranks.rank(x, 0);
+        double alpha = 1 - confidenceLevel;
+
+        if (n < EXACT_BELOW && !ranks.ties && !zeros) {
+            double[] counts = signedRankCounts(n);
+            double p = ranks.v > n * (n + 1) / 4.0 ? 1 - psignrank(counts, n, ranks.v - 1) : psignrank(counts, n, ranks.v);
+            double[] walsh = new double[n * (n + 1) / 2]; // the Walsh averages, (x_i + x_j) / 2 for i <= j
+            int k = 0;
+            for (int i = 0; i < n; i++) {
+                for (int j = i; j < n; j++) {
+                    walsh[k++] = (x[i] + mu + x[j] + mu) / 2;
+                }
+            }
+            Arrays.sort(walsh);
+            int qu = qsignrank(counts, n, alpha / 2);
+            if (qu == 0) {
+                qu = 1;
+            }
+            int ql = n * (n + 1) / 2 - qu;
+            double achievedAlpha = 2 * psignrank(counts, n, qu - 1);
+            double level = achievedAlpha - alpha > alpha / 2
+                    ? 1 - new BigDecimal(achievedAlpha).round(new MathContext(2)).doubleValue() : confidenceLevel;
+            return new Wilcoxon(n, ranks.v, Math.min(2 * p, 1), median(walsh), walsh[qu - 1], walsh[ql], level, true);
+        }
+
+        double v = ranks.v; // the interval's search ranks again
+        double z = v - n * (n + 1) / 4.0;
+        double sigma = Math.sqrt(n * (n + 1) * (2.0 * n + 1) / 24 - ranks.tieSum / 48);
+        z = (z - Math.signum(z) * 0.5) / sigma;
+        double p = 2 * Math.min(pnorm(z, true), pnorm(z, false));
+
+        for (int i = 0; i < n; i++) {
+            x[i] += mu;
+        }
+        double min = x[0];
+        double max = x[0];
+        for (double value : x) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        double wMin = asymptotic(x, min, ranks, true);
+        double wMax = asymptotic(x, max, ranks, true);
+        if (Double.isNaN(wMin) || Double.isNaN(wMax)) { // all values tied, R stops here
+            return new Wilcoxon(n, v, p, Double.NaN, Double.NaN, Double.NaN, Double.NaN, false);
+        }
+        // R doubles alpha until the statistic at the smallest and largest value brackets both quantiles, with few distinct values
+        // it can't reach the requested ones, and then reports the level it did reach
+        double zq = -qnorm(alpha / 2);
+        while (wMin - zq < 0 || wMax + zq > 0) {
+            alpha *= 2;
+            zq = -qnorm(alpha / 2);
+        }
+        double level = alpha >= 1 || 1 - confidenceLevel < alpha * 0.75 ? 1 - Math.min(1, alpha) : confidenceLevel;
+        double low;
+        double high;
+        if (alpha < 1) {
+            low = root(x, ranks, true, zq, min, max, wMin - zq, wMax - zq);
+            high = root(x, ranks, true, -zq, min, max, wMin + zq, wMax + zq);
+        } else {
+            double[] sorted = x.clone();
+            Arrays.sort(sorted);
+            low = median(sorted);
+            high = low;
+        }
+        double estimate = root(x, ranks, false, 0, min, max, asymptotic(x, min, ranks, false), asymptotic(x, max, ranks, false));
+        return new Wilcoxon(n, v, p, estimate, low, high, level, false);
+    }
+
+    /** Ranks of |x - d| over the differences that are not 0, with the ties averaged as R's rank does **/
+    private static final class SignedRanks {
+        private final double[] positive;
+        private final double[] negative;
+        private int n; // differences that are not 0
+        private double v; // sum of the ranks of the positive differences
+        private double tieSum; // sum of t^3 - t over the groups of t tied ranks
+        private boolean ties;
+
+        SignedRanks(int capacity) {
+            positive = new double[capacity];
+            negative = new double[capacity];
+        }
+
+        // the positive and negative magnitudes are sorted apart and merged, no boxing or index sort
+        void rank(double[] x, double d) {
+            int p = 0;
+            int m = 0;
+            for (double value : x) {
+                double difference = value - d;
+                if (difference > 0) {
+                    positive[p++] = difference;
+                } else if (difference < 0) {
+                    negative[m++] = Math.abs(difference);
+                }
+            }
+            Arrays.sort(positive, 0, p);
+            Arrays.sort(negative, 0, m);
+            n = p + m;
+            v = 0;
+            tieSum = 0;
+            ties = false;
+            int i = 0;
+            int j = 0;
+            int below = 0;
+            while (i < p || j < m) {
+                double magnitude = j == m || i < p && positive[i] <= negative[j] ? positive[i] : negative[j];
+                int positives = 0;
+                while (i < p && positive[i] == magnitude) {
+                    i++;
+                    positives++;
+                }
+                int tied = positives;
+                while (j < m && negative[j] == magnitude) {
+                    j++;
+                    tied++;
+                }
+                v += positives * (below + (tied + 1) / 2.0);
+                if (tied > 1) {
+                    ties = true;
+                    tieSum += (double) tied * tied * tied - tied;
+                }
+                below += tied;
+            }
+        }
+    }
+
+    // the standardised signed rank statistic of x - d, with R's continuity correction if corrected, NaN if it has no variance
+    private static double asymptotic(double[] x, double d, SignedRanks ranks, boolean corrected) {
+        ranks.rank(x, d);
+        int n = ranks.n;
+        double z = ranks.v - n * (n + 1) / 4.0;
+        double sigma = Math.sqrt(n * (n + 1) * (2.0 * n + 1) / 24 - ranks.tieSum / 48);
+        if (sigma == 0) {
+            return Double.NaN;
+        }
+        return (z - (corrected ? Math.signum(z) * 0.5 : 0)) / sigma;
+    }
+
+    // where the decreasing statistic crosses zq, as wilcox.test's uniroot; the interval's bounds are bracketed by the alpha loop
+    private static double root(double[] x, SignedRanks ranks, boolean corrected, double zq, double lower, double upper,
+                               double fLower, double fUpper) {
+        if (fLower * fUpper > 0) { // the estimate's search, R's uniroot stops on it
+            return Double.NaN;
+        }
+        return zeroin(x, ranks, corrected, zq, lower, upper, fLower, fUpper);
+    }
+
+    // R's R_zeroin2 (Brent's method) on asymptotic - zq, with the tolerance and iterations of wilcox.test
+    private static double zeroin(double[] x, SignedRanks ranks, boolean corrected, double zq, double ax, double bx,
+                                 double fa, double fb) {
+        double a = ax;
+        double b = bx;
+        double c = a;
+        double fc = fa;
+        if (fa == 0) {
+            return a;
+        }
+        if (fb == 0) {
+            return b;
+        }
+        for (int iteration = 0; iteration <= ROOT_ITERATIONS; iteration++) {
+            double previousStep = b - a;
+            if (Math.abs(fc) < Math.abs(fb)) {
+                a = b;
+                b = c;
+                c = a;
+                fa = fb;
+                fb = fc;
+                fc = fa;
+            }
+            double tolerance = 2 * Math.ulp(1.0) * Math.abs(b) + ROOT_TOLERANCE / 2;
+            double step = (c - b) / 2;
+            if (Math.abs(step) <= tolerance || fb == 0) {
+                return b;
+            }
+            if (Math.abs(previousStep) >= tolerance && Math.abs(fa) > Math.abs(fb)) { // interpolation
+                double p;
+                double q;
+                double cb = c - b;
+                if (a == c) { // linear
+                    double t1 = fb / fa;
+                    p = cb * t1;
+                    q = 1 - t1;
+                } else { // inverse quadratic
+                    q = fa / fc;
+                    double t1 = fb / fc;
+                    double t2 = fb / fa;
+                    p = t2 * (cb * q * (q - t1) - (b - a) * (t1 - 1));
+                    q = (q - 1) * (t1 - 1) * (t2 - 1);
+                }
+                if (p > 0) {
+                    q = -q;
+                } else {
+                    p = -p;
+                }
+                if (p < 0.75 * cb * q - Math.abs(tolerance * q) / 2 && p < Math.abs(previousStep * q / 2)) {
+                    step = p / q;
+                }
+            }
+            if (Math.abs(step) < tolerance) {
+                step = step > 0 ? tolerance : -tolerance;
+            }
+            a = b;
+            fa = fb;
+            b += step;
+            fb = asymptotic(x, b, ranks, corrected) - zq;
+            if (fb > 0 && fc > 0 || fb < 0 && fc < 0) {
+                c = a;
+                fc = fa;
+            }
+        }
+        return b;
+    }
+
+    // counts of the subsets of 1..n by their sum, the null distribution of V times 2^n (exact in a double below 2^53)
+    private static double[] signedRankCounts(int n) {
+        int u = n * (n + 1) / 2;
+        double[] counts = new double[u + 1];
+        counts[0] = 1;
+        for (int k = 1; k <= n; k++) {
+            for (int s = Math.min(u, k * (k + 1) / 2); s >= k; s--) {
+                counts[s] += counts[s - k];
+            }
+        }
+        return counts;
+    }
+
+    // P(V <= q), summed from the nearer tail as R's psignrank
+    private static double psignrank(double[] counts, int n, double q) {
+        double x = Math.floor(q + 1e-7);
+        int u = n * (n + 1) / 2;
+        if (x < 0) {
+            return 0;
+        }
+        if (x >= u) {
+            return 1;
+        }
+        double f = Math.exp(-n * Math.log(2));
+        double p = 0;
+        if (x <= u / 2.0) {
+            for (int i = 0; i <= x; i++) {
+                p += counts[i] * f;
+            }
+            return p;
+        }
+        for (int i = 0; i < u - x; i++) {
+            p += counts[i] * f;
+        }
+        return 1 - p;
+    }
+
+    // smallest q with P(V <= q) >= p, for p <= 0.5 as the intervals need
+    private static int qsignrank(double[] counts, int n, double p) {
+        double f = Math.exp(-n * Math.log(2));
+        double sum = 0;
+        p -= 10 * Math.ulp(1.0);
+        int q = 0;
+        while (true) {
+            sum += counts[q] * f;
+            if (sum >= p) {
+                return q;
+            }
+            q++;
+        }
+    }
+
+    private static double median(double[] sorted) {
+        int n = sorted.length;
+        return n % 2 == 1 ? sorted[n / 2] : (sorted[n / 2 - 1] + sorted[n / 2]) / 2;
+    }
+
+    private static double[] withoutNaN(double[] values) {
+        double[] x = new double[values.length];
+        int n = 0;
+        for (double value : values) {
+            if (!Double.isNaN(value)) {
+                x[n++] = value;
+            }
+        }
+        return n == x.length ? x : Arrays.copyOf(x, n);
+    }
+
+    // polynomial cc[0] + cc[1] x + cc[2] x^2 + ... (swilk.c's poly)
+    private static double poly(double[] cc, double x) {
+        double result = cc[0];
+        if (cc.length > 1) {
+            double p = x * cc[cc.length - 1];
+            for (int j = cc.length - 2; j > 0; j--) {
+                p = (p + cc[j]) * x;
+            }
+            result += p;
+        }
+        return result;
+    }
+
+    // swilk.c's polynomial approximations of the coefficients and of the distribution of log(1 - W)
+    private static final double[] G = {-2.273, 0.459};
+    private static final double[] C1 = {0, 0.221157, -0.147981, -2.07119, 4.434685, -2.706056};
+    private static final double[] C2 = {0, 0.042981, -0.293762, -1.752461, 5.682633, -3.582633};
+    private static final double[] C3 = {0.544, -0.39978, 0.025054, -6.714e-4};
+    private static final double[] C4 = {1.3822, -0.77857, 0.062767, -0.0020322};
+    private static final double[] C5 = {-1.5861, -0.31082, -0.083751, 0.0038915};
+    private static final double[] C6 = {-0.4803, -0.082676, 0.0030302};
+
+    /** Standard normal quantile, Wichura's AS241 (R's qnorm) **/
+    static double qnorm(double p) {
+        if (p <= 0 || p >= 1) {
+            return p == 0 ? Double.NEGATIVE_INFINITY : p == 1 ? Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        double q = p - 0.5;
+        if (Math.abs(q) <= 0.425) {
+            double r = 0.180625 - q * q;
+            return q * (((((((r * 2509.0809287301226727 + 33430.575583588128105) * r + 67265.770927008700853) * r
+                    + 45921.953931549871457) * r + 13731.693765509461125) * r + 1971.5909503065514427) * r + 133.14166789178437745) * r
+                    + 3.387132872796366608)
+                    / (((((((r * 5226.495278852545925 + 28729.085735721942674) * r + 39307.89580009271061) * r
+                    + 21213.794301586595867) * r + 5394.1960214247511077) * r + 687.1870074920579083) * r + 42.313330701600911252) * r + 1);
+        }
+        double r = Math.sqrt(-Math.log(q < 0 ? p : 1 - p));
+        double value;
+        if (r <= 5) {
+            r -= 1.6;
+            value = (((((((r * 7.7454501427834140764e-4 + 0.0227238449892691845833) * r + 0.24178072517745061177) * r
+                    + 1.27045825245236838258) * r + 3.64784832476320460504) * r + 5.7694972214606914055) * r + 4.6303378461565452959) * r
+                    + 1.42343711074968357734)
+                    / (((((((r * 1.05075007164441684324e-9 + 5.475938084995344946e-4) * r + 0.0151986665636164571966) * r
+                    + 0.14810397642748007459) * r + 0.68976733498510000455) * r + 1.6763848301838038494) * r + 2.05319162663775882187) * r + 1);
+        } else {
+            r -= 5;
+            value = (((((((r * 2.01033439929228813265e-7 + 2.71155556874348757815e-5) * r + 0.0012426609473880784386) * r
+                    + 0.026532189526576123093) * r + 0.29656057182850489123) * r + 1.7848265399172913358) * r + 5.4637849111641143699) * r
+                    + 6.6579046435011037772)
+                    / (((((((r * 2.04426310338993978564e-15 + 1.4215117583164458887e-7) * r + 1.8463183175100546818e-5) * r
+                    + 7.868691311456132591e-4) * r + 0.0148753612908506148525) * r + 0.13692988092273580531) * r + 0.59983220655588793769) * r + 1);
+        }
+        return q < 0 ? -value : value;
+    }
+
+    /** Standard normal probability of the lower or the upper tail, Cody's algorithm (R's pnorm) **/
+    static double pnorm(double x, boolean lowerTail) {
+        if (Double.isNaN(x)) {
+            return Double.NaN;
+        }
+        double y = Math.abs(x);
+        double cum;
+        double ccum;
+        if (y <= 0.67448975) {
+            double xnum = 0;
+            double xden = 0;
+            if (y > Math.ulp(1.0) * 0.5) {
+                double xsq = x * x;
+                xnum = PNORM_A[4] * xsq;
+                xden = xsq;
+                for (int i = 0; i < 3; i++) {
+                    xnum = (xnum + PNORM_A[i]) * xsq;
+                    xden = (xden + PNORM_B[i]) * xsq;
+                }
+            }
+            double temp = x * (xnum + PNORM_A[3]) / (xden + PNORM_B[3]);
+            return lowerTail ? 0.5 + temp : 0.5 - temp;
+        } else if (y <= Math.sqrt(32)) {
+            double xnum = PNORM_C[8] * y;
+            double xden = y;
+            for (int i = 0; i < 7; i++) {
+                xnum = (xnum + PNORM_C[i]) * y;
+                xden = (xden + PNORM_D[i]) * y;
+            }
+            double temp = (xnum + PNORM_C[7]) / (xden + PNORM_D[7]);
+            double xsq = Math.floor(y * 16) / 16;
+            double del = (y - xsq) * (y + xsq);
+            cum = Math.exp(-xsq * xsq * 0.5) * Math.exp(-del * 0.5) * temp;
+            ccum = 1 - cum;
+        } else if (y < 37.5193) {
+            double xsq = 1 / (x * x);
+            double xnum = PNORM_P[5] * xsq;
+            double xden = xsq;
+            for (int i = 0; i < 4; i++) {
+                xnum = (xnum + PNORM_P[i]) * xsq;
+                xden = (xden + PNORM_Q[i]) * xsq;
+            }
+            double temp = xsq * (xnum + PNORM_P[4]) / (xden + PNORM_Q[4]);
+            temp = (1 / Math.sqrt(2 * Math.PI) - temp) / y;
+            xsq = Math.floor(y * 16) / 16;
+            double del = (y - xsq) * (y + xsq);
+            cum = Math.exp(-xsq * xsq * 0.5) * Math.exp(-del * 0.5) * temp;
+            ccum = 1 - cum;
+        } else {
+            cum = 0;
+            ccum = 1;
+        }
+        if (x > 0) { // cum is the tail beyond |x|
+            double temp = cum;
+            cum = ccum;
+            ccum = temp;
+        }
+        return lowerTail ? cum : ccum;
+    }
+
+    private static final double[] PNORM_A = {2.2352520354606839287, 161.02823106855587881, 1067.6894854603709582,
+            18154.981253343561249, 0.065682337918207449113};
+    private static final double[] PNORM_B = {47.20258190468824187, 976.09855173777669322, 10260.932208618978205,
+            45507.789335026729956};
+    private static final double[] PNORM_C = {0.39894151208813466764, 8.8831497943883759412, 93.506656132177855979,
+            597.27027639480026226, 2494.5375852903726711, 6848.1904505362823326, 11602.651437647350124, 9842.7148383839780218,
+            1.0765576773720192317e-8};
+    private static final double[] PNORM_D = {22.266688044328115691, 235.38790178262499861, 1519.377599407554805,
+            6485.558298266760755, 18615.571640885098091, 34900.952721145977266, 38912.003286093271411, 19685.429676859990727};
+    private static final double[] PNORM_P = {0.21589853405795699, 0.1274011611602473639, 0.022235277870649807,
+            0.001421619193227893466, 2.9112874951168792e-5, 0.02307344176494017303};
+    private static final double[] PNORM_Q = {1.28426009614491121, 0.468238212480865118, 0.0659881378689285515,
+            0.00378239633202758244, 7.29751555083966205e-5};
+
+    // blank instead of a NaN, which excel shows as an error
+    private static void number(Row row, int column, double value) {
+        if (!Double.isNaN(value)) {
+            row.createCell(column).setCellValue(value);
+        }
+    }
+
+    // the R script's steps on the first column of a csv (header on the first line), printed like R prints them
+    public static void main(String[] args) throws IOException {
+        String file = args.length > 0 ? args[0] : "/Users/Panos/Desktop/Book1.csv";
+        List<Double> column = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            reader.readLine();
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String cell = line.split(",", -1)[0].trim();
+                try {
+                    column.add(Double.parseDouble(cell));
+                } catch (NumberFormatException e) {
+                    column.add(Double.NaN); // as.numeric gives NA
+                }
+            }
+        }
+        double[] x = new double[column.size()];
+        for (int i = 0; i < x.length; i++) {
+            x[i] = column.get(i);
+        }
+        Result result = test(x);
+        System.out.printf("Shapiro-Wilk normality test%nW = %.5g, p-value = %.4g%n%n", result.getNormality().getW(),
+                result.getNormality().getPValue());
+        Wilcoxon wilcoxon = result.getLocation();
+        System.out.printf("%s%nV = %.0f, p-value = %.4g%n%.1f percent confidence interval:%n %.7g %.7g%n(pseudo)median %.7g%n",
+                wilcoxon.getMethod(), wilcoxon.getV(), wilcoxon.getPValue(), wilcoxon.getConfidenceLevel() * 100, wilcoxon.getLow(),
+                wilcoxon.getHigh(), wilcoxon.getEstimate());
+    }
+}
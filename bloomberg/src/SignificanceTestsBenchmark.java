@@ -0,0 +1,92 @@
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// First checks SignificanceTests against what R prints for fixed samples, then times the tests of many synthetic categories
+// on one thread vs on every core (the results must be the same either way)
+// The fixtures are R's own outputs: shapiro.test on three mtcars columns, and the paired wilcox.test example of ?wilcox.test
+// (Hollander & Wolfe's depression scores, V = 40 with a one-sided p-value of 0.01953, so 0.03906 two-sided)
+// The tied one is traced through wilcox.test's source, R isn't installed here: wilcox.test(c(1, 1, 2, 3, 4), conf.int = TRUE,
+// conf.level = 0.999) doubles alpha from 0.001 to 0.256 before the statistic at 1 and 4 brackets both quantiles, so R warns and
+// reports a 74.4 percent interval. The statistic steps across the quantiles at 1 and 3, R's root search (tolerance 1e-4) ends next to them
+// usage: SignificanceTestsBenchmark [categories] [values per category]
+public class SignificanceTestsBenchmark {
+
+  private static final double[] MPG = {21.0, 21.0, 22.8, 21.4, 18.7, 18.1, 14.3, 24.4, 22.8, 19.2, 17.8, 16.4, 17.3, 15.2, 10.4, 10.4,
+      14.7, 32.4, 30.4, 33.9, 21.5, 15.5, 15.2, 13.3, 19.2, 27.3, 26.0, 30.4, 15.8, 19.7, 15.0, 21.4};
+  private static final double[] WT = {2.620, 2.875, 2.320, 3.215, 3.440, 3.460, 3.570, 3.190, 3.150, 3.440, 3.440, 4.070, 3.730, 3.780,
+      5.250, 5.424, 5.345, 2.200, 1.615, 1.835, 2.465, 3.520, 3.435, 3.840, 3.845, 1.935, 2.140, 1.513, 3.170, 2.770, 3.570, 2.780};
+  private static final double[] HP = {110, 110, 93, 110, 175, 105, 245, 62, 95, 123, 123, 180, 180, 180, 205, 215, 230, 66, 52, 65, 97,
+      150, 150, 245, 175, 66, 91, 113, 264, 175, 335, 109};
+  private static final double[] DEPRESSION_X = {1.83, 0.50, 1.62, 2.48, 1.68, 1.88, 1.55, 3.06, 1.30};
+  private static final double[] DEPRESSION_Y = {0.878, 0.647, 0.598, 2.05, 1.06, 1.29, 1.06, 3.14, 1.29};
+
+  public static void main(String[] args) {
+    checkFixtures();
+    int categories = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+    int values = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+    Random random = new Random(25);
+    Map<String, double[]> samples = new LinkedHashMap<>();
+    for (int c = 0; c < categories; c++) {
+      double[] x = new double[values / (1 + c % 4)]; // some small categories, and yields quoted to 2 decimals so there are ties
+      double shift = random.nextGaussian() * 0.2;
+      for (int i = 0; i < x.length; i++) {
+        x[i] = Math.round((random.nextGaussian() + shift) * 100) / 100.0;
+      }
+      samples.put("category " + c, x);
+    }
+    List<Map<String, double[]>> dimensions = new ArrayList<>();
+    dimensions.add(samples);
+    int cores = Runtime.getRuntime().availableProcessors();
+    System.out.printf("%d categories of up to %d values, %d cores%n", categories, values, cores);
+    for (int round = 0; round < 3; round++) { // the first round warms the JIT up
+      long start = System.nanoTime();
+      List<Map<String, SignificanceTests.Result>> serial = SignificanceTests.testAll(dimensions, 1);
+      long one = System.nanoTime() - start;
+      start = System.nanoTime();
+      List<Map<String, SignificanceTests.Result>> parallel = SignificanceTests.testAll(dimensions, cores);
+      long all = System.nanoTime() - start;
+      for (String category : samples.keySet()) {
+        SignificanceTests.Wilcoxon a = serial.get(0).get(category).getLocation();
+        SignificanceTests.Wilcoxon b = parallel.get(0).get(category).getLocation();
+        if (a.getPValue() != b.getPValue() || a.getLow() != b.getLow() || a.getHigh() != b.getHigh()
+            || serial.get(0).get(category).getNormality().getW() != parallel.get(0).get(category).getNormality().getW()) {
+          throw new IllegalStateException("one thread and " + cores + " disagree on " + category);
+        }
+      }
+      System.out.printf("round %d: one thread %.0fms (%.2f ms/category), %d threads %.0fms (%.1fx)%n", round, one / 1e6,
+          one / 1e6 / categories, cores, all / 1e6, (double) one / all);
+    }
+  }
+
+  // the results printed the way R prints them must read the same
+  private static void checkFixtures() {
+    check("mtcars$mpg", shapiro(MPG), "W = 0.94756, p-value = 0.1229");
+    check("mtcars$wt", shapiro(WT), "W = 0.94326, p-value = 0.09265");
+    check("mtcars$hp", shapiro(HP), "W = 0.93342, p-value = 0.04881");
+    double[] differences = new double[DEPRESSION_X.length];
+    for (int i = 0; i < differences.length; i++) {
+      differences[i] = DEPRESSION_X[i] - DEPRESSION_Y[i];
+    }
+    SignificanceTests.Wilcoxon wilcoxon = SignificanceTests.wilcoxon(differences, 0, 0.95);
+    check("depression", String.format("V = %.0f, p-value = %.4g", wilcoxon.getV(), wilcoxon.getPValue()), "V = 40, p-value = 0.03906");
+    SignificanceTests.Wilcoxon tied = SignificanceTests.wilcoxon(new double[]{1, 1, 2, 3, 4}, 0, 0.999);
+    check("tied", String.format("V = %.0f, p-value = %.4g, %.1f percent confidence interval: %.3f %.3f", tied.getV(), tied.getPValue(),
+        100 * tied.getConfidenceLevel(), tied.getLow(), tied.getHigh()),
+        "V = 15, p-value = 0.05791, 74.4 percent confidence interval: 1.000 3.000");
+    System.out.println("R fixtures ok");
+  }
+
+  private static String shapiro(double[] x) {
+    SignificanceTests.ShapiroWilk result = SignificanceTests.shapiroWilk(x);
+    return String.format("W = %.5g, p-value = %.4g", result.getW(), result.getPValue());
+  }
+
+  private static void check(String fixture, String actual, String expected) {
+    if (!actual.equals(expected)) {
+      throw new IllegalStateException(fixture + ": R prints " + expected + ", got " + actual);
+    }
+  }
+}
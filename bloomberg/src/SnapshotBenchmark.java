@@ -0,0 +1,139 @@
+import org.apache.poi.ss.usermodel.CellStyle;
+import org.apache.poi.ss.usermodel.FillPatternType;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+
+// Cold (parse the exports and write the snapshot) vs warm (load the snapshot) startup on synthetic exports,
+// checks the warm universe equals the parsed one and that touching a source invalidates the snapshot
+// usage: SnapshotBenchmark [conventional rows] [green rows]
+public class SnapshotBenchmark {
+
+  private static final String[] MOODYS = {"Aaa", "Aa1", "Aa2", "Aa3", "A1", "A2", "A3", "Baa1", "Baa2", "Baa3", "#N/A N/A"};
+  private static final String[] SNP = {"AAA", "AA+", "AA", "AA-", "A+", "A", "A-", "BBB+", "BBB", "BBB-", "#N/A N/A"};
+  private static final String[] CCY = {"EUR", "USD", "GBP", "JPY"};
+
+  public static void main(String[] args) throws IOException {
+    int conventionalRows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+    int greenRows = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+    File conventional = new File("snapshot_conventional_" + conventionalRows + ".xlsx");
+    File green = new File("snapshot_green_" + greenRows + ".xlsx");
+    if (!conventional.exists()) {
+      writeConventional(conventional, conventionalRows);
+    }
+    if (!green.exists()) {
+      writeGreen(green, greenRows);
+    }
+    String[] greenFiles = {green.getPath()};
+    String[] conventionalFiles = {conventional.getPath()};
+    File snapshot = new File("benchmark_universe.snapshot");
+    snapshot.delete();
+
+    long start = System.nanoTime();
+    BloombergMain cold = new BloombergMain();
+    cold.loadUniverse(snapshot.getPath(), true, greenFiles, conventionalFiles);
+    long coldTime = System.nanoTime() - start;
+
+    start = System.nanoTime();
+    BloombergMain warm = new BloombergMain();
+    warm.loadUniverse(snapshot.getPath(), true, greenFiles, conventionalFiles);
+    long warmTime = System.nanoTime() - start;
+
+    System.out.printf("cold %.2fs, warm %.3fs, %.0fx faster, snapshot %dKB, same universe=%b%n", coldTime / 1e9, warmTime / 1e9,
+        (double) coldTime / warmTime, snapshot.length() / 1024, describe(cold).equals(describe(warm)));
+
+    if (!green.setLastModified(green.lastModified() + 1000)) {
+      System.out.println("unable to touch " + green);
+      return;
+    }
+    start = System.nanoTime();
+    BloombergMain touched = new BloombergMain();
+    touched.loadUniverse(snapshot.getPath(), true, greenFiles, conventionalFiles);
+    System.out.printf("after touching a source: %.2fs (parsed again), same universe=%b%n", (System.nanoTime() - start) / 1e9,
+        describe(cold).equals(describe(touched)));
+  }
+
+  // every bond's fields in map order, the ids included
+  private static List<String> describe(BloombergMain universe) {
+    List<String> lines = new ArrayList<>();
+    for (Map.Entry<String, List<String>> entry : new TreeMap<>(universe.getConventionalBondsByIssuer()).entrySet()) {
+      for (String id : entry.getValue()) {
+        lines.add(entry.getKey() + " " + id + " " + fields(universe.getConventionalBonds().get(id)));
+      }
+    }
+    for (Map.Entry<String, List<BloombergMain.Bond>> entry : new TreeMap<>(universe.getGreenBondsByIssuer()).entrySet()) {
+      for (BloombergMain.Bond bond : entry.getValue()) {
+        lines.add(entry.getKey() + " " + fields(bond));
+      }
+    }
+    return lines;
+  }
+
+  private static String fields(BloombergMain.Bond bond) {
+    return bond.issuer + "|" + bond.moodysRating + "|" + bond.snpRating + "|" + bond.maturity + "|" + bond.maturityDate + "|"
+        + bond.issuanceTerm + "|" + bond.issuanceYear + "|" + bond.issuanceDate + "|" + bond.ccy + "|" + bond.green + "|" + bond.isin;
+  }
+
+  // issuer:figi rows under a light blue title row, like the FIGI exports
+  private static void writeConventional(File file, int rows) throws IOException {
+    try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+         FileOutputStream out = new FileOutputStream(file)) {
+      SXSSFSheet sheet = workbook.createSheet("Sheet1");
+      Row header = sheet.createRow(0);
+      header.createCell(0).setCellValue("Issuer Name");
+      header.createCell(1).setCellValue("FIGI");
+      header.getCell(0).setCellStyle(fill(workbook, StreamingSheetReader.LIGHT_BLUE));
+      for (int i = 0; i < rows; i++) {
+        Row row = sheet.createRow(i + 1);
+        row.createCell(0).setCellValue("Issuer " + (i % 5000));
+        row.createCell(1).setCellValue(String.format("BBG%09d", i));
+      }
+      workbook.write(out);
+      workbook.dispose();
+    }
+  }
+
+  // green bonds with the columns of the regional green bond exports, dates as dd/MM/yyyy
+  private static void writeGreen(File file, int rows) throws IOException {
+    Random random = new Random(42);
+    try (SXSSFWorkbook workbook = new SXSSFWorkbook(1000);
+         FileOutputStream out = new FileOutputStream(file)) {
+      SXSSFSheet sheet = workbook.createSheet("Sheet1");
+      CellStyle title = fill(workbook, StreamingSheetReader.LIGHT_BLUE);
+      String[] columns = {"Issuer Name", "Maturity", "Moody Rtg", "S&P Rating", "Currency", "Issue Date"};
+      Row header = sheet.createRow(0);
+      for (int i = 0; i < columns.length; i++) {
+        header.createCell(i).setCellValue(columns[i]);
+        header.getCell(i).setCellStyle(title);
+      }
+      for (int i = 0; i < rows; i++) {
+        int year = 2015 + random.nextInt(8);
+        String dayMonth = String.format("%02d/%02d/", 1 + random.nextInt(28), 1 + random.nextInt(12));
+        int rating = random.nextInt(MOODYS.length);
+        Row row = sheet.createRow(i + 1);
+        row.createCell(0).setCellValue("Issuer " + random.nextInt(5000));
+        row.createCell(1).setCellValue(random.nextInt(20) == 0 ? "#N/A Field Not Applicable" : dayMonth + (year + 2 + random.nextInt(30)));
+        row.createCell(2).setCellValue(MOODYS[rating]);
+        row.createCell(3).setCellValue(SNP[rating]);
+        row.createCell(4).setCellValue(CCY[random.nextInt(CCY.length)]);
+        row.createCell(5).setCellValue(dayMonth + year);
+      }
+      workbook.write(out);
+      workbook.dispose();
+    }
+  }
+
+  private static CellStyle fill(SXSSFWorkbook workbook, byte[] rgb) {
+    XSSFCellStyle style = (XSSFCellStyle) workbook.createCellStyle();
+    style.setFillForegroundColor(new XSSFColor(rgb, null));
+    style.setFillPattern(FillPatternType.SOLID_FOREGROUND);
+    return style;
+  }
+}
@@ -0,0 +1,215 @@
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFCellStyle;
+import org.apache.poi.xssf.usermodel.XSSFColor;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Reads the first sheet of an xlsx file row by row with POI's event API (XSSFReader + SAX)
+ * Only the current row is kept in memory, so the size of the input file does not matter
+ * Cell values are formatted the same way DataFormatter.formatCellValue formats them in the DOM path **/
+public class StreamingSheetReader {
+
+    public static final byte[] LIGHT_BLUE = new byte[]{91, -101, -43};
+    public static final byte[] DARK_RED = new byte[]{-64, 0, 0};
+
+    /** Fill colour of the first cell of a row, this is how the exports mark title and already processed rows **/
+    public enum Fill {
+        NONE,
+        LIGHT_BLUE, // title row
+        DARK_RED // row to skip
+    }
+
+    /** Callback for every row in the sheet, return false to stop reading (same as a break in the DOM loops) **/
+    public interface RowHandler {
+        boolean row(int rowNum, List<String> cells, Fill fill);
+    }
+
+    /** Streams the first sheet of the given file into the handler **/
+    public static void read(String fileName, RowHandler handler) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(new File(fileName), PackageAccess.READ)) {
+            XSSFReader reader = new XSSFReader(pkg);
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg);
+            StylesTable styles = reader.getStylesTable();
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            if (!sheets.hasNext()) {
+                return;
+            }
+            try (InputStream sheet = sheets.next()) {
+                XMLReader parser = XMLHelper.newXMLReader();
+                parser.setContentHandler(new SheetHandler(strings, styles, handler));
+                parser.parse(new InputSource(sheet));
+            }
+        } catch (StopReading e) {
+            // the handler asked us to stop, nothing left to do
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) { // OpenXML4J, SAX and parser configuration exceptions
+            throw new IOException("cannot stream " + fileName, e);
+        }
+    }
+
+    /** Thrown from inside the SAX callbacks to abort parsing early **/
+    private static class StopReading extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        StopReading() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** SAX handler for the sheetN.xml part, collects the cells of one row and hands them over on </row> **/
+    private static class SheetHandler extends DefaultHandler {
+        private final ReadOnlySharedStringsTable strings;
+        private final StylesTable styles;
+        private final RowHandler handler;
+        private final DataFormatter formatter = new DataFormatter();
+        private final Map<Integer, Fill> fillByStyle = new HashMap<>(); // style index -> fill, there are only a few styles per file
+
+        private final List<String> cells = new ArrayList<>();
+        private final StringBuilder value = new StringBuilder();
+        private int rowNum;
+        private int column;
+        private String type;
+        private int styleIdx;
+        private Fill fill;
+        private boolean inValue;
+
+        SheetHandler(ReadOnlySharedStringsTable strings, StylesTable styles, RowHandler handler) {
+            this.strings = strings;
+            this.styles = styles;
+            this.handler = handler;
+        }
+
+        @Override
+        public void startElement(String uri, String localName, String qName, Attributes attributes) {
+            switch (localName) {
+                case "row":
+                    cells.clear();
+                    fill = Fill.NONE;
+                    String r = attributes.getValue("r");
+                    rowNum = r == null ? rowNum + 1 : Integer.parseInt(r) - 1;
+                    break;
+                case "c":
+                    column = columnIndex(attributes.getValue("r"), cells.size());
+                    type = attributes.getValue("t");
+                    String s = attributes.getValue("s");
+                    styleIdx = s == null ? 0 : Integer.parseInt(s);
+                    value.setLength(0);
+                    if (column == 0) {
+                        fill = getFill(styleIdx);
+                    }
+                    break;
+                case "v":
+                case "t": // inline strings
+                    inValue = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            switch (localName) {
+                case "v":
+                case "t":
+                    inValue = false;
+                    break;
+                case "c":
+                    while (cells.size() < column) { // blank cells are not written in the xml
+                        cells.add("");
+                    }
+                    cells.add(formatValue());
+                    break;
+                case "row":
+                    if (!handler.row(rowNum, cells, fill)) {
+                        throw new StopReading();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void characters(char[] ch, int start, int length) {
+            if (inValue) {
+                value.append(ch, start, length);
+            }
+        }
+
+        private String formatValue() {
+            String raw = value.toString();
+            if (type == null || type.equals("n")) {
+                if (raw.isEmpty()) {
+                    return "";
+                }
+                XSSFCellStyle style = styles.getStyleAt(styleIdx);
+                if (style == null) {
+                    return formatter.formatRawCellContents(Double.parseDouble(raw), 0, "General");
+                }
+                return formatter.formatRawCellContents(Double.parseDouble(raw), style.getDataFormat(), style.getDataFormatString());
+            }
+            switch (type) {
+                case "s":
+                    return strings.getItemAt(Integer.parseInt(raw)).getString();
+                case "b":
+                    return raw.equals("1") ? "TRUE" : "FALSE";
+                default: // inlineStr, str (formula result) and e (error) are already text
+                    return raw;
+            }
+        }
+
+        private Fill getFill(int idx) {
+            Fill cached = fillByStyle.get(idx);
+            if (cached != null) {
+                return cached;
+            }
+            Fill result = Fill.NONE;
+            XSSFCellStyle style = styles.getStyleAt(idx);
+            if (style != null) {
+                XSSFColor color = style.getFillForegroundColorColor();
+                if (color != null && Arrays.equals(color.getRGB(), LIGHT_BLUE)) {
+                    result = Fill.LIGHT_BLUE;
+                } else if (color != null && Arrays.equals(color.getRGB(), DARK_RED)) {
+                    result = Fill.DARK_RED;
+                }
+            }
+            fillByStyle.put(idx, result);
+            return result;
+        }
+
+        /** Converts a cell reference such as "AB12" to a zero based column index **/
+        private static int columnIndex(String ref, int fallback) {
+            if (ref == null) {
+                return fallback;
+            }
+            int col = 0;
+            for (int i = 0; i < ref.length(); i++) {
+                char c = ref.charAt(i);
+                if (c < 'A' || c > 'Z') {
+                    break;
+                }
+                col = col * 26 + (c - 'A' + 1);
+            }
+            return col - 1;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/** One pass, constant memory statistics of a stream of values (the ytm differences of a category)
+ * Count, mean and variance are kept with Welford's update, min and max exactly, and the percentiles and the histogram
+ * come from a QuantileSketch. Statistics of partitions merge (Chan et al. for the mean and variance), so partitions can be
+ * aggregated in parallel and combined. NaN (a blank cell) is counted as missing and left out of everything else **/
+public class StreamingStats {
+
+    public static final int HISTOGRAM_BINS = 14; // what the notebooks plot
+
+    private long count = 0;
+    private double mean = 0;
+    private double m2 = 0; // sum of squared differences from the mean
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private long missing = 0;
+    private final QuantileSketch sketch;
+
+    public StreamingStats() {
+        this(new QuantileSketch());
+    }
+
+    public StreamingStats(QuantileSketch sketch) {
+        this.sketch = sketch;
+    }
+
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            missing++;
+            return;
+        }
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        sketch.add(value);
+    }
+
+    /** Adds the other partition's values to these statistics **/
+    public void merge(StreamingStats other) {
+        if (other.count > 0) {
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+            count = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+        missing += other.missing;
+        sketch.merge(other.sketch);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMissing() {
+        return missing;
+    }
+
+    /** NaN if there are no values **/
+    public double getMean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /** Sample variance (n - 1), NaN below two values **/
+    public double getVariance() {
+        return count < 2 ? Double.NaN : m2 / (count - 1);
+    }
+
+    public double getStandardDeviation() {
+        return Math.sqrt(getVariance());
+    }
+
+    public double getMin() {
+        return count == 0 ? Double.NaN : min;
+    }
+
+    public double getMax() {
+        return count == 0 ? Double.NaN : max;
+    }
+
+    /** Approximate quantile, within the sketch's relative accuracy and clamped to [min, max] **/
+    public double quantile(double q) {
+        return count == 0 ? Double.NaN : Math.max(min, Math.min(max, sketch.quantile(q)));
+    }
+
+    public QuantileSketch getSketch() {
+        return sketch;
+    }
+
+    /** Approximate counts of bins equal width bins from min to max, like matplotlib's hist(bins=bins), the last bin includes max
+     * The edges are only known once every value is in, so the bins are rebuilt from the sketch's ranks: a value within the sketch's
+     * relative accuracy of an edge can be counted in the bin next to its own. The counts add up to getCount() exactly **/
+    public long[] histogram(int bins) {
+        long[] counts = new long[bins];
+        if (count == 0) {
+            return counts;
+        }
+        double width = (max - min) / bins;
+        long below = 0;
+        for (int i = 0; i < bins - 1; i++) {
+            long upTo = Math.min(count, sketch.rank(Math.nextDown(min + (i + 1) * width))); // right-open bins
+            counts[i] = Math.max(0, upTo - below);
+            below = Math.max(below, upTo);
+        }
+        counts[bins - 1] = count - below;
+        return counts;
+    }
+
+    /** Lower edge of the bin, the upper edge is the next bin's lower edge (max for the last bin) **/
+    public double binEdge(int bins, int bin) {
+        return bin == bins ? getMax() : getMin() + bin * (getMax() - getMin()) / bins;
+    }
+}
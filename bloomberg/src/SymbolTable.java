@@ -0,0 +1,68 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Dictionary of the strings that repeat across the bonds: issuer names, currencies, ratings and issue years
+ * Every distinct string gets an int id and one canonical instance, so the loaders keep one copy per value instead of one per cell,
+ * and maps keyed on these strings compare them by identity. Thread safe, the parallel matching interns from the pool threads **/
+public class SymbolTable {
+
+    public static final SymbolTable ISSUERS = new SymbolTable();
+    public static final SymbolTable CURRENCIES = new SymbolTable();
+    public static final SymbolTable RATINGS = new SymbolTable(); // Moody's and S&P share the table, a few symbols ("A", "B") exist on both scales
+    public static final SymbolTable YEARS = new SymbolTable();
+
+    private final Map<String, Symbol> symbols = new ConcurrentHashMap<>();
+    private final List<String> values = new ArrayList<>(); // by id, guarded by this
+
+    /** Returns the id of the value, giving it the next id if it is new **/
+    public int id(String value) {
+        return symbol(value).id;
+    }
+
+    /** Returns the id of the value, or -1 if it was never seen **/
+    public int find(String value) {
+        Symbol symbol = value == null ? null : symbols.get(value);
+        return symbol == null ? -1 : symbol.id;
+    }
+
+    /** Returns the canonical instance of the value, null stays null **/
+    public String intern(String value) {
+        return value == null ? null : symbol(value).value;
+    }
+
+    public synchronized String value(int id) {
+        return values.get(id);
+    }
+
+    public synchronized int size() {
+        return values.size();
+    }
+
+    private Symbol symbol(String value) {
+        Symbol symbol = symbols.get(value);
+        if (symbol != null) {
+            return symbol;
+        }
+        synchronized (this) {
+            symbol = symbols.get(value);
+            if (symbol == null) {
+                symbol = new Symbol(values.size(), value);
+                values.add(value);
+                symbols.put(value, symbol);
+            }
+            return symbol;
+        }
+    }
+
+    private static final class Symbol {
+        private final int id;
+        private final String value;
+
+        private Symbol(int id, String value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+}
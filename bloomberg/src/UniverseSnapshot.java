@@ -0,0 +1,269 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/** Binary snapshot of the parsed bond universe, so later runs skip parsing the exports with POI
+ * The snapshot records the size, modification time and CRC32 of every source file and is ignored as soon as one of them changes
+ *
+ * Layout (big endian), version 1:
+ * magic, version | sources: count, then path, size, mtime, crc per source | strings: count, then length + UTF-8 bytes per string |
+ * bonds: count, then one column per field (string fields are indices into the strings, -1 for null; dates are epoch days) |
+ * conventional issuers: count, then issuer, id count, then (id, bond) per id | green issuers: count, then issuer, bond count, bonds **/
+public class UniverseSnapshot {
+
+    private static final int MAGIC = 0x424E4453; // "BNDS"
+    private static final int VERSION = 1; // bump whenever the layout changes, older snapshots are then rebuilt
+    private static final int NONE = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final long HASH_CHUNK = 64L << 20;
+
+    /** Loads the snapshot into the (empty) universe, returns false if there is no snapshot or it is not valid for the sources **/
+    public static boolean load(File snapshot, List<File> sources, BloombergMain universe) {
+        if (!snapshot.exists()) {
+            return false;
+        }
+        try (FileChannel channel = new RandomAccessFile(snapshot, "r").getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            int sourceCount = buffer.getInt();
+            if (sourceCount != sources.size()) {
+                return false;
+            }
+            for (File source : sources) {
+                String path = readString(buffer);
+                long size = buffer.getLong();
+                long modified = buffer.getLong();
+                long crc = buffer.getLong();
+                if (!path.equals(source.getAbsolutePath()) || size != source.length() || modified != source.lastModified()
+                        || crc != contentHash(source)) {
+                    return false;
+                }
+            }
+
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+
+            BloombergMain.Bond[] bonds = readBonds(buffer, strings);
+
+            Map<String, BloombergMain.Bond> conventionalBonds = universe.getConventionalBonds();
+            Map<String, List<String>> conventionalByIssuer = universe.getConventionalBondsByIssuer();
+            int issuers = buffer.getInt();
+            for (int i = 0; i < issuers; i++) {
+                String issuer = SymbolTable.ISSUERS.intern(strings[buffer.getInt()]);
+                int count = buffer.getInt();
+                List<String> ids = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    String id = strings[buffer.getInt()];
+                    ids.add(id);
+                    conventionalBonds.put(id, bonds[buffer.getInt()]);
+                }
+                conventionalByIssuer.put(issuer, ids);
+            }
+
+            Map<String, List<BloombergMain.Bond>> greenByIssuer = universe.getGreenBondsByIssuer();
+            issuers = buffer.getInt();
+            for (int i = 0; i < issuers; i++) {
+                String issuer = SymbolTable.ISSUERS.intern(strings[buffer.getInt()]);
+                int count = buffer.getInt();
+                List<BloombergMain.Bond> green = new ArrayList<>(count);
+                for (int j = 0; j < count; j++) {
+                    green.add(bonds[buffer.getInt()]);
+                }
+                greenByIssuer.put(issuer, green);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) { // a truncated or corrupt snapshot is rebuilt from the sources
+            System.out.println("unable to read the snapshot " + snapshot + ", parsing the exports instead");
+            universe.getConventionalBonds().clear();
+            universe.getConventionalBondsByIssuer().clear();
+            universe.getGreenBondsByIssuer().clear();
+            return false;
+        }
+    }
+
+    /** Writes the universe as parsed from the sources, to a temporary file that replaces the snapshot once complete **/
+    public static void write(File snapshot, List<File> sources, BloombergMain universe) throws IOException {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        Map<BloombergMain.Bond, Integer> bondIndex = new IdentityHashMap<>();
+        List<BloombergMain.Bond> bonds = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : universe.getConventionalBondsByIssuer().entrySet()) {
+            index(entry.getKey(), stringIndex, strings);
+            for (String id : entry.getValue()) {
+                index(id, stringIndex, strings);
+                index(universe.getConventionalBonds().get(id), bondIndex, bonds, stringIndex, strings);
+            }
+        }
+        for (Map.Entry<String, List<BloombergMain.Bond>> entry : universe.getGreenBondsByIssuer().entrySet()) {
+            index(entry.getKey(), stringIndex, strings);
+            for (BloombergMain.Bond bond : entry.getValue()) {
+                index(bond, bondIndex, bonds, stringIndex, strings);
+            }
+        }
+
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sources.size());
+            for (File source : sources) {
+                writeString(out, source.getAbsolutePath());
+                out.writeLong(source.length());
+                out.writeLong(source.lastModified());
+                out.writeLong(contentHash(source));
+            }
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                writeString(out, string);
+            }
+            writeBonds(out, bonds, stringIndex);
+
+            out.writeInt(universe.getConventionalBondsByIssuer().size());
+            for (Map.Entry<String, List<String>> entry : universe.getConventionalBondsByIssuer().entrySet()) {
+                out.writeInt(stringIndex.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (String id : entry.getValue()) {
+                    out.writeInt(stringIndex.get(id));
+                    out.writeInt(bondIndex.get(universe.getConventionalBonds().get(id)));
+                }
+            }
+            out.writeInt(universe.getGreenBondsByIssuer().size());
+            for (Map.Entry<String, List<BloombergMain.Bond>> entry : universe.getGreenBondsByIssuer().entrySet()) {
+                out.writeInt(stringIndex.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (BloombergMain.Bond bond : entry.getValue()) {
+                    out.writeInt(bondIndex.get(bond));
+                }
+            }
+        }
+        if (snapshot.exists() && !snapshot.delete() || !tmp.renameTo(snapshot)) {
+            throw new IOException("unable to replace the snapshot " + snapshot);
+        }
+    }
+
+    /** CRC32 of the file's content, read through a mapping a chunk at a time **/
+    static long contentHash(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
+            long size = channel.size();
+            for (long position = 0; position < size; position += HASH_CHUNK) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(HASH_CHUNK, size - position)));
+            }
+        }
+        return crc.getValue();
+    }
+
+    private static void writeBonds(DataOutputStream out, List<BloombergMain.Bond> bonds, Map<String, Integer> stringIndex) throws IOException {
+        out.writeInt(bonds.size());
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(indexOf(bond.issuer, stringIndex));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(indexOf(bond.moodysRating, stringIndex));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(indexOf(bond.snpRating, stringIndex));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(indexOf(bond.ccy, stringIndex));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(bond.issuanceDate == null ? NO_DATE : (int) bond.issuanceDate.toEpochDay());
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeInt(bond.maturityDate == null ? NO_DATE : (int) bond.maturityDate.toEpochDay());
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeByte(bond.maturity == null ? NONE : bond.maturity.ordinal());
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            out.writeByte((bond.green ? 1 : 0) | (bond.isin ? 2 : 0));
+        }
+    }
+
+    private static BloombergMain.Bond[] readBonds(ByteBuffer buffer, String[] strings) {
+        BloombergMain.Bond[] bonds = new BloombergMain.Bond[buffer.getInt()];
+        for (int i = 0; i < bonds.length; i++) {
+            bonds[i] = new BloombergMain.Bond(string(strings, buffer.getInt()), false);
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            bond.moodysRating = SymbolTable.RATINGS.intern(string(strings, buffer.getInt()));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            bond.snpRating = SymbolTable.RATINGS.intern(string(strings, buffer.getInt()));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            bond.ccy = SymbolTable.CURRENCIES.intern(string(strings, buffer.getInt()));
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            int day = buffer.getInt();
+            if (day != NO_DATE) { // the year and quarter are derived from the date, like setIssuance does
+                bond.issuanceDate = DateCodec.toLocalDate(day);
+                bond.issuanceYear = SymbolTable.YEARS.intern(String.valueOf(DateCodec.year(day)));
+                bond.issuanceTerm = BloombergMain.Issuance.values()[DateCodec.quarter(day) - 1];
+            }
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            int day = buffer.getInt();
+            bond.maturityDate = day == NO_DATE ? null : DateCodec.toLocalDate(day);
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            byte maturity = buffer.get();
+            bond.maturity = maturity == NONE ? null : BloombergMain.Maturities.values()[maturity];
+        }
+        for (BloombergMain.Bond bond : bonds) {
+            byte flags = buffer.get();
+            bond.green = (flags & 1) != 0;
+            bond.isin = (flags & 2) != 0;
+        }
+        return bonds;
+    }
+
+    private static void index(String string, Map<String, Integer> stringIndex, List<String> strings) {
+        if (string != null && !stringIndex.containsKey(string)) {
+            stringIndex.put(string, strings.size());
+            strings.add(string);
+        }
+    }
+
+    private static void index(BloombergMain.Bond bond, Map<BloombergMain.Bond, Integer> bondIndex, List<BloombergMain.Bond> bonds,
+                              Map<String, Integer> stringIndex, List<String> strings) {
+        if (bondIndex.containsKey(bond)) {
+            return;
+        }
+        bondIndex.put(bond, bonds.size());
+        bonds.add(bond);
+        index(bond.issuer, stringIndex, strings);
+        index(bond.moodysRating, stringIndex, strings);
+        index(bond.snpRating, stringIndex, strings);
+        index(bond.ccy, stringIndex, strings);
+    }
+
+    private static int indexOf(String string, Map<String, Integer> stringIndex) {
+        return string == null ? NONE : stringIndex.get(string);
+    }
+
+    private static String string(String[] strings, int index) {
+        return index == NONE ? null : strings[index];
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}